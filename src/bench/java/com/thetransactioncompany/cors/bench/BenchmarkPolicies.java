@@ -0,0 +1,72 @@
+package com.thetransactioncompany.cors.bench;
+
+
+import java.util.Properties;
+
+import com.thetransactioncompany.cors.CORSConfiguration;
+import com.thetransactioncompany.cors.CORSConfigurationException;
+
+
+/**
+ * CORS policies for the benchmarks.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class BenchmarkPolicies {
+
+
+	/**
+	 * Returns the allowed origin with the specified index.
+	 *
+	 * @param i The origin index.
+	 *
+	 * @return The origin.
+	 */
+	static String allowedOrigin(final int i) {
+
+		return "https://customer" + i + ".example.com";
+	}
+
+
+	/**
+	 * Creates a CORS configuration with the specified number of allowed
+	 * origins.
+	 *
+	 * @param allowedOrigins  The number of allowed origins.
+	 * @param allowSubdomains {@code true} to allow subdomain origins.
+	 *
+	 * @return The CORS configuration.
+	 *
+	 * @throws CORSConfigurationException On a bad configuration.
+	 */
+	static CORSConfiguration create(final int allowedOrigins, final boolean allowSubdomains)
+		throws CORSConfigurationException {
+
+		StringBuilder origins = new StringBuilder();
+
+		for (int i = 0; i < allowedOrigins; i++) {
+
+			if (i > 0)
+				origins.append(' ');
+
+			origins.append(allowedOrigin(i));
+		}
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", origins.toString());
+		props.setProperty("cors.allowSubdomains", Boolean.toString(allowSubdomains));
+		props.setProperty("cors.supportedMethods", "GET, POST, PUT, DELETE, HEAD, OPTIONS");
+		props.setProperty("cors.supportedHeaders", "Accept, Authorization, Content-Type, X-Requested-With");
+		props.setProperty("cors.exposedHeaders", "X-Request-Id");
+		props.setProperty("cors.maxAge", "3600");
+		return new CORSConfiguration(props);
+	}
+
+
+	/**
+	 * Prevents instantiation.
+	 */
+	private BenchmarkPolicies() {
+
+	}
+}
@@ -0,0 +1,137 @@
+package com.thetransactioncompany.cors.bench;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.cors.CORSFilter;
+import com.thetransactioncompany.cors.MockServletRequest;
+import com.thetransactioncompany.cors.MockServletResponse;
+
+
+/**
+ * Benchmarks {@link CORSFilter#doFilter} for actual, preflight and non-CORS
+ * requests.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CORSFilterBenchmark {
+
+
+	/**
+	 * Filter chain that does nothing.
+	 */
+	private static final FilterChain NOOP_CHAIN = new FilterChain() {
+
+		@Override
+		public void doFilter(final ServletRequest request, final ServletResponse response)
+			throws IOException, ServletException {
+
+			// do nothing
+		}
+	};
+
+
+	@Param({"10", "5000"})
+	public int allowedOrigins;
+
+
+	@Param({"false", "true"})
+	public boolean allowSubdomains;
+
+
+	private CORSFilter filter;
+
+
+	private MockServletRequest actualRequest;
+
+
+	private MockServletRequest preflightRequest;
+
+
+	private MockServletRequest otherRequest;
+
+
+	private MockServletResponse response;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		filter = new CORSFilter(BenchmarkPolicies.create(allowedOrigins, allowSubdomains));
+
+		String origin = BenchmarkPolicies.allowedOrigin(allowedOrigins - 1);
+
+		actualRequest = new MockServletRequest();
+		actualRequest.setScheme("https");
+		actualRequest.setHeader("Host", "api.example.com");
+		actualRequest.setHeader("Origin", origin);
+		actualRequest.setMethod("POST");
+
+		preflightRequest = new MockServletRequest();
+		preflightRequest.setScheme("https");
+		preflightRequest.setHeader("Host", "api.example.com");
+		preflightRequest.setHeader("Origin", origin);
+		preflightRequest.setHeader("Access-Control-Request-Method", "PUT");
+		preflightRequest.setHeader("Access-Control-Request-Headers", "content-type, authorization, x-requested-with");
+		preflightRequest.setMethod("OPTIONS");
+
+		otherRequest = new MockServletRequest();
+		otherRequest.setScheme("https");
+		otherRequest.setHeader("Host", "api.example.com");
+		otherRequest.setMethod("GET");
+
+		response = new MockServletResponse();
+	}
+
+
+	@Benchmark
+	public MockServletResponse actual()
+		throws Exception {
+
+		filter.doFilter(actualRequest, response, NOOP_CHAIN);
+		return response;
+	}
+
+
+	@Benchmark
+	public MockServletResponse preflight()
+		throws Exception {
+
+		filter.doFilter(preflightRequest, response, NOOP_CHAIN);
+		return response;
+	}
+
+
+	@Benchmark
+	public MockServletResponse other()
+		throws Exception {
+
+		filter.doFilter(otherRequest, response, NOOP_CHAIN);
+		return response;
+	}
+}
@@ -0,0 +1,102 @@
+package com.thetransactioncompany.cors.bench;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.cors.CORSRequestType;
+import com.thetransactioncompany.cors.MockServletRequest;
+
+
+/**
+ * Benchmarks {@link CORSRequestType#detect}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CORSRequestTypeBenchmark {
+
+
+	private MockServletRequest actualRequest;
+
+
+	private MockServletRequest preflightRequest;
+
+
+	private MockServletRequest sameOriginRequest;
+
+
+	private MockServletRequest otherRequest;
+
+
+	@Setup
+	public void setUp() {
+
+		actualRequest = new MockServletRequest();
+		actualRequest.setScheme("https");
+		actualRequest.setHeader("Host", "api.example.com");
+		actualRequest.setHeader("Origin", "https://www.example.com");
+		actualRequest.setMethod("POST");
+
+		preflightRequest = new MockServletRequest();
+		preflightRequest.setScheme("https");
+		preflightRequest.setHeader("Host", "api.example.com");
+		preflightRequest.setHeader("Origin", "https://www.example.com");
+		preflightRequest.setHeader("Access-Control-Request-Method", "PUT");
+		preflightRequest.setMethod("OPTIONS");
+
+		sameOriginRequest = new MockServletRequest();
+		sameOriginRequest.setScheme("https");
+		sameOriginRequest.setHeader("Host", "api.example.com");
+		sameOriginRequest.setHeader("Origin", "https://api.example.com");
+		sameOriginRequest.setMethod("POST");
+
+		otherRequest = new MockServletRequest();
+		otherRequest.setScheme("https");
+		otherRequest.setHeader("Host", "api.example.com");
+		otherRequest.setMethod("GET");
+	}
+
+
+	@Benchmark
+	public CORSRequestType actual() {
+
+		return CORSRequestType.detect(actualRequest);
+	}
+
+
+	@Benchmark
+	public CORSRequestType preflight() {
+
+		return CORSRequestType.detect(preflightRequest);
+	}
+
+
+	@Benchmark
+	public CORSRequestType sameOrigin() {
+
+		return CORSRequestType.detect(sameOriginRequest);
+	}
+
+
+	@Benchmark
+	public CORSRequestType other() {
+
+		return CORSRequestType.detect(otherRequest);
+	}
+}
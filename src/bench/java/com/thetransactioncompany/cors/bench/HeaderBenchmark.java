@@ -0,0 +1,56 @@
+package com.thetransactioncompany.cors.bench;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.cors.HeaderName;
+import com.thetransactioncompany.cors.HeaderUtils;
+
+
+/**
+ * Benchmarks {@link HeaderName#formatCanonical} and
+ * {@link HeaderUtils#parseMultipleHeaderValues}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeaderBenchmark {
+
+
+	@Param({"content-type", "X-Requested-With", "x-custom-application-header"})
+	public String headerName;
+
+
+	@Param({"content-type", "content-type, authorization, x-requested-with"})
+	public String headerValue;
+
+
+	@Benchmark
+	public String formatCanonical() {
+
+		return HeaderName.formatCanonical(headerName);
+	}
+
+
+	@Benchmark
+	public String[] parseMultipleHeaderValues() {
+
+		return HeaderUtils.parseMultipleHeaderValues(headerValue);
+	}
+}
@@ -0,0 +1,88 @@
+package com.thetransactioncompany.cors.bench;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thetransactioncompany.cors.CORSConfiguration;
+import com.thetransactioncompany.cors.Origin;
+
+
+/**
+ * Benchmarks {@link CORSConfiguration#isAllowedOrigin} for exact, subdomain
+ * and denied origins.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OriginMatchingBenchmark {
+
+
+	@Param({"10", "5000"})
+	public int allowedOrigins;
+
+
+	@Param({"false", "true"})
+	public boolean allowSubdomains;
+
+
+	private CORSConfiguration config;
+
+
+	private String exactOrigin;
+
+
+	private String subdomainOrigin;
+
+
+	private String deniedOrigin;
+
+
+	@Setup
+	public void setUp()
+		throws Exception {
+
+		config = BenchmarkPolicies.create(allowedOrigins, allowSubdomains);
+
+		exactOrigin = BenchmarkPolicies.allowedOrigin(allowedOrigins / 2);
+		subdomainOrigin = "https://www." + exactOrigin.substring("https://".length());
+		deniedOrigin = "https://scanner.example.net";
+	}
+
+
+	@Benchmark
+	public boolean exactOrigin() {
+
+		return config.isAllowedOrigin(new Origin(exactOrigin));
+	}
+
+
+	@Benchmark
+	public boolean subdomainOrigin() {
+
+		return config.isAllowedOrigin(new Origin(subdomainOrigin));
+	}
+
+
+	@Benchmark
+	public boolean deniedOrigin() {
+
+		return config.isAllowedOrigin(new Origin(deniedOrigin));
+	}
+}
@@ -0,0 +1,247 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Bounded, lock-free cache. Intended for memoising the outcome of CORS
+ * processing steps that are repeated for the same input (e.g. the same
+ * Origin header value) over and over.
+ *
+ * <p>The cache is direct-mapped: each key hashes to exactly one slot and a
+ * new entry replaces whichever entry currently occupies its slot. Reads
+ * and writes are a single atomic array access, no locks are taken. The
+ * memory use is bounded by the capacity, which is rounded up to the next
+ * power of two.
+ *
+ * <p>The cache keeps hit, miss and eviction counters. An eviction is
+ * counted when a put replaces an entry for a different key. The counters
+ * are {@link LongAdder}s, so that concurrent lookups from many threads
+ * don't contend on a shared counter.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class BoundedCache<K,V> {
+
+
+	/**
+	 * Immutable cache entry.
+	 */
+	private static final class Entry<K,V> {
+
+
+		/**
+		 * The key hash.
+		 */
+		private final int hash;
+
+
+		/**
+		 * The key.
+		 */
+		private final K key;
+
+
+		/**
+		 * The value.
+		 */
+		private final V value;
+
+
+		/**
+		 * Creates a new cache entry.
+		 *
+		 * @param hash  The key hash.
+		 * @param key   The key.
+		 * @param value The value.
+		 */
+		Entry(final int hash, final K key, final V value) {
+
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+
+	/**
+	 * The cache slots.
+	 */
+	private final AtomicReferenceArray<Entry<K,V>> slots;
+
+
+	/**
+	 * The slot index mask.
+	 */
+	private final int mask;
+
+
+	/**
+	 * The cache hit counter.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+
+	/**
+	 * The cache miss counter.
+	 */
+	private final LongAdder misses = new LongAdder();
+
+
+	/**
+	 * The cache eviction counter.
+	 */
+	private final LongAdder evictions = new LongAdder();
+
+
+	/**
+	 * Creates a new bounded cache.
+	 *
+	 * @param capacity The cache capacity, rounded up to the next power of
+	 *                 two. Must be positive.
+	 */
+	public BoundedCache(final int capacity) {
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("The cache capacity must be positive");
+
+		int size = 1;
+
+		while (size < capacity && size < (1 << 30))
+			size <<= 1;
+
+		slots = new AtomicReferenceArray<Entry<K,V>>(size);
+		mask = size - 1;
+	}
+
+
+	/**
+	 * Spreads the bits of the specified key hash code.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 *
+	 * @return The spread hash.
+	 */
+	private static int hash(final Object key) {
+
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+
+	/**
+	 * Gets the cached value for the specified key.
+	 *
+	 * @param key The key. Must not be {@code null}.
+	 *
+	 * @return The cached value, {@code null} if not cached.
+	 */
+	public V get(final K key) {
+
+		final int h = hash(key);
+
+		Entry<K,V> entry = slots.get(h & mask);
+
+		if (entry != null && entry.hash == h && entry.key.equals(key)) {
+			hits.increment();
+			return entry.value;
+		}
+
+		misses.increment();
+		return null;
+	}
+
+
+	/**
+	 * Caches the specified value, replacing any entry that occupies the
+	 * slot of the key.
+	 *
+	 * @param key   The key. Must not be {@code null}.
+	 * @param value The value. Must not be {@code null}.
+	 */
+	public void put(final K key, final V value) {
+
+		final int h = hash(key);
+
+		Entry<K,V> replaced = slots.getAndSet(h & mask, new Entry<K,V>(h, key, value));
+
+		if (replaced != null && (replaced.hash != h || ! replaced.key.equals(key)))
+			evictions.increment();
+	}
+
+
+	/**
+	 * Removes all cached entries. The counters are not reset.
+	 */
+	public void clear() {
+
+		for (int i = 0; i < slots.length(); i++)
+			slots.set(i, null);
+	}
+
+
+	/**
+	 * Returns the cache capacity.
+	 *
+	 * @return The capacity, a power of two.
+	 */
+	public int getCapacity() {
+
+		return slots.length();
+	}
+
+
+	/**
+	 * Returns the number of occupied cache slots. The returned value is an
+	 * estimate if the cache is concurrently modified.
+	 *
+	 * @return The number of cached entries.
+	 */
+	public int size() {
+
+		int count = 0;
+
+		for (int i = 0; i < slots.length(); i++) {
+
+			if (slots.get(i) != null)
+				count++;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Returns the number of cache hits.
+	 *
+	 * @return The cache hits.
+	 */
+	public long getHits() {
+
+		return hits.sum();
+	}
+
+
+	/**
+	 * Returns the number of cache misses.
+	 *
+	 * @return The cache misses.
+	 */
+	public long getMisses() {
+
+		return misses.sum();
+	}
+
+
+	/**
+	 * Returns the number of entries evicted to make room for other keys.
+	 *
+	 * @return The cache evictions.
+	 */
+	public long getEvictions() {
+
+		return evictions.sum();
+	}
+}
@@ -50,8 +50,31 @@ public class CORSConfiguration {
 	 * http://lists.w3.org/Archives/Public/public-webapps/2010JulSep/1046.html
 	 *
 	 * <p>Property key: cors.allowOrigin
+	 *
+	 * <p>Unmodifiable.
 	 */
 	public final Set<ValidatedOrigin> allowedOrigins;
+
+
+
+	/**
+	 * Origin patterns that the CORS filter must allow, such as 
+	 * {@code https://*.preview.example.com} or 
+	 * {@code http://localhost:*}. A {@code *} wildcard matches a single
+	 * host name label or a port number. This property is overridden by
+	 * {@link #allowAnyOrigin}.
+	 *
+	 * <p>Property key: cors.allowOrigin (entries with a {@code *})
+	 *
+	 * <p>Unmodifiable.
+	 */
+	public final Set<String> allowedOriginPatterns;
+
+
+	/**
+	 * The {@link #allowedOriginPatterns} compiled into an automaton.
+	 */
+	private final OriginPatternMatcher originPatternMatcher;
 	
 	
 	/**
@@ -88,7 +111,7 @@ public class CORSConfiguration {
 		if (origin == null)
 			return false;
 		
-		if (allowedOrigins.contains(origin))
+		if (isListedOrigin(origin))
 			return true;
 			
 		else if (allowSubdomains)
@@ -96,12 +119,57 @@ public class CORSConfiguration {
 		
 		return false;
 	}
+
+
+	/**
+	 * Helper method to check whether requests from the specified origin 
+	 * must be allowed, given its already validated form. Same as 
+	 * {@link #isAllowedOrigin(Origin)}, without validating the origin 
+	 * again for the subdomain check.
+	 *
+	 * @param origin          The origin as reported by the web client 
+	 *                        (browser). Must not be {@code null}.
+	 * @param canonicalOrigin The validated origin, {@code null} if the 
+	 *                        origin is invalid.
+	 *
+	 * @return {@code true} if the origin is allowed, else {@code false}.
+	 */
+	final boolean isAllowedOrigin(final Origin origin, final ValidatedOrigin canonicalOrigin) {
+
+		if (allowAnyOrigin || isListedOrigin(origin))
+			return true;
+
+		return allowSubdomains && canonicalOrigin != null && subdomainMatcher.matches(canonicalOrigin);
+	}
+
+
+	/**
+	 * Helper method to check whether the specified origin is one of the 
+	 * {@link #allowedOrigins} or matches one of the 
+	 * {@link #allowedOriginPatterns}.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin is listed, else {@code false}.
+	 */
+	private boolean isListedOrigin(final Origin origin) {
+
+		return allowedOrigins.contains(origin) || originPatternMatcher.matches(origin.toString());
+	}
+	
+	/**
+	 * Compiled matcher for the subdomain origins of the 
+	 * {@link #allowedOrigins}.
+	 */
+	private final SubdomainMatcher subdomainMatcher;
+	
 	
 	/**
 	 * Helper method to check whether the specified origin is a subdomain 
 	 * origin of the {@link #allowedOrigins}. This is done by matching the
-	 * origin's scheme, hostname and port against each of the 
-	 * {@link #allowedOrigins}.
+	 * origin's scheme, hostname and port against a trie of the 
+	 * {@link #allowedOrigins} compiled at construction time, so the cost
+	 * doesn't depend on the number of allowed origins.
 	 *
 	 * <p>Example: 
 	 *
@@ -118,25 +186,12 @@ public class CORSConfiguration {
 	public final boolean isAllowedSubdomainOrigin(final Origin origin) {
 		
 		try {
-			ValidatedOrigin validatedOrigin = origin.validate();
-			
-			String scheme = validatedOrigin.getScheme();
-			String suffix = validatedOrigin.getSuffix();
-			
-			for (ValidatedOrigin allowedOrigin: allowedOrigins) {
-				
-				if (suffix.endsWith("." + allowedOrigin.getSuffix()) && 
-				    scheme.equalsIgnoreCase(allowedOrigin.getScheme()))
-
-					return true;
-			}
+			return subdomainMatcher.matches(origin.validate());
 			
 		} catch (OriginException e) {
     			
 			return false;
 		}
-		
-		return false;
 	}
 	
 	
@@ -146,13 +201,22 @@ public class CORSConfiguration {
 	 * allowed" response.
 	 *
 	 * <p>Property key: cors.supportedMethods
+	 *
+	 * <p>Unmodifiable.
 	 */
 	public final Set<String> supportedMethods;
+
+
+	/**
+	 * The supported HTTP methods, compiled for fast lookup.
+	 */
+	private final MethodMatcher methodMatcher;
 	
 	
 	/**
 	 * Helper method to check whether the specified HTTP method is 
-	 * supported. This is done by looking up {@link #supportedMethods}.
+	 * supported. This is done by looking up {@link #supportedMethods},
+	 * ignoring case.
 	 *
 	 * @param method The HTTP method.
 	 *
@@ -160,7 +224,7 @@ public class CORSConfiguration {
 	 */
 	public final boolean isSupportedMethod(final String method) {
 
-		return supportedMethods.contains(method);
+		return methodMatcher.matches(method);
 	}
 
 
@@ -179,13 +243,22 @@ public class CORSConfiguration {
 	 * {@link #supportAnyHeader} is {@code false}. Never {@code null}.
 	 * 
 	 * <p>Property key: cors.supportedHeaders
+	 *
+	 * <p>Unmodifiable.
 	 */
 	public final Set<String> supportedHeaders;
+
+
+	/**
+	 * The supported author request headers, compiled for fast lookup.
+	 */
+	private final HeaderMatcher headerMatcher;
 	
 	
 	/**
 	 * Helper method to check whether the specified (non-simple) author 
-	 * request header is supported.
+	 * request header is supported. The header name is matched ignoring
+	 * case.
 	 *
 	 * @param header The header field name.
 	 *
@@ -193,7 +266,25 @@ public class CORSConfiguration {
 	 */
 	public final boolean isSupportedHeader(final String header) {
 
-		return supportAnyHeader || supportedHeaders.contains(header);
+		return supportAnyHeader || header != null && headerMatcher.matches(header, 0, header.length());
+	}
+
+
+	/**
+	 * Checks whether the (non-simple) author request header name in the
+	 * specified string region is supported, ignoring case. Intended for
+	 * checking the names in a raw Access-Control-Request-Headers value
+	 * without extracting them.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param begin The begin index of the header name, inclusive.
+	 * @param end   The end index of the header name, exclusive.
+	 *
+	 * @return {@code true} if the header is supported, else {@code false}.
+	 */
+	final boolean isSupportedHeader(final String s, final int begin, final int end) {
+
+		return supportAnyHeader || headerMatcher.matches(s, begin, end);
 	}
 	
 	
@@ -202,6 +293,8 @@ public class CORSConfiguration {
 	 * to the author of the CORS request.
 	 *
 	 * <p>Property key: cors.exposedHeaders
+	 *
+	 * <p>Unmodifiable.
 	 */
 	public final Set<String> exposedHeaders;
 	
@@ -231,6 +324,46 @@ public class CORSConfiguration {
 	 * <p>Property key: cors.tagRequests
 	 */
 	public final boolean tagRequests;
+
+
+	/**
+	 * Omits the message from the body of the error responses to rejected
+	 * requests, to cut the egress on high-volume denials. The status code
+	 * still indicates the cause.
+	 *
+	 * <p>Property key: cors.omitErrorMessages
+	 */
+	public final boolean omitErrorMessages;
+
+
+	/**
+	 * The maximum number of request origins for which the access decision
+	 * is cached, zero if the origin cache is disabled.
+	 *
+	 * <p>Property key: cors.originCache.size
+	 */
+	public final int originCacheSize;
+
+
+	/**
+	 * The maximum number of distinct preflight requests (by Origin, 
+	 * Access-Control-Request-Method and Access-Control-Request-Headers)
+	 * for which the verdict is cached, zero if the preflight cache is
+	 * disabled.
+	 *
+	 * <p>Property key: cors.preflightCache.size
+	 */
+	public final int preflightCacheSize;
+
+
+	/**
+	 * Enables the estimation of the number of distinct allowed and denied
+	 * request origins, which costs a hash of the Origin header on each
+	 * CORS request. Disabled by default.
+	 *
+	 * <p>Property key: cors.countDistinctOrigins
+	 */
+	public final boolean countDistinctOrigins;
 	
 	
 	/**
@@ -242,12 +375,7 @@ public class CORSConfiguration {
 	 */
 	protected static String[] parseWords(final String s) {
 		
-		String s1 = s.trim();
-		
-		if (s1.isEmpty())
-			return new String[]{};
-		else
-			return s1.split("\\s*,\\s*|\\s+");
+		return HeaderUtils.parseMultipleHeaderValues(s);
 	}
 	
 	
@@ -261,6 +389,8 @@ public class CORSConfiguration {
 	 *     <li>cors.allowGenericHttpRequests {true|false} defaults to 
 	 *         {@code true}.
 	 *     <li>cors.allowOrigin {"*"|origin-list} defaults to {@code *}.
+	 *         The origin list may include patterns with {@code *} 
+	 *         wildcards.
 	 *     <li>cors.allowSubdomains {true|false} defaults to {@code false}.
 	 *     <li>cors.supportedMethods {method-list} defaults to {@code "GET, 
 	 *         POST, HEAD, OPTIONS"}.
@@ -271,6 +401,13 @@ public class CORSConfiguration {
 	 *         {@code true}.
 	 *     <li>cors.maxAge {int} defaults to {@code -1} (unspecified).
 	 *     <li>cors.tagRequests {boolean} defaults to {@code false}.
+	 *     <li>cors.omitErrorMessages {boolean} defaults to {@code false}.
+	 *     <li>cors.originCache.size {int} defaults to {@code 0} (no
+	 *         caching).
+	 *     <li>cors.preflightCache.size {int} defaults to {@code 0} (no
+	 *         caching).
+	 *     <li>cors.countDistinctOrigins {boolean} defaults to 
+	 *         {@code false}.
 	 * </ul>
 	 *
 	 * @param props The properties. Must not be {@code null}.
@@ -289,7 +426,9 @@ public class CORSConfiguration {
 			// Parse the allowed origins list
 			String originSpec = pr.getOptString("cors.allowOrigin", "*").trim();
 			
-			allowedOrigins = new HashSet<ValidatedOrigin>();
+			Set<ValidatedOrigin> origins = new HashSet<ValidatedOrigin>();
+
+			Set<String> originPatterns = new HashSet<String>();
 
 			if (originSpec.equals("*")) {
 
@@ -303,8 +442,14 @@ public class CORSConfiguration {
 
 				for (String url: urls) {
 
+					if (url.indexOf('*') >= 0) {
+
+						originPatterns.add(url);
+						continue;
+					}
+
 					try {
-						allowedOrigins.add(new Origin(url).validate());
+						origins.add(new Origin(url).validate());
 
                                 	} catch (OriginException e) {
 					
@@ -313,6 +458,22 @@ public class CORSConfiguration {
 				}
 			}
 			
+			// The matchers are compiled from the sets, which must not
+			// change after construction
+			allowedOrigins = Collections.unmodifiableSet(origins);
+
+			allowedOriginPatterns = Collections.unmodifiableSet(originPatterns);
+			
+			subdomainMatcher = new SubdomainMatcher(allowedOrigins);
+
+			try {
+				originPatternMatcher = new OriginPatternMatcher(allowedOriginPatterns);
+
+			} catch (IllegalArgumentException e) {
+
+				throw new PropertyParseException("Bad origin pattern in property cors.allowOrigin: " + e.getMessage());
+			}
+			
 			// Parse the allow origin suffix matching option
 			allowSubdomains = pr.getOptBoolean("cors.allowSubdomains", false);
 			
@@ -321,12 +482,16 @@ public class CORSConfiguration {
 
 			String methodSpec = pr.getOptString("cors.supportedMethods", "GET, POST, HEAD, OPTIONS").trim().toUpperCase();
 
-			supportedMethods = new HashSet<String>();
+			Set<String> methods = new HashSet<String>();
 
 			for (String methodName: parseWords(methodSpec)) {
 
-				supportedMethods.add(methodName);
+				methods.add(methodName);
 			}
+
+			supportedMethods = Collections.unmodifiableSet(methods);
+
+			methodMatcher = new MethodMatcher(supportedMethods);
 			
 
 			// Parse the supported headers list
@@ -352,34 +517,40 @@ public class CORSConfiguration {
 
 				String[] headers = parseWords(headerSpec);
 
-				supportedHeaders = new HashSet<String>();
+				Set<String> headerNames = new HashSet<String>();
 
 				for (String header: headers) {
 
 					try {
-						supportedHeaders.add(HeaderName.formatCanonical(header));
+						headerNames.add(HeaderName.formatCanonical(header));
 
 					} catch (IllegalArgumentException e) {
 
 						throw new PropertyParseException("Bad header field name in property cors.supportedHeaders: " + header);
 					}
 				}
+
+				supportedHeaders = Collections.unmodifiableSet(headerNames);
 			}
 
+			headerMatcher = new HeaderMatcher(supportedHeaders);
+
 
 			// Parse the exposed headers list
-			exposedHeaders = new HashSet<String>();
+			Set<String> exposedHeaderNames = new HashSet<String>();
 
 			for (String header: parseWords(pr.getOptString("cors.exposedHeaders", ""))) {
 
 				try {
-					exposedHeaders.add(HeaderName.formatCanonical(header));
+					exposedHeaderNames.add(HeaderName.formatCanonical(header));
 
 				} catch (IllegalArgumentException e) {
 					throw new PropertyParseException("Bad header field name in property cors.exposedHeaders: " + header);
 				}
 			}
 
+			exposedHeaders = Collections.unmodifiableSet(exposedHeaderNames);
+
 
 			// Parse the allow credentials option
 			supportsCredentials = pr.getOptBoolean("cors.supportsCredentials", true);
@@ -390,6 +561,24 @@ public class CORSConfiguration {
 
 			// Controls request tagging
 			tagRequests = pr.getOptBoolean("cors.tagRequests", false);
+
+			// Controls the error response body
+			omitErrorMessages = pr.getOptBoolean("cors.omitErrorMessages", false);
+
+			// Parse the origin cache size
+			originCacheSize = pr.getOptInt("cors.originCache.size", 0);
+
+			if (originCacheSize < 0)
+				throw new PropertyParseException("Negative origin cache size in property cors.originCache.size: " + originCacheSize);
+
+			// Parse the preflight cache size
+			preflightCacheSize = pr.getOptInt("cors.preflightCache.size", 0);
+
+			if (preflightCacheSize < 0)
+				throw new PropertyParseException("Negative preflight cache size in property cors.preflightCache.size: " + preflightCacheSize);
+
+			// Controls the distinct origin estimation
+			countDistinctOrigins = pr.getOptBoolean("cors.countDistinctOrigins", false);
 			
 		
 		} catch (PropertyParseException e) {
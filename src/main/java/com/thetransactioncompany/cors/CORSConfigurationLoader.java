@@ -1,10 +1,15 @@
 package com.thetransactioncompany.cors;
 
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import javax.servlet.FilterConfig;
 
@@ -29,6 +34,58 @@ public class CORSConfigurationLoader {
 	public static final String CONFIG_FILE_PARAM_NAME = "cors.configurationFile";
 
 
+
+	/**
+	 * The name of the web.xml filter initialisation parameter that 
+	 * specifies the interval, in seconds, for checking the CORS 
+	 * configuration file, host configuration directory and path policy
+	 * files for changes. Zero or unset disables reloading.
+	 */
+	public static final String RELOAD_INTERVAL_PARAM_NAME = "cors.configurationFile.reloadInterval";
+
+
+
+	/**
+	 * The name of the system environment variable / web.xml filter 
+	 * initialisation parameter that points to the directory holding the 
+	 * CORS configuration properties for individual hosts (tenants). Each
+	 * file in the directory named {@code [host-name].properties} holds 
+	 * the configuration for requests to that host.
+	 */
+	public static final String HOST_CONFIG_DIR_PARAM_NAME = "cors.hostConfigurationDirectory";
+
+
+	/**
+	 * The name of the system environment variable / web.xml filter 
+	 * initialisation parameter that maps request path prefixes to 
+	 * policies. The value is a list of {@code [path-prefix]=[file-name]}
+	 * entries, where the file holds the CORS configuration properties
+	 * for requests under the path prefix, or {@code [path-prefix]=bypass}
+	 * to skip CORS processing under the path prefix.
+	 */
+	public static final String PATH_POLICIES_PARAM_NAME = "cors.pathPolicies";
+
+
+	/**
+	 * The name of the web.xml filter initialisation parameter that 
+	 * enables the registration of a {@link CORSFilterMXBean} with the
+	 * platform MBean server. Defaults to {@code false}.
+	 */
+	public static final String JMX_PARAM_NAME = "cors.jmx";
+
+
+	/**
+	 * The path policy value for skipping CORS processing.
+	 */
+	public static final String BYPASS_POLICY = "bypass";
+
+
+	/**
+	 * The file name suffix of host configuration files.
+	 */
+	private static final String HOST_CONFIG_FILE_SUFFIX = ".properties";
+
+
 	/**
 	 * The servlet filter configuration.
 	 */
@@ -147,6 +204,280 @@ public class CORSConfigurationLoader {
 	}
 
 
+	/**
+	 * Gets the name of the file holding the CORS configuration 
+	 * properties. The system environment takes precedence over the 
+	 * web.xml filter initialisation parameters.
+	 *
+	 * @return The file name, {@code null} if the configuration is 
+	 *         specified by the web.xml filter initialisation parameters.
+	 */
+	public String getConfigurationFile() {
+
+		// Try to get the config file from the sys environment
+		String configFile = getEnvironment().getProperty(CONFIG_FILE_PARAM_NAME);
+
+		if (configFile == null || configFile.trim().isEmpty()) {
+
+			// Try to get the config file from the filter init param
+			configFile = filterConfig.getInitParameter(CONFIG_FILE_PARAM_NAME);
+		}
+
+		return configFile;
+	}
+
+
+	/**
+	 * Gets the name of the directory holding the CORS configuration 
+	 * properties for individual hosts. The system environment takes
+	 * precedence over the web.xml filter initialisation parameters.
+	 *
+	 * @return The directory name, {@code null} if not specified.
+	 */
+	public String getHostConfigurationDirectory() {
+
+		String dir = getEnvironment().getProperty(HOST_CONFIG_DIR_PARAM_NAME);
+
+		if (dir == null || dir.trim().isEmpty())
+			dir = filterConfig.getInitParameter(HOST_CONFIG_DIR_PARAM_NAME);
+
+		return dir;
+	}
+
+
+	/**
+	 * Loads the CORS configuration properties for individual hosts from
+	 * the directory specified by the {@code cors.hostConfigurationDirectory}
+	 * system environment variable or web.xml filter initialisation 
+	 * parameter. Each file named {@code [host-name].properties} in the 
+	 * directory holds the properties for the named host.
+	 *
+	 * @return The properties, keyed by lower case host name. Empty if no
+	 *         directory is specified.
+	 *
+	 * @throws CORSConfigurationException If the directory or a file in it
+	 *                                    couldn't be read.
+	 */
+	public Map<String,Properties> loadHostProperties()
+		throws CORSConfigurationException {
+
+		Map<String,Properties> hostProps = new TreeMap<String,Properties>();
+
+		String dirName = getHostConfigurationDirectory();
+
+		if (dirName == null)
+			return hostProps;
+
+		File[] files = new File(dirName).listFiles();
+
+		if (files == null)
+			throw new CORSConfigurationException("Couldn't read host configuration directory: " + dirName);
+
+		Arrays.sort(files);
+
+		for (File file: files) {
+
+			String name = file.getName();
+
+			if (! file.isFile() || ! name.endsWith(HOST_CONFIG_FILE_SUFFIX))
+				continue;
+
+			String host = name.substring(0, name.length() - HOST_CONFIG_FILE_SUFFIX.length()).toLowerCase();
+
+			try {
+				InputStream is = new FileInputStream(file);
+
+				Properties props = new Properties();
+
+				try {
+					props.load(is);
+
+				} finally {
+
+					is.close();
+				}
+
+				hostProps.put(host, props);
+
+			} catch (IOException e) {
+
+				throw new CORSConfigurationException("Couldn't load host configuration file " + file + ": " + e.getMessage(), e);
+			}
+		}
+
+		return hostProps;
+	}
+
+
+	/**
+	 * Gets the path policies specification.
+	 *
+	 * @return The path policies specification, {@code null} if not 
+	 *         specified.
+	 */
+	public String getPathPolicies() {
+
+		String spec = getEnvironment().getProperty(PATH_POLICIES_PARAM_NAME);
+
+		if (spec == null || spec.trim().isEmpty())
+			spec = filterConfig.getInitParameter(PATH_POLICIES_PARAM_NAME);
+
+		return spec;
+	}
+
+
+	/**
+	 * Loads the CORS configuration properties for request path prefixes,
+	 * as specified by the {@code cors.pathPolicies} system environment 
+	 * variable or web.xml filter initialisation parameter. Trailing 
+	 * {@code *} wildcards are removed from the path prefixes. The 
+	 * configuration files are located as in {@link #load}.
+	 *
+	 * @return The properties, keyed by path prefix, {@code null} values
+	 *         for bypassed path prefixes. Empty if no path policies are
+	 *         specified.
+	 *
+	 * @throws CORSConfigurationException If the path policies 
+	 *                                    specification is invalid or a
+	 *                                    configuration file couldn't be
+	 *                                    loaded.
+	 */
+	public Map<String,Properties> loadPathProperties()
+		throws CORSConfigurationException {
+
+		Map<String,Properties> pathProps = new TreeMap<String,Properties>();
+
+		String spec = getPathPolicies();
+
+		if (spec == null)
+			return pathProps;
+
+		for (String entry: HeaderUtils.parseMultipleHeaderValues(spec)) {
+
+			int sep = entry.indexOf('=');
+
+			if (sep < 1 || entry.charAt(0) != '/' || sep == entry.length() - 1)
+				throw new CORSConfigurationException("Bad path policy in " + PATH_POLICIES_PARAM_NAME + ": " + entry);
+
+			String prefix = entry.substring(0, sep);
+
+			while (prefix.endsWith("*"))
+				prefix = prefix.substring(0, prefix.length() - 1);
+
+			String target = entry.substring(sep + 1);
+
+			if (target.equals(BYPASS_POLICY)) {
+
+				pathProps.put(prefix, null);
+				continue;
+			}
+
+			try {
+				pathProps.put(prefix, loadPropertiesFromFile(target));
+
+			} catch (IOException e) {
+
+				throw new CORSConfigurationException(e.getMessage(), e);
+			}
+		}
+
+		return pathProps;
+	}
+
+
+	/**
+	 * Checks whether the registration of a {@link CORSFilterMXBean} is
+	 * enabled, as specified by the {@code cors.jmx} web.xml filter
+	 * initialisation parameter.
+	 *
+	 * @return {@code true} if JMX registration is enabled, else
+	 *         {@code false}.
+	 *
+	 * @throws CORSConfigurationException If the parameter value is not a
+	 *                                    boolean.
+	 */
+	public boolean isJMXEnabled()
+		throws CORSConfigurationException {
+
+		String value = filterConfig.getInitParameter(JMX_PARAM_NAME);
+
+		if (value == null || value.trim().isEmpty())
+			return false;
+
+		if (value.trim().equalsIgnoreCase("true"))
+			return true;
+
+		if (value.trim().equalsIgnoreCase("false"))
+			return false;
+
+		throw new CORSConfigurationException("Invalid " + JMX_PARAM_NAME + " value: " + value);
+	}
+
+
+	/**
+	 * Gets the interval for checking the CORS configuration file for
+	 * changes, as specified by the 
+	 * {@code cors.configurationFile.reloadInterval} web.xml filter 
+	 * initialisation parameter.
+	 *
+	 * @return The reload interval in seconds, zero if reloading is 
+	 *         disabled.
+	 *
+	 * @throws CORSConfigurationException If the parameter value is not a
+	 *                                    non-negative integer.
+	 */
+	public long getReloadInterval()
+		throws CORSConfigurationException {
+
+		String value = filterConfig.getInitParameter(RELOAD_INTERVAL_PARAM_NAME);
+
+		if (value == null || value.trim().isEmpty())
+			return 0;
+
+		long interval;
+
+		try {
+			interval = Long.parseLong(value.trim());
+
+		} catch (NumberFormatException e) {
+
+			throw new CORSConfigurationException("Invalid " + RELOAD_INTERVAL_PARAM_NAME + " value: " + value, e);
+		}
+
+		if (interval < 0)
+			throw new CORSConfigurationException("Negative " + RELOAD_INTERVAL_PARAM_NAME + " value: " + value);
+
+		return interval;
+	}
+
+
+	/**
+	 * Loads the CORS filter configuration properties, as specified in
+	 * {@link #load}, without parsing them.
+	 *
+	 * @return The CORS filter configuration properties.
+	 *
+	 * @throws CORSConfigurationException If the configuration file
+	 *                                    couldn't be loaded.
+	 */
+	public Properties loadProperties()
+		throws CORSConfigurationException {
+
+		try {
+			String configFile = getConfigurationFile();
+
+			if (configFile != null)
+				return loadPropertiesFromFile(configFile);
+			else
+				return getFilterInitParameters(filterConfig);
+
+		} catch(IOException e) {
+
+			throw new CORSConfigurationException(e.getMessage(), e);
+		}
+	}
+
+
 	/**
 	 * Loads the CORS filter configuration.
 	 *
@@ -181,32 +512,6 @@ public class CORSConfigurationLoader {
 	public CORSConfiguration load()
 		throws CORSConfigurationException {
 
-		Properties props;
-
-		try {
-			// Try to get the config file from the sys environment
-			String configFile = getEnvironment().getProperty(CONFIG_FILE_PARAM_NAME);
-			
-			if (configFile == null || configFile.trim().isEmpty()) {
-
-				// Try to get the config file from the filter init param
-				configFile = filterConfig.getInitParameter(CONFIG_FILE_PARAM_NAME);
-			}
-
-			if (configFile != null) {
-
-				props = loadPropertiesFromFile(configFile);
-
-			} else {
-
-				props = getFilterInitParameters(filterConfig);
-			}
-
-		} catch(IOException e) {
-
-			throw new CORSConfigurationException(e.getMessage(), e);
-		}
-
-		return new CORSConfiguration(props);
+		return new CORSConfiguration(loadProperties());
 	}
-}
\ No newline at end of file
+}
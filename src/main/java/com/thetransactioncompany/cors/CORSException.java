@@ -5,6 +5,10 @@ package com.thetransactioncompany.cors;
  * Base Cross-Origin Resource Sharing (CORS) exception, typically thrown during
  * processing of CORS requests.
  *
+ * <p>CORS exceptions signal the rejection of a request and are not
+ * programming errors, so they don't capture a stack trace. This makes
+ * rejecting a request about as cheap as accepting it.
+ *
  * @author Vladimir Dzhuvinov
  */
 public class CORSException extends Exception {
@@ -19,4 +23,17 @@ public class CORSException extends Exception {
 	
 		super(message);
 	}
+
+
+	/**
+	 * Does not capture the stack trace, which is never inspected for CORS
+	 * request rejections.
+	 *
+	 * @return This exception.
+	 */
+	@Override
+	public Throwable fillInStackTrace() {
+
+		return this;
+	}
 }
@@ -2,12 +2,29 @@ package com.thetransactioncompany.cors;
 
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
@@ -25,7 +42,9 @@ import javax.servlet.http.HttpServletResponse;
  *
  * <ul>
  *     <li>cors.allowGenericHttpRequests {true|false} defaults to {@code true}.
- *     <li>cors.allowOrigin {"*"|origin-list} defaults to {@code *}.
+ *     <li>cors.allowOrigin {"*"|origin-list} defaults to {@code *}. The
+ *         origin list may include patterns with {@code *} wildcards, such
+ *         as {@code https://*.example.com} or {@code http://localhost:*}.
  *     <li>cors.allowSubdomains {true|false} defaults to {@code false}.
  *     <li>cors.supportedMethods {method-list} defaults to {@code "GET, POST,
  *         HEAD, OPTIONS"}.
@@ -34,8 +53,43 @@ import javax.servlet.http.HttpServletResponse;
  *     <li>cors.supportsCredentials {true|false} defaults to {@code true}.
  *     <li>cors.maxAge {int} defaults to {@code -1} (unspecified).
  *     <li>cors.tagRequests {boolean} default to {@code false}.
+ *     <li>cors.omitErrorMessages {boolean} defaults to {@code false}.
+ *     <li>cors.originCache.size {int} defaults to {@code 0} (no caching).
+ *     <li>cors.preflightCache.size {int} defaults to {@code 0} (no caching).
+ *     <li>cors.countDistinctOrigins {boolean} defaults to {@code false}.
  * </ul>
  *
+ * <p>Individual hosts (tenants) can have their own policy. The 
+ * {@code cors.hostConfigurationDirectory} filter init parameter or system
+ * property points to a directory where each {@code [host-name].properties}
+ * file holds the configuration for requests to the named host, as given
+ * by the Host header. Requests to other hosts get the default policy. The
+ * policy is selected with a single hash lookup.
+ *
+ * <p>Request paths can also have their own policy, which takes precedence
+ * over the host policies. The {@code cors.pathPolicies} filter init 
+ * parameter or system property lists {@code [path-prefix]=[file-name]} 
+ * entries, such as {@code /api/partner/*=/cors-partner.properties}. The
+ * longest matching prefix of the request path within the web application
+ * (the decoded servlet path and path info) selects the policy. A prefix
+ * matches at {@code /} segment boundaries only. The special {@code [path-prefix]=bypass} entry 
+ * passes matching requests, such as {@code /static/*=bypass}, straight 
+ * down the chain without any CORS processing.
+ *
+ * <p>If the configuration is loaded from files (see 
+ * {@link CORSConfigurationLoader}), the files can be checked for changes
+ * at the interval in seconds set by the 
+ * {@code cors.configurationFile.reloadInterval} filter init parameter. 
+ * Changed files are parsed off the request path and the new policies are
+ * then applied to all subsequent requests at once. If a file cannot be
+ * loaded or parsed the current policies are kept. Reloads and failures
+ * are reported to the servlet context log.
+ *
+ * <p>If the {@code cors.jmx} filter init parameter is {@code true}, a
+ * {@link CORSFilterMXBean} is registered with the platform MBean server,
+ * to inspect the effective default policy and the request counters, reset
+ * the counters and reload the configuration files.
+ *
  * @author Vladimir Dzhuvinov
  * @author David Bellem
  * @author Gervasio Amy
@@ -45,15 +99,182 @@ public class CORSFilter implements Filter {
 
 
 	/**
-	 * The CORS filer configuration.
+	 * The prefix of the servlet context attribute names under which the
+	 * filters publish their {@link CORSMetrics}, followed by the filter
+	 * name.
+	 */
+	public static final String METRICS_ATTRIBUTE_PREFIX = "com.thetransactioncompany.cors.metrics.";
+
+
+	/**
+	 * The character set of the error messages.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The content type of the error messages.
+	 */
+	private static final String MESSAGE_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+
+	/**
+	 * The error message prefix.
+	 */
+	private static final String MESSAGE_PREFIX = "Cross-Origin Resource Sharing (CORS) Filter: ";
+
+
+	/**
+	 * The encoded error message line terminator.
+	 */
+	private static final byte[] MESSAGE_EOL = "\n".getBytes(UTF_8);
+
+
+	/**
+	 * The encoded message for denied generic HTTP requests.
+	 */
+	private static final byte[] GENERIC_REQUEST_DENIED_MESSAGE =
+		(MESSAGE_PREFIX + "Generic HTTP requests not allowed").getBytes(UTF_8);
+
+
+	/**
+	 * The encoded message for denied origins.
+	 */
+	private static final byte[] ORIGIN_DENIED_MESSAGE =
+		(MESSAGE_PREFIX + "CORS origin denied").getBytes(UTF_8);
+
+
+	/**
+	 * The encoded message for unsupported HTTP methods.
+	 */
+	private static final byte[] UNSUPPORTED_METHOD_MESSAGE =
+		(MESSAGE_PREFIX + "Unsupported HTTP method").getBytes(UTF_8);
+
+
+	/**
+	 * The encoded message for unsupported HTTP request headers.
+	 */
+	private static final byte[] UNSUPPORTED_HEADER_MESSAGE =
+		(MESSAGE_PREFIX + "Unsupported HTTP request header").getBytes(UTF_8);
+
+
+	/**
+	 * The encoded messages for invalid CORS requests, keyed by exception
+	 * message.
+	 */
+	private static final Map<String,byte[]> INVALID_REQUEST_MESSAGES;
+
+
+	static {
+		Map<String,byte[]> messages = new HashMap<String,byte[]>();
+
+		for (String msg: Arrays.asList("Invalid simple/actual CORS request",
+		                               "Invalid preflight CORS request",
+		                               "Invalid preflight CORS request: Missing Access-Control-Request-Method header",
+		                               "Invalid preflight CORS request: Bad request header value"))
+			messages.put(msg, (MESSAGE_PREFIX + msg).getBytes(UTF_8));
+
+		INVALID_REQUEST_MESSAGES = Collections.unmodifiableMap(messages);
+	}
+
+
+	/**
+	 * Selects the CORS request handler, which encapsulates the CORS
+	 * request handling logic together with the CORS filter configuration.
+	 * Replaced as a whole when the configuration is set or reloaded, so
+	 * that a request is always processed by a single policy.
+	 */
+	private final AtomicReference<PolicyRouter> router =
+		new AtomicReference<PolicyRouter>();
+
+
+	/**
+	 * The configuration loader, {@code null} if configuration reloading
+	 * is disabled.
+	 */
+	private CORSConfigurationLoader configLoader;
+
+
+	/**
+	 * The most recently loaded configuration properties, {@code null} if
+	 * configuration reloading is disabled.
+	 */
+	private Properties configProperties;
+
+
+
+	/**
+	 * The most recently loaded host configuration properties, 
+	 * {@code null} if configuration reloading is disabled.
+	 */
+	private Map<String,Properties> hostConfigProperties;
+
+
+
+	/**
+	 * The most recently loaded path configuration properties, 
+	 * {@code null} if configuration reloading is disabled.
 	 */
-	private CORSConfiguration config;
+	private Map<String,Properties> pathConfigProperties;
 
 
 	/**
-	 * Encapsulates the CORS request handling logic.
+	 * The servlet context, for logging, {@code null} if not initialised
+	 * by the servlet container.
 	 */
-	private CORSRequestHandler handler;
+	private ServletContext servletContext;
+
+
+	/**
+	 * Runs the periodic configuration reload, {@code null} if disabled.
+	 */
+	private ScheduledExecutorService reloadExecutor;
+
+
+	/**
+	 * The number of successful configuration reloads.
+	 */
+	private final AtomicLong reloadCount = new AtomicLong();
+
+
+	/**
+	 * The number of failed configuration reloads.
+	 */
+	private final AtomicLong reloadFailureCount = new AtomicLong();
+
+
+	/**
+	 * The duration of the last successful configuration reload, in
+	 * milliseconds.
+	 */
+	private volatile long lastReloadDuration;
+
+
+	/**
+	 * The time of the last successful configuration reload, in
+	 * milliseconds since the epoch.
+	 */
+	private volatile long lastReloadTime;
+
+
+	/**
+	 * The name of the registered {@link CORSFilterMXBean}, {@code null}
+	 * if not registered.
+	 */
+	private ObjectName mbeanName;
+
+
+	/**
+	 * The name of the servlet context attribute holding the metrics,
+	 * {@code null} if not initialised by the servlet container.
+	 */
+	private String metricsAttributeName;
+
+
+	/**
+	 * The CORS request metrics.
+	 */
+	private final CORSMetrics metrics = new CORSMetrics();
 
 
 	/**
@@ -90,8 +311,52 @@ public class CORSFilter implements Filter {
 	 */
 	public void setConfiguration(final CORSConfiguration config) {
 
-		this.config = config;
-		handler = new CORSRequestHandler(config);
+		Map<String,CORSConfiguration> hostConfigs = Collections.emptyMap();
+
+		setConfiguration(config, hostConfigs);
+	}
+
+
+	/**
+	 * Sets the default cross-origin access policy for this CORS filter
+	 * together with the policies for individual hosts. Replaces any 
+	 * previously set host policies.
+	 *
+	 * @param config      The default cross-origin access policy. Must not
+	 *                    be {@code null}.
+	 * @param hostConfigs The cross-origin access policies for individual
+	 *                    hosts, keyed by host name. Must not be 
+	 *                    {@code null}.
+	 */
+	public void setConfiguration(final CORSConfiguration config,
+				     final Map<String,CORSConfiguration> hostConfigs) {
+
+		Map<String,CORSConfiguration> pathConfigs = Collections.emptyMap();
+
+		setConfiguration(config, hostConfigs, pathConfigs);
+	}
+
+
+	/**
+	 * Sets the default cross-origin access policy for this CORS filter
+	 * together with the policies for individual hosts and request path
+	 * prefixes. Replaces any previously set host and path policies.
+	 *
+	 * @param config      The default cross-origin access policy. Must not
+	 *                    be {@code null}.
+	 * @param hostConfigs The cross-origin access policies for individual
+	 *                    hosts, keyed by host name. Must not be 
+	 *                    {@code null}.
+	 * @param pathConfigs The cross-origin access policies for request 
+	 *                    paths within the web application, keyed by path
+	 *                    prefix, {@code null} values to bypass CORS 
+	 *                    processing. Must not be {@code null}.
+	 */
+	public void setConfiguration(final CORSConfiguration config,
+				     final Map<String,CORSConfiguration> hostConfigs,
+				     final Map<String,CORSConfiguration> pathConfigs) {
+
+		router.set(new PolicyRouter(config, hostConfigs, pathConfigs, metrics.getOriginCardinality()));
 	}
 
 
@@ -103,7 +368,123 @@ public class CORSFilter implements Filter {
 	 */
 	public CORSConfiguration getConfiguration() {
 
-		return config;
+		PolicyRouter r = router.get();
+
+		return r != null ? r.getDefaultHandler().getConfiguration() : null;
+	}
+
+
+	/**
+	 * Gets the cross-origin access policy that applies to requests to the
+	 * specified host.
+	 *
+	 * @param host The host name. Must not be {@code null}.
+	 *
+	 * @return The cross-origin access policy for the host, the default 
+	 *         policy if none is set for the host, {@code null} if the 
+	 *         filter is not initialised.
+	 */
+	public CORSConfiguration getConfiguration(final String host) {
+
+		PolicyRouter r = router.get();
+
+		return r != null ? r.getHandler(host).getConfiguration() : null;
+	}
+
+
+	/**
+	 * Gets the cross-origin access policy that applies to requests to the
+	 * specified path.
+	 *
+	 * @param path The request path within the web application. Must not
+	 *             be {@code null}.
+	 *
+	 * @return The cross-origin access policy for the longest matching 
+	 *         path prefix, the default policy if none is set for the path,
+	 *         {@code null} if CORS processing is bypassed for the path or 
+	 *         the filter is not initialised.
+	 */
+	public CORSConfiguration getPathConfiguration(final String path) {
+
+		PolicyRouter r = router.get();
+
+		if (r == null)
+			return null;
+
+		CORSRequestHandler h = r.getPathHandler(path);
+
+		return h != null ? h.getConfiguration() : null;
+	}
+
+
+	/**
+	 * Parses the specified path configuration properties.
+	 *
+	 * @param pathProps The path configuration properties, keyed by path
+	 *                  prefix, {@code null} values for bypassed path
+	 *                  prefixes. Must not be {@code null}.
+	 *
+	 * @return The path configurations, keyed by path prefix, 
+	 *         {@code null} values for bypassed path prefixes.
+	 *
+	 * @throws CORSConfigurationException If parsing of one or more
+	 *                                    properties failed due to an
+	 *                                    illegal value.
+	 */
+	private static Map<String,CORSConfiguration> parsePathConfigurations(final Map<String,Properties> pathProps)
+		throws CORSConfigurationException {
+
+		Map<String,CORSConfiguration> pathConfigs = new HashMap<String,CORSConfiguration>();
+
+		for (Map.Entry<String,Properties> entry: pathProps.entrySet()) {
+
+			if (entry.getValue() == null) {
+				pathConfigs.put(entry.getKey(), null);
+				continue;
+			}
+
+			try {
+				pathConfigs.put(entry.getKey(), new CORSConfiguration(entry.getValue()));
+
+			} catch (CORSConfigurationException e) {
+
+				throw new CORSConfigurationException("Bad configuration for path " + entry.getKey() + ": " + e.getMessage(), e);
+			}
+		}
+
+		return pathConfigs;
+	}
+
+
+	/**
+	 * Parses the specified host configuration properties.
+	 *
+	 * @param hostProps The host configuration properties, keyed by host
+	 *                  name. Must not be {@code null}.
+	 *
+	 * @return The host configurations, keyed by host name.
+	 *
+	 * @throws CORSConfigurationException If parsing of one or more
+	 *                                    properties failed due to an
+	 *                                    illegal value.
+	 */
+	private static Map<String,CORSConfiguration> parseHostConfigurations(final Map<String,Properties> hostProps)
+		throws CORSConfigurationException {
+
+		Map<String,CORSConfiguration> hostConfigs = new HashMap<String,CORSConfiguration>();
+
+		for (Map.Entry<String,Properties> entry: hostProps.entrySet()) {
+
+			try {
+				hostConfigs.put(entry.getKey(), new CORSConfiguration(entry.getValue()));
+
+			} catch (CORSConfigurationException e) {
+
+				throw new CORSConfigurationException("Bad configuration for host " + entry.getKey() + ": " + e.getMessage(), e);
+			}
+		}
+
+		return hostConfigs;
 	}
 
 
@@ -120,45 +501,347 @@ public class CORSFilter implements Filter {
 	public void init(final FilterConfig filterConfig)
 		throws ServletException {
 
-		CORSConfigurationLoader configLoader = new CORSConfigurationLoader(filterConfig);
+		servletContext = filterConfig.getServletContext();
+
+		CORSConfigurationLoader loader = new CORSConfigurationLoader(filterConfig);
+
+		long reloadInterval;
+
+		boolean jmxEnabled;
 
 		try {
-			setConfiguration(configLoader.load());
+			Properties props = loader.loadProperties();
+
+			Map<String,Properties> hostProps = loader.loadHostProperties();
+
+			Map<String,Properties> pathProps = loader.loadPathProperties();
+
+			setConfiguration(new CORSConfiguration(props),
+			                 parseHostConfigurations(hostProps),
+			                 parsePathConfigurations(pathProps));
+
+			reloadInterval = loader.getReloadInterval();
+
+			jmxEnabled = loader.isJMXEnabled();
+
+			// Keep the loader for periodic or JMX-triggered reloads
+			if ((reloadInterval > 0 || jmxEnabled) &&
+			    (loader.getConfigurationFile() != null ||
+			     loader.getHostConfigurationDirectory() != null ||
+			     loader.getPathPolicies() != null)) {
+
+				configLoader = loader;
+				configProperties = props;
+				hostConfigProperties = hostProps;
+				pathConfigProperties = pathProps;
+			}
 
 		} catch (CORSConfigurationException e) {
 
 			throw new ServletException(e.getMessage(), e);
 		}
+
+		if (configLoader != null && reloadInterval > 0) {
+
+			reloadExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable r) {
+
+					Thread thread = new Thread(r, "CORS configuration reloader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+			reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+
+					reloadConfiguration();
+				}
+
+			}, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+		}
+
+		if (jmxEnabled)
+			registerMBean(filterConfig);
+
+		metricsAttributeName = METRICS_ATTRIBUTE_PREFIX + filterConfig.getFilterName();
+		servletContext.setAttribute(metricsAttributeName, metrics);
+	}
+
+
+	/**
+	 * Registers a {@link CORSFilterMXBean} for this filter with the
+	 * platform MBean server. The object name is composed of the web
+	 * application context path and the filter name, e.g.
+	 * {@code com.thetransactioncompany.cors:type=CORSFilter,context="/app",name="CORS"}.
+	 * A failed registration is logged and doesn't stop the filter.
+	 *
+	 * @param filterConfig The filter configuration.
+	 */
+	private void registerMBean(final FilterConfig filterConfig) {
+
+		String contextPath = servletContext != null ? servletContext.getContextPath() : null;
+
+		if (contextPath == null || contextPath.isEmpty())
+			contextPath = "/";
+
+		try {
+			ObjectName name = new ObjectName("com.thetransactioncompany.cors:type=CORSFilter" +
+				",context=" + ObjectName.quote(contextPath) +
+				",name=" + ObjectName.quote(String.valueOf(filterConfig.getFilterName())));
+
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new CORSFilterManagement(this), name);
+
+			mbeanName = name;
+
+		} catch (JMException e) {
+
+			log("CORS filter MBean registration failed: " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Gets the name of the registered {@link CORSFilterMXBean}.
+	 *
+	 * @return The object name, {@code null} if not registered.
+	 */
+	public ObjectName getMBeanName() {
+
+		return mbeanName;
+	}
+
+
+	/**
+	 * Reloads the CORS configuration file, host configuration directory
+	 * and path policy files and, if their properties have changed, 
+	 * applies the new configuration. The current configuration is kept if a file couldn't
+	 * be loaded or parsed. Invoked periodically if the 
+	 * {@code cors.configurationFile.reloadInterval} filter init parameter
+	 * is set, and on demand through the {@link CORSFilterMXBean} if the
+	 * {@code cors.jmx} filter init parameter is set.
+	 *
+	 * @return {@code true} if a new configuration was applied, else
+	 *         {@code false}.
+	 */
+	public synchronized boolean reloadConfiguration() {
+
+		if (configLoader == null)
+			return false;
+
+		final long startTime = System.nanoTime();
+
+		try {
+			Properties props = configLoader.loadProperties();
+
+			Map<String,Properties> hostProps = configLoader.loadHostProperties();
+
+			Map<String,Properties> pathProps = configLoader.loadPathProperties();
+
+			if (props.equals(configProperties) &&
+			    hostProps.equals(hostConfigProperties) &&
+			    pathProps.equals(pathConfigProperties))
+				return false;
+
+			setConfiguration(new CORSConfiguration(props),
+			                 parseHostConfigurations(hostProps),
+			                 parsePathConfigurations(pathProps));
+
+			configProperties = props;
+			hostConfigProperties = hostProps;
+			pathConfigProperties = pathProps;
+
+		} catch (Exception e) {
+
+			// Configuration or unexpected runtime exception
+
+			reloadFailureCount.incrementAndGet();
+			log("CORS configuration reload failed, keeping the current configuration: " + e.getMessage(), e);
+			return false;
+		}
+
+		lastReloadDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		lastReloadTime = System.currentTimeMillis();
+		reloadCount.incrementAndGet();
+		log("CORS configuration reloaded in " + lastReloadDuration + " ms", null);
+		return true;
+	}
+
+
+	/**
+	 * Gets the number of successful configuration reloads.
+	 *
+	 * @return The reload count.
+	 */
+	public long getReloadCount() {
+
+		return reloadCount.get();
+	}
+
+
+	/**
+	 * Gets the number of failed configuration reloads.
+	 *
+	 * @return The reload failure count.
+	 */
+	public long getReloadFailureCount() {
+
+		return reloadFailureCount.get();
+	}
+
+
+	/**
+	 * Gets the duration of the last successful configuration reload.
+	 *
+	 * @return The reload duration in milliseconds, zero if none.
+	 */
+	public long getLastReloadDuration() {
+
+		return lastReloadDuration;
+	}
+
+
+	/**
+	 * Gets the time of the last successful configuration reload.
+	 *
+	 * @return The time in milliseconds since the epoch, zero if none.
+	 */
+	public long getLastReloadTime() {
+
+		return lastReloadTime;
+	}
+
+
+	/**
+	 * Gets the handler for the default policy.
+	 *
+	 * @return The default handler, {@code null} if not configured.
+	 */
+	CORSRequestHandler getHandler() {
+
+		PolicyRouter r = router.get();
+
+		return r != null ? r.getDefaultHandler() : null;
+	}
+
+
+	/**
+	 * Gets the CORS request metrics of this filter. Filters initialised
+	 * by the servlet container also publish their metrics as a servlet 
+	 * context attribute, named {@link #METRICS_ATTRIBUTE_PREFIX} followed
+	 * by the filter name.
+	 *
+	 * @return The CORS request metrics.
+	 */
+	public CORSMetrics getMetrics() {
+
+		return metrics;
+	}
+
+
+	/**
+	 * Writes the specified message to the servlet context log, if
+	 * available.
+	 *
+	 * @param msg   The message.
+	 * @param cause The exception, {@code null} if none.
+	 */
+	private void log(final String msg, final Throwable cause) {
+
+		if (servletContext == null)
+			return;
+
+		if (cause != null)
+			servletContext.log(msg, cause);
+		else
+			servletContext.log(msg);
+	}
+
+
+	/**
+	 * Returns the encoded error message for the specified invalid CORS
+	 * request exception, i.e. the prefix followed by the exception
+	 * message. The messages of {@link CORSRequestHandler} are encoded
+	 * once at class load.
+	 *
+	 * @param e The invalid CORS request exception. Must not be 
+	 *          {@code null}.
+	 *
+	 * @return The encoded message.
+	 */
+	private static byte[] encodeMessage(final InvalidCORSRequestException e) {
+
+		byte[] encoded = INVALID_REQUEST_MESSAGES.get(e.getMessage());
+
+		return encoded != null ? encoded : (MESSAGE_PREFIX + e.getMessage()).getBytes(UTF_8);
 	}
 
 
 	/**
 	 * Produces a simple HTTP text/plain response with the specified status
-	 * code and message.
+	 * code and pre-encoded message. The message is written directly to
+	 * the servlet output stream with an explicit content length. If
+	 * {@link CORSConfiguration#omitErrorMessages} is set the body is left
+	 * empty.
 	 *
 	 * <p>Note: The CORS filter avoids falling back to the default web
 	 * container error page (typically a richly-formatted HTML page) to
 	 * make it easier for XHR debugger tools to identify the cause of
 	 * failed requests.
 	 *
+	 * @param config   The applied CORS configuration. Must not be
+	 *                 {@code null}.
 	 * @param response The HTTP servlet response. Must not be {@code null}.
 	 * @param sc       The HTTP status code.
-	 * @param msg      The message.
+	 * @param msg      The encoded message, without a line terminator.
+	 *                 Must not be {@code null}.
+	 * @param detail   Optional detail to append to the message, separated
+	 *                 by a colon, {@code null} if none.
 	 *
 	 * @throws IOException      On a I/O exception.
 	 * @throws ServletException On a general request processing exception.
 	 */
-	private void printMessage(final HttpServletResponse response, final int sc, final String msg)
+	private static void printMessage(final CORSConfiguration config,
+					 final HttpServletResponse response,
+					 final int sc,
+					 final byte[] msg,
+					 final String detail)
 		throws IOException, ServletException {
 
 		// Set the status code
 		response.setStatus(sc);
 
-		// Write the error message
 		response.resetBuffer();
-		response.setContentType("text/plain");
-		PrintWriter out = response.getWriter();
-		out.println("Cross-Origin Resource Sharing (CORS) Filter: " + msg);
+
+		if (config.omitErrorMessages) {
+			response.setContentLength(0);
+			return;
+		}
+
+		byte[] detailBytes = null;
+
+		int length = msg.length + MESSAGE_EOL.length;
+
+		if (detail != null) {
+			detailBytes = (": " + detail).getBytes(UTF_8);
+			length += detailBytes.length;
+		}
+
+		// Write the error message
+		response.setContentType(MESSAGE_CONTENT_TYPE);
+		response.setContentLength(length);
+
+		ServletOutputStream out = response.getOutputStream();
+		out.write(msg);
+
+		if (detailBytes != null)
+			out.write(detailBytes);
+
+		out.write(MESSAGE_EOL);
 	}
 
 
@@ -179,17 +862,42 @@ public class CORSFilter implements Filter {
 		              final FilterChain chain)
 		throws IOException, ServletException {
 
-		CORSRequestType type = CORSRequestType.detect(request);
+		// Apply a single policy to the entire request
+		final CORSRequestHandler handler = router.get().select(request);
+
+		if (handler == null) {
+
+			// CORS processing bypassed for the request path
+			metrics.recordBypass();
+			chain.doFilter(request, response);
+			return;
+		}
+
+		final CORSConfiguration config = handler.getConfiguration();
+
+		// Read the CORS request headers once
+		CORSRequestContext context = CORSRequestContext.create(request);
+
+		CORSRequestType type = context.getType();
+
+		metrics.recordRequest(type);
 
 		// Tag if configured
 		if (config.tagRequests)
-			RequestTagger.tag(request, type);
+			RequestTagger.tag(request, context);
 
 		try {
 			if (type.equals(CORSRequestType.ACTUAL)) {
 
 				// Simple / actual CORS request
-				handler.handleActualRequest(request, response);
+				final long start = System.nanoTime();
+
+				try {
+					handler.handleActualRequest(context, response);
+
+				} finally {
+					metrics.recordLatency(System.nanoTime() - start);
+				}
 
 				// Preserve CORS response headers on reset()
 				CORSResponseWrapper responseWrapper = new CORSResponseWrapper(response);
@@ -200,7 +908,14 @@ public class CORSFilter implements Filter {
 
 				// Preflight CORS request, handle but don't 
 				// pass further down the chain
-				handler.handlePreflightRequest(request, response);
+				final long start = System.nanoTime();
+
+				try {
+					handler.handlePreflightRequest(context, response);
+
+				} finally {
+					metrics.recordLatency(System.nanoTime() - start);
+				}
 
 			} else if (config.allowGenericHttpRequests) {
 
@@ -210,39 +925,29 @@ public class CORSFilter implements Filter {
 			} else {
 
 				// Generic HTTP requests denied
-				printMessage(response, HttpServletResponse.SC_FORBIDDEN, "Generic HTTP requests not allowed");
+				metrics.recordGenericDenial();
+				printMessage(config, response, HttpServletResponse.SC_FORBIDDEN, GENERIC_REQUEST_DENIED_MESSAGE, null);
 			}
 
 		} catch (InvalidCORSRequestException e) {
 
-			printMessage(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			metrics.recordDenial(e);
+			printMessage(config, response, HttpServletResponse.SC_BAD_REQUEST, encodeMessage(e), null);
 
 		} catch (CORSOriginDeniedException e) {
 
-			String msg = e.getMessage() + ": " + e.getRequestOrigin();
-			printMessage(response, HttpServletResponse.SC_FORBIDDEN, msg);
+			metrics.recordDenial(e);
+			printMessage(config, response, HttpServletResponse.SC_FORBIDDEN, ORIGIN_DENIED_MESSAGE, String.valueOf(e.getRequestOrigin()));
 
 		} catch (UnsupportedHTTPMethodException e) {
 
-			String msg = e.getMessage();
-
-			String method = e.getRequestedMethod();
-
-			if (method != null)
-				msg = msg + ": " + method;
-
-			printMessage(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
+			metrics.recordDenial(e);
+			printMessage(config, response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, UNSUPPORTED_METHOD_MESSAGE, e.getRequestedMethod());
 
 		} catch (UnsupportedHTTPHeaderException e) {
 
-			String msg = e.getMessage();
-
-			String header = e.getRequestHeader();
-
-			if (header != null)
-				msg = msg + ": " + header;
-
-			printMessage(response, HttpServletResponse.SC_FORBIDDEN, msg);
+			metrics.recordDenial(e);
+			printMessage(config, response, HttpServletResponse.SC_FORBIDDEN, UNSUPPORTED_HEADER_MESSAGE, e.getRequestHeader());
 		}
 	}
 
@@ -284,6 +989,26 @@ public class CORSFilter implements Filter {
 	@Override
 	public void destroy() {
 
-		// do nothing
+		if (reloadExecutor != null)
+			reloadExecutor.shutdownNow();
+
+		if (mbeanName != null) {
+
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+
+			} catch (JMException e) {
+
+				log("CORS filter MBean unregistration failed: " + e.getMessage(), e);
+			}
+
+			mbeanName = null;
+		}
+
+		if (metricsAttributeName != null) {
+
+			servletContext.removeAttribute(metricsAttributeName);
+			metricsAttributeName = null;
+		}
 	}
 }
@@ -0,0 +1,309 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Map;
+
+
+/**
+ * Management interface of a {@link CORSFilter}, registered with the
+ * platform MBean server when the {@code cors.jmx} filter init parameter is
+ * {@code true}. Exposes the effective default policy, the request
+ * counters, the cache occupancy and the configuration reload status.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface CORSFilterMXBean {
+
+
+	/**
+	 * Returns {@code true} if any origin is allowed.
+	 *
+	 * @return {@code true} if any origin is allowed.
+	 */
+	public boolean isAllowAnyOrigin();
+
+
+	/**
+	 * Returns the allowed origins and origin patterns.
+	 *
+	 * @return The allowed origins.
+	 */
+	public String[] getAllowedOrigins();
+
+
+	/**
+	 * Returns {@code true} if subdomains of the allowed origins are
+	 * allowed.
+	 *
+	 * @return {@code true} if subdomains are allowed.
+	 */
+	public boolean isAllowSubdomains();
+
+
+	/**
+	 * Returns {@code true} if generic (non-CORS) requests are allowed.
+	 *
+	 * @return {@code true} if generic requests are allowed.
+	 */
+	public boolean isAllowGenericHttpRequests();
+
+
+	/**
+	 * Returns the supported HTTP methods.
+	 *
+	 * @return The supported methods.
+	 */
+	public String[] getSupportedMethods();
+
+
+	/**
+	 * Returns {@code true} if any header is supported.
+	 *
+	 * @return {@code true} if any header is supported.
+	 */
+	public boolean isSupportAnyHeader();
+
+
+	/**
+	 * Returns the supported headers.
+	 *
+	 * @return The supported headers.
+	 */
+	public String[] getSupportedHeaders();
+
+
+	/**
+	 * Returns the exposed headers.
+	 *
+	 * @return The exposed headers.
+	 */
+	public String[] getExposedHeaders();
+
+
+	/**
+	 * Returns {@code true} if credentials are supported.
+	 *
+	 * @return {@code true} if credentials are supported.
+	 */
+	public boolean isSupportsCredentials();
+
+
+	/**
+	 * Returns the preflight max age.
+	 *
+	 * @return The max age in seconds, -1 if unspecified.
+	 */
+	public int getMaxAge();
+
+
+	/**
+	 * Returns the number of simple / actual CORS requests.
+	 *
+	 * @return The number of actual requests.
+	 */
+	public long getActualRequests();
+
+
+	/**
+	 * Returns the number of preflight CORS requests.
+	 *
+	 * @return The number of preflight requests.
+	 */
+	public long getPreflightRequests();
+
+
+	/**
+	 * Returns the number of non-CORS requests.
+	 *
+	 * @return The number of other requests.
+	 */
+	public long getOtherRequests();
+
+
+	/**
+	 * Returns the number of requests which bypassed CORS processing.
+	 *
+	 * @return The number of bypassed requests.
+	 */
+	public long getBypassedRequests();
+
+
+	/**
+	 * Returns the total number of denied requests.
+	 *
+	 * @return The number of denials.
+	 */
+	public long getDenials();
+
+
+	/**
+	 * Returns the number of requests denied for their origin.
+	 *
+	 * @return The number of origin denials.
+	 */
+	public long getOriginDenials();
+
+
+	/**
+	 * Returns the number of requests denied for an unsupported method.
+	 *
+	 * @return The number of method denials.
+	 */
+	public long getMethodDenials();
+
+
+	/**
+	 * Returns the number of preflight requests denied for an unsupported
+	 * header.
+	 *
+	 * @return The number of header denials.
+	 */
+	public long getHeaderDenials();
+
+
+	/**
+	 * Returns the number of requests denied as invalid CORS requests.
+	 *
+	 * @return The number of invalid requests.
+	 */
+	public long getInvalidRequests();
+
+
+	/**
+	 * Returns the number of denied generic requests.
+	 *
+	 * @return The number of generic request denials.
+	 */
+	public long getGenericDenials();
+
+
+	/**
+	 * Returns the most frequently denied origins, counted since the
+	 * filter was started or its statistics were last reset.
+	 *
+	 * @return The origins with their estimated denial counts.
+	 */
+	public Map<String,Long> getTopDeniedOrigins();
+
+
+	/**
+	 * Returns the estimated number of distinct allowed origins in the
+	 * current hour. Zero unless the policy enables
+	 * {@link CORSConfiguration#countDistinctOrigins}.
+	 *
+	 * @return The estimated distinct allowed origins.
+	 */
+	public long getDistinctAllowedOrigins();
+
+
+	/**
+	 * Returns the estimated number of distinct denied origins in the
+	 * current hour. Zero unless the policy enables
+	 * {@link CORSConfiguration#countDistinctOrigins}.
+	 *
+	 * @return The estimated distinct denied origins.
+	 */
+	public long getDistinctDeniedOrigins();
+
+
+	/**
+	 * Returns the estimated number of distinct allowed origins in the
+	 * previous hour. Zero unless the policy enables
+	 * {@link CORSConfiguration#countDistinctOrigins}.
+	 *
+	 * @return The estimated distinct allowed origins, zero if none.
+	 */
+	public long getPreviousDistinctAllowedOrigins();
+
+
+	/**
+	 * Returns the estimated number of distinct denied origins in the
+	 * previous hour. Zero unless the policy enables
+	 * {@link CORSConfiguration#countDistinctOrigins}.
+	 *
+	 * @return The estimated distinct denied origins, zero if none.
+	 */
+	public long getPreviousDistinctDeniedOrigins();
+
+
+	/**
+	 * Returns the mean time spent in the CORS request checks.
+	 *
+	 * @return The mean latency in nanoseconds, zero if none.
+	 */
+	public long getMeanLatency();
+
+
+	/**
+	 * Returns the number of entries in the origin cache of the default
+	 * policy.
+	 *
+	 * @return The number of entries, zero if disabled.
+	 */
+	public int getOriginCacheSize();
+
+
+	/**
+	 * Returns the capacity of the origin cache of the default policy.
+	 *
+	 * @return The capacity, zero if disabled.
+	 */
+	public int getOriginCacheCapacity();
+
+
+	/**
+	 * Returns the number of entries in the preflight cache of the
+	 * default policy.
+	 *
+	 * @return The number of entries, zero if disabled.
+	 */
+	public int getPreflightCacheSize();
+
+
+	/**
+	 * Returns the capacity of the preflight cache of the default policy.
+	 *
+	 * @return The capacity, zero if disabled.
+	 */
+	public int getPreflightCacheCapacity();
+
+
+	/**
+	 * Returns the number of successful configuration reloads.
+	 *
+	 * @return The reload count.
+	 */
+	public long getReloadCount();
+
+
+	/**
+	 * Returns the number of failed configuration reloads.
+	 *
+	 * @return The reload failure count.
+	 */
+	public long getReloadFailureCount();
+
+
+	/**
+	 * Returns the time of the last successful configuration reload.
+	 *
+	 * @return The time in milliseconds since the epoch, zero if none.
+	 */
+	public long getLastReloadTime();
+
+
+	/**
+	 * Resets the request counters.
+	 */
+	public void resetStatistics();
+
+
+	/**
+	 * Reloads the configuration files, as in
+	 * {@link CORSFilter#reloadConfiguration}.
+	 *
+	 * @return {@code true} if a new configuration was applied, else
+	 *         {@code false}.
+	 */
+	public boolean reloadConfiguration();
+}
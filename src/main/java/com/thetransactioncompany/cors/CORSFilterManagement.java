@@ -0,0 +1,319 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Implements the {@link CORSFilterMXBean management interface} of a CORS
+ * filter. The policy attributes reflect the current default configuration,
+ * also after a reload.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class CORSFilterManagement implements CORSFilterMXBean {
+
+
+	/**
+	 * The managed CORS filter.
+	 */
+	private final CORSFilter filter;
+
+
+	/**
+	 * Creates a new management object for the specified CORS filter.
+	 *
+	 * @param filter The CORS filter. Must not be {@code null}.
+	 */
+	CORSFilterManagement(final CORSFilter filter) {
+
+		this.filter = filter;
+	}
+
+
+	/**
+	 * Returns the string representations of the specified objects.
+	 *
+	 * @param objects The objects. Must not be {@code null}.
+	 *
+	 * @return The strings.
+	 */
+	private static String[] toStrings(final Collection<?> objects) {
+
+		List<String> strings = new ArrayList<String>(objects.size());
+
+		for (Object o: objects)
+			strings.add(o.toString());
+
+		return strings.toArray(new String[strings.size()]);
+	}
+
+
+	@Override
+	public boolean isAllowAnyOrigin() {
+
+		return filter.getConfiguration().allowAnyOrigin;
+	}
+
+
+	@Override
+	public String[] getAllowedOrigins() {
+
+		CORSConfiguration config = filter.getConfiguration();
+
+		List<String> origins = new ArrayList<String>();
+
+		for (ValidatedOrigin origin: config.allowedOrigins)
+			origins.add(origin.toString());
+
+		origins.addAll(config.allowedOriginPatterns);
+
+		return origins.toArray(new String[origins.size()]);
+	}
+
+
+	@Override
+	public boolean isAllowSubdomains() {
+
+		return filter.getConfiguration().allowSubdomains;
+	}
+
+
+	@Override
+	public boolean isAllowGenericHttpRequests() {
+
+		return filter.getConfiguration().allowGenericHttpRequests;
+	}
+
+
+	@Override
+	public String[] getSupportedMethods() {
+
+		return toStrings(filter.getConfiguration().supportedMethods);
+	}
+
+
+	@Override
+	public boolean isSupportAnyHeader() {
+
+		return filter.getConfiguration().supportAnyHeader;
+	}
+
+
+	@Override
+	public String[] getSupportedHeaders() {
+
+		return toStrings(filter.getConfiguration().supportedHeaders);
+	}
+
+
+	@Override
+	public String[] getExposedHeaders() {
+
+		return toStrings(filter.getConfiguration().exposedHeaders);
+	}
+
+
+	@Override
+	public boolean isSupportsCredentials() {
+
+		return filter.getConfiguration().supportsCredentials;
+	}
+
+
+	@Override
+	public int getMaxAge() {
+
+		return filter.getConfiguration().maxAge;
+	}
+
+
+	@Override
+	public long getActualRequests() {
+
+		return filter.getMetrics().snapshot().getActualRequests();
+	}
+
+
+	@Override
+	public long getPreflightRequests() {
+
+		return filter.getMetrics().snapshot().getPreflightRequests();
+	}
+
+
+	@Override
+	public long getOtherRequests() {
+
+		return filter.getMetrics().snapshot().getOtherRequests();
+	}
+
+
+	@Override
+	public long getBypassedRequests() {
+
+		return filter.getMetrics().snapshot().getBypassedRequests();
+	}
+
+
+	@Override
+	public long getDenials() {
+
+		return filter.getMetrics().snapshot().getDenials();
+	}
+
+
+	@Override
+	public long getOriginDenials() {
+
+		return filter.getMetrics().snapshot().getOriginDenials();
+	}
+
+
+	@Override
+	public long getMethodDenials() {
+
+		return filter.getMetrics().snapshot().getMethodDenials();
+	}
+
+
+	@Override
+	public long getHeaderDenials() {
+
+		return filter.getMetrics().snapshot().getHeaderDenials();
+	}
+
+
+	@Override
+	public long getInvalidRequests() {
+
+		return filter.getMetrics().snapshot().getInvalidRequests();
+	}
+
+
+	@Override
+	public long getGenericDenials() {
+
+		return filter.getMetrics().snapshot().getGenericDenials();
+	}
+
+
+	@Override
+	public Map<String,Long> getTopDeniedOrigins() {
+
+		return filter.getMetrics().getDeniedOrigins().getTopOrigins();
+	}
+
+
+	@Override
+	public long getDistinctAllowedOrigins() {
+
+		return filter.getMetrics().getOriginCardinality().getAllowedCount();
+	}
+
+
+	@Override
+	public long getDistinctDeniedOrigins() {
+
+		return filter.getMetrics().getOriginCardinality().getDeniedCount();
+	}
+
+
+	@Override
+	public long getPreviousDistinctAllowedOrigins() {
+
+		return filter.getMetrics().getOriginCardinality().getPreviousAllowedCount();
+	}
+
+
+	@Override
+	public long getPreviousDistinctDeniedOrigins() {
+
+		return filter.getMetrics().getOriginCardinality().getPreviousDeniedCount();
+	}
+
+
+	@Override
+	public long getMeanLatency() {
+
+		CORSMetrics.Snapshot snapshot = filter.getMetrics().snapshot();
+
+		long count = snapshot.getLatencyCount();
+
+		return count > 0 ? snapshot.getLatencySum() / count : 0;
+	}
+
+
+	@Override
+	public int getOriginCacheSize() {
+
+		BoundedCache<?,?> cache = filter.getHandler().getOriginCache();
+
+		return cache != null ? cache.size() : 0;
+	}
+
+
+	@Override
+	public int getOriginCacheCapacity() {
+
+		BoundedCache<?,?> cache = filter.getHandler().getOriginCache();
+
+		return cache != null ? cache.getCapacity() : 0;
+	}
+
+
+	@Override
+	public int getPreflightCacheSize() {
+
+		BoundedCache<?,?> cache = filter.getHandler().getPreflightCache();
+
+		return cache != null ? cache.size() : 0;
+	}
+
+
+	@Override
+	public int getPreflightCacheCapacity() {
+
+		BoundedCache<?,?> cache = filter.getHandler().getPreflightCache();
+
+		return cache != null ? cache.getCapacity() : 0;
+	}
+
+
+	@Override
+	public long getReloadCount() {
+
+		return filter.getReloadCount();
+	}
+
+
+	@Override
+	public long getReloadFailureCount() {
+
+		return filter.getReloadFailureCount();
+	}
+
+
+	@Override
+	public long getLastReloadTime() {
+
+		return filter.getLastReloadTime();
+	}
+
+
+	@Override
+	public void resetStatistics() {
+
+		filter.getMetrics().reset();
+	}
+
+
+	@Override
+	public boolean reloadConfiguration() {
+
+		return filter.reloadConfiguration();
+	}
+}
@@ -0,0 +1,438 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Counters of the CORS requests processed by a {@link CORSFilter}: the
+ * requests by type, the denials by cause, and a histogram of the time spent
+ * in the {@link CORSRequestHandler} checks.
+ *
+ * <p>The counters are {@link java.util.concurrent.atomic.LongAdder}s (see
+ * {@link CounterArray}), so that concurrent threads rarely update the same
+ * memory when recording. The
+ * latency histogram has fixed power-of-two buckets, from 256 nanoseconds
+ * to about 8.4 milliseconds, and an overflow bucket. Reporting code polls
+ * an immutable {@link Snapshot}, without locking the request path.
+ *
+ * <p>The most frequently denied origins are tracked in fixed memory by a
+ * {@link DeniedOriginTracker}, and the number of distinct allowed and
+ * denied origins per hour by an {@link OriginCardinality} estimator, which
+ * the {@link CORSRequestHandler} feeds from its origin checks if
+ * {@link CORSConfiguration#countDistinctOrigins} is set.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class CORSMetrics {
+
+
+	/**
+	 * The number of latency buckets, including the overflow bucket.
+	 */
+	public static final int LATENCY_BUCKETS = 17;
+
+
+	/**
+	 * The upper bound of the first latency bucket, as a power of two
+	 * exponent in nanoseconds.
+	 */
+	private static final int FIRST_BUCKET_SHIFT = 8;
+
+
+	private static final int ACTUAL = 0;
+	private static final int PREFLIGHT = 1;
+	private static final int OTHER = 2;
+	private static final int BYPASSED = 3;
+	private static final int INVALID = 4;
+	private static final int ORIGIN_DENIED = 5;
+	private static final int METHOD_DENIED = 6;
+	private static final int HEADER_DENIED = 7;
+	private static final int GENERIC_DENIED = 8;
+	private static final int LATENCY_SUM = 9;
+	private static final int LATENCY_BUCKET = 10;
+
+
+	/**
+	 * The number of counters.
+	 */
+	private static final int COUNTERS = LATENCY_BUCKET + LATENCY_BUCKETS;
+
+
+	/**
+	 * Immutable snapshot of the CORS metrics. The counters are read
+	 * without stopping concurrent updates, so a snapshot may be off by
+	 * the requests in flight.
+	 */
+	public static final class Snapshot {
+
+
+		/**
+		 * The counter values.
+		 */
+		private final long[] counts;
+
+
+		/**
+		 * The time of the snapshot, in milliseconds since the epoch.
+		 */
+		private final long timestamp;
+
+
+		/**
+		 * Creates a new snapshot.
+		 *
+		 * @param counts    The counter values.
+		 * @param timestamp The time of the snapshot.
+		 */
+		private Snapshot(final long[] counts, final long timestamp) {
+
+			this.counts = counts;
+			this.timestamp = timestamp;
+		}
+
+
+		/**
+		 * Returns the time of the snapshot.
+		 *
+		 * @return The time, in milliseconds since the epoch.
+		 */
+		public long getTimestamp() {
+
+			return timestamp;
+		}
+
+
+		/**
+		 * Returns the number of simple / actual CORS requests.
+		 *
+		 * @return The number of actual requests.
+		 */
+		public long getActualRequests() {
+
+			return counts[ACTUAL];
+		}
+
+
+		/**
+		 * Returns the number of preflight CORS requests.
+		 *
+		 * @return The number of preflight requests.
+		 */
+		public long getPreflightRequests() {
+
+			return counts[PREFLIGHT];
+		}
+
+
+		/**
+		 * Returns the number of non-CORS (generic) HTTP requests.
+		 *
+		 * @return The number of other requests.
+		 */
+		public long getOtherRequests() {
+
+			return counts[OTHER];
+		}
+
+
+		/**
+		 * Returns the number of requests which bypassed CORS
+		 * processing by a path policy.
+		 *
+		 * @return The number of bypassed requests.
+		 */
+		public long getBypassedRequests() {
+
+			return counts[BYPASSED];
+		}
+
+
+		/**
+		 * Returns the number of requests denied as invalid CORS
+		 * requests.
+		 *
+		 * @return The number of invalid requests.
+		 */
+		public long getInvalidRequests() {
+
+			return counts[INVALID];
+		}
+
+
+		/**
+		 * Returns the number of requests denied for their origin.
+		 *
+		 * @return The number of origin denials.
+		 */
+		public long getOriginDenials() {
+
+			return counts[ORIGIN_DENIED];
+		}
+
+
+		/**
+		 * Returns the number of requests denied for an unsupported
+		 * HTTP method.
+		 *
+		 * @return The number of method denials.
+		 */
+		public long getMethodDenials() {
+
+			return counts[METHOD_DENIED];
+		}
+
+
+		/**
+		 * Returns the number of preflight requests denied for an
+		 * unsupported header.
+		 *
+		 * @return The number of header denials.
+		 */
+		public long getHeaderDenials() {
+
+			return counts[HEADER_DENIED];
+		}
+
+
+		/**
+		 * Returns the number of generic HTTP requests denied by the
+		 * policy.
+		 *
+		 * @return The number of generic request denials.
+		 */
+		public long getGenericDenials() {
+
+			return counts[GENERIC_DENIED];
+		}
+
+
+		/**
+		 * Returns the total number of denied requests.
+		 *
+		 * @return The number of denials.
+		 */
+		public long getDenials() {
+
+			return counts[INVALID] + counts[ORIGIN_DENIED] + counts[METHOD_DENIED] +
+			       counts[HEADER_DENIED] + counts[GENERIC_DENIED];
+		}
+
+
+		/**
+		 * Returns the number of timed CORS request checks.
+		 *
+		 * @return The latency sample count.
+		 */
+		public long getLatencyCount() {
+
+			long count = 0;
+
+			for (int i = 0; i < LATENCY_BUCKETS; i++)
+				count += counts[LATENCY_BUCKET + i];
+
+			return count;
+		}
+
+
+		/**
+		 * Returns the total time spent in the timed CORS request
+		 * checks.
+		 *
+		 * @return The latency sum, in nanoseconds.
+		 */
+		public long getLatencySum() {
+
+			return counts[LATENCY_SUM];
+		}
+
+
+		/**
+		 * Returns the number of timed CORS request checks in the
+		 * specified latency bucket.
+		 *
+		 * @param bucket The bucket index, from 0 to
+		 *               {@link #LATENCY_BUCKETS} - 1.
+		 *
+		 * @return The bucket count (not cumulative).
+		 */
+		public long getLatencyBucketCount(final int bucket) {
+
+			return counts[LATENCY_BUCKET + bucket];
+		}
+	}
+
+
+	/**
+	 * The counters.
+	 */
+	private final CounterArray counters = new CounterArray(COUNTERS);
+
+
+	/**
+	 * The denied origin tracker.
+	 */
+	private final DeniedOriginTracker deniedOrigins = new DeniedOriginTracker();
+
+
+	/**
+	 * The distinct origin estimator.
+	 */
+	private final OriginCardinality originCardinality = new OriginCardinality();
+
+
+	/**
+	 * Returns the upper bound of the specified latency bucket.
+	 *
+	 * @param bucket The bucket index, from 0 to {@link #LATENCY_BUCKETS}
+	 *               - 1.
+	 *
+	 * @return The inclusive upper bound, in nanoseconds,
+	 *         {@code Long.MAX_VALUE} for the overflow bucket.
+	 */
+	public static long getLatencyBucketBound(final int bucket) {
+
+		if (bucket == LATENCY_BUCKETS - 1)
+			return Long.MAX_VALUE;
+
+		return 1L << (FIRST_BUCKET_SHIFT + bucket);
+	}
+
+
+	/**
+	 * Returns the latency bucket for the specified duration.
+	 *
+	 * @param nanos The duration, in nanoseconds.
+	 *
+	 * @return The bucket index.
+	 */
+	static int getLatencyBucket(final long nanos) {
+
+		if (nanos <= 1L << FIRST_BUCKET_SHIFT)
+			return 0;
+
+		int bucket = 64 - Long.numberOfLeadingZeros((nanos - 1) >> FIRST_BUCKET_SHIFT);
+
+		return bucket < LATENCY_BUCKETS ? bucket : LATENCY_BUCKETS - 1;
+	}
+
+
+	/**
+	 * Records a request of the specified CORS type.
+	 *
+	 * @param type The CORS request type. Must not be {@code null}.
+	 */
+	public void recordRequest(final CORSRequestType type) {
+
+		switch (type) {
+			case ACTUAL:
+				counters.increment(ACTUAL);
+				break;
+			case PREFLIGHT:
+				counters.increment(PREFLIGHT);
+				break;
+			default:
+				counters.increment(OTHER);
+		}
+	}
+
+
+	/**
+	 * Records a request which bypassed CORS processing.
+	 */
+	public void recordBypass() {
+
+		counters.increment(BYPASSED);
+	}
+
+
+	/**
+	 * Records a request denied with the specified CORS exception.
+	 *
+	 * @param e The CORS exception. Must not be {@code null}.
+	 */
+	public void recordDenial(final CORSException e) {
+
+		if (e instanceof CORSOriginDeniedException) {
+
+			counters.increment(ORIGIN_DENIED);
+
+			Origin origin = ((CORSOriginDeniedException)e).getRequestOrigin();
+
+			if (origin != null)
+				deniedOrigins.record(origin.toString());
+
+		} else if (e instanceof UnsupportedHTTPMethodException)
+			counters.increment(METHOD_DENIED);
+		else if (e instanceof UnsupportedHTTPHeaderException)
+			counters.increment(HEADER_DENIED);
+		else
+			counters.increment(INVALID);
+	}
+
+
+	/**
+	 * Records a denied generic HTTP request.
+	 */
+	public void recordGenericDenial() {
+
+		counters.increment(GENERIC_DENIED);
+	}
+
+
+	/**
+	 * Records the duration of a CORS request check.
+	 *
+	 * @param nanos The duration, in nanoseconds.
+	 */
+	public void recordLatency(final long nanos) {
+
+		counters.add(LATENCY_BUCKET + getLatencyBucket(nanos), 1L, LATENCY_SUM, nanos);
+	}
+
+
+	/**
+	 * Returns a snapshot of the metrics.
+	 *
+	 * @return The snapshot.
+	 */
+	public Snapshot snapshot() {
+
+		long[] counts = new long[COUNTERS];
+
+		counters.sumAll(counts);
+
+		return new Snapshot(counts, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Returns the tracker of the most frequently denied origins.
+	 *
+	 * @return The denied origin tracker.
+	 */
+	public DeniedOriginTracker getDeniedOrigins() {
+
+		return deniedOrigins;
+	}
+
+
+	/**
+	 * Returns the estimator of the distinct allowed and denied origins
+	 * per hour.
+	 *
+	 * @return The distinct origin estimator.
+	 */
+	public OriginCardinality getOriginCardinality() {
+
+		return originCardinality;
+	}
+
+
+	/**
+	 * Resets the metrics to zero.
+	 */
+	public void reset() {
+
+		counters.reset();
+		deniedOrigins.reset();
+		originCardinality.reset();
+	}
+}
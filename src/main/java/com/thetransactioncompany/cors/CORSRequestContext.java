@@ -0,0 +1,280 @@
+package com.thetransactioncompany.cors;
+
+
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * The CORS-relevant details of an HTTP request, read from the request
+ * headers in a single pass. Produced once per request by {@link CORSFilter}
+ * and passed on to {@link CORSRequestHandler} and {@link RequestTagger}, so
+ * that the headers are not looked up repeatedly. Other servers can create
+ * the context from a {@link CORSRequestView} of their native request.
+ * Immutable.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class CORSRequestContext {
+
+
+	/**
+	 * Shared context for all non-CORS requests.
+	 */
+	private static final CORSRequestContext OTHER =
+		new CORSRequestContext(CORSRequestType.OTHER, null, null, null, null);
+
+
+	/**
+	 * The detected request type.
+	 */
+	private final CORSRequestType type;
+
+
+	/**
+	 * The value of the Origin header.
+	 */
+	private final String origin;
+
+
+	/**
+	 * The HTTP method.
+	 */
+	private final String method;
+
+
+	/**
+	 * The value of the Access-Control-Request-Method header.
+	 */
+	private final String requestedMethod;
+
+
+	/**
+	 * The value of the Access-Control-Request-Headers header.
+	 */
+	private final String requestedHeaders;
+
+
+	/**
+	 * Creates a new CORS request context.
+	 *
+	 * @param type             The detected request type. Must not be
+	 *                         {@code null}.
+	 * @param origin           The value of the Origin header,
+	 *                         {@code null} if not a CORS request.
+	 * @param method           The HTTP method, {@code null} if not a
+	 *                         CORS request.
+	 * @param requestedMethod  The value of the
+	 *                         Access-Control-Request-Method header,
+	 *                         {@code null} if not a preflight request.
+	 * @param requestedHeaders The value of the
+	 *                         Access-Control-Request-Headers header,
+	 *                         {@code null} if not specified or not a
+	 *                         preflight request.
+	 */
+	public CORSRequestContext(final CORSRequestType type,
+				  final String origin,
+				  final String method,
+				  final String requestedMethod,
+				  final String requestedHeaders) {
+
+		if (type == null)
+			throw new IllegalArgumentException("The CORS request type must not be null");
+
+		this.type = type;
+		this.origin = origin;
+		this.method = method;
+		this.requestedMethod = requestedMethod;
+		this.requestedHeaders = requestedHeaders;
+	}
+
+
+	/**
+	 * Checks whether the specified Origin header value differs from the
+	 * server origin made up of the specified scheme and Host header.
+	 *
+	 * @param origin The value of the Origin header. Must not be
+	 *               {@code null}.
+	 * @param scheme The request scheme, {@code null} if not known.
+	 * @param host   The value of the Host header, {@code null} if not
+	 *               specified.
+	 *
+	 * @return {@code true} if the origin is not the server origin, else
+	 *         {@code false}.
+	 */
+	private static boolean isCrossOrigin(final String origin, final String scheme, final String host) {
+
+		// Some browsers include the Origin header even when submitting 
+		// from the same domain. This is legal according to RFC 6454, 
+		// section-7.3
+
+		// Note: a null scheme compares as "null"
+		return host == null || ! CORSRequestType.isSameOrigin(origin, String.valueOf(scheme), host);
+	}
+
+
+	/**
+	 * Checks whether the specified HTTP method is OPTIONS, the method of
+	 * preflight requests.
+	 *
+	 * @param method The HTTP method, {@code null} if not known.
+	 *
+	 * @return {@code true} if the method is OPTIONS, else {@code false}.
+	 */
+	private static boolean isOptions(final String method) {
+
+		return method != null && method.equalsIgnoreCase("OPTIONS");
+	}
+
+
+	/**
+	 * Detects the CORS type of the specified HTTP request, without
+	 * creating a context.
+	 *
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The CORS request type.
+	 */
+	static CORSRequestType detectType(final HttpServletRequest request) {
+
+		final String origin = request.getHeader(HeaderName.ORIGIN);
+
+		// All CORS request have an Origin header
+		if (origin == null || ! isCrossOrigin(origin, request.getScheme(), request.getHeader(HeaderName.HOST)))
+			return CORSRequestType.OTHER;
+
+		if (isOptions(request.getMethod()) && request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_METHOD) != null)
+			return CORSRequestType.PREFLIGHT;
+
+		return CORSRequestType.ACTUAL;
+	}
+
+
+	/**
+	 * Detects the CORS type of the specified HTTP request view, without
+	 * creating a context.
+	 *
+	 * @param request The HTTP request view. Must not be {@code null}.
+	 *
+	 * @return The CORS request type.
+	 */
+	static CORSRequestType detectType(final CORSRequestView request) {
+
+		final String origin = request.getHeader(HeaderName.ORIGIN);
+
+		// All CORS request have an Origin header
+		if (origin == null || ! isCrossOrigin(origin, request.getScheme(), request.getHeader(HeaderName.HOST)))
+			return CORSRequestType.OTHER;
+
+		if (isOptions(request.getMethod()) && request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_METHOD) != null)
+			return CORSRequestType.PREFLIGHT;
+
+		return CORSRequestType.ACTUAL;
+	}
+
+
+	/**
+	 * Reads the CORS request context of the specified HTTP request. The
+	 * request type is detected as in {@link CORSRequestType#detect}.
+	 *
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The CORS request context.
+	 */
+	public static CORSRequestContext create(final HttpServletRequest request) {
+
+		return create(new ServletRequestView(request));
+	}
+
+
+	/**
+	 * Reads the CORS request context of the specified HTTP request view.
+	 * The request type is detected as in {@link CORSRequestType#detect}.
+	 *
+	 * @param request The HTTP request view. Must not be {@code null}.
+	 *
+	 * @return The CORS request context.
+	 */
+	public static CORSRequestContext create(final CORSRequestView request) {
+
+		final String origin = request.getHeader(HeaderName.ORIGIN);
+
+		// All CORS request have an Origin header
+		if (origin == null || ! isCrossOrigin(origin, request.getScheme(), request.getHeader(HeaderName.HOST)))
+			return OTHER;
+
+		final String method = request.getMethod();
+
+		if (isOptions(method)) {
+
+			final String requestedMethod = request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_METHOD);
+
+			if (requestedMethod != null) {
+
+				return new CORSRequestContext(CORSRequestType.PREFLIGHT,
+					                      origin,
+					                      method,
+					                      requestedMethod,
+					                      request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_HEADERS));
+			}
+		}
+
+		return new CORSRequestContext(CORSRequestType.ACTUAL, origin, method, null, null);
+	}
+
+
+	/**
+	 * Returns the detected request type.
+	 *
+	 * @return The request type.
+	 */
+	public CORSRequestType getType() {
+
+		return type;
+	}
+
+
+	/**
+	 * Returns the value of the Origin header.
+	 *
+	 * @return The origin, {@code null} if not a CORS request.
+	 */
+	public String getOrigin() {
+
+		return origin;
+	}
+
+
+	/**
+	 * Returns the HTTP method.
+	 *
+	 * @return The HTTP method, {@code null} if not a CORS request.
+	 */
+	public String getMethod() {
+
+		return method;
+	}
+
+
+	/**
+	 * Returns the value of the Access-Control-Request-Method header.
+	 *
+	 * @return The requested method, {@code null} if not a preflight
+	 *         request.
+	 */
+	public String getRequestedMethod() {
+
+		return requestedMethod;
+	}
+
+
+	/**
+	 * Returns the value of the Access-Control-Request-Headers header.
+	 *
+	 * @return The requested headers, {@code null} if not specified or
+	 *         not a preflight request.
+	 */
+	public String getRequestedHeaders() {
+
+		return requestedHeaders;
+	}
+}
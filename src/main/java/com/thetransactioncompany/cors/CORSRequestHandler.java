@@ -14,6 +14,12 @@ import javax.servlet.http.HttpServletResponse;
  * <p>Note that the actual CORS exception handling (which is outside the CORS
  * specification scope) is left to the invoking class to implement.
  *
+ * <p>The handler doesn't depend on a servlet container: servers other than
+ * servlet containers, such as NIO servers and gateways, can read the
+ * {@link CORSRequestContext} from a {@link CORSRequestView} of their native
+ * request and have the CORS response headers set through a
+ * {@link CORSResponseSink}.
+ *
  * @author Vladimir Dzhuvinov
  */
 public class CORSRequestHandler {
@@ -42,6 +48,41 @@ public class CORSRequestHandler {
 	 * Pre-computed string of the CORS exposed headers.
 	 */
 	private final String exposedHeaders;
+
+
+	/**
+	 * Cache of the access decisions for recently seen request origins,
+	 * {@code null} if disabled.
+	 */
+	private final BoundedCache<String,OriginDecision> originCache;
+
+
+	/**
+	 * Cache of the verdicts for recently seen preflight requests,
+	 * {@code null} if disabled.
+	 */
+	private final BoundedCache<PreflightKey,PreflightVerdict> preflightCache;
+
+
+	/**
+	 * Pre-computed actual request response headers, with an origin slot
+	 * if the request origin is echoed.
+	 */
+	private final ResponseHeaderBundle actualResponseHeaders;
+
+
+	/**
+	 * Pre-computed preflight request response headers, with an origin 
+	 * slot if the request origin is echoed.
+	 */
+	private final ResponseHeaderBundle preflightResponseHeaders;
+
+
+	/**
+	 * The estimator of the distinct checked origins, {@code null} if 
+	 * none.
+	 */
+	private final OriginCardinality originCardinality;
 	
 	
 	/**
@@ -51,8 +92,26 @@ public class CORSRequestHandler {
 	 *               {@code null}.
 	 */
 	public CORSRequestHandler(final CORSConfiguration config) {
+
+		this(config, null);
+	}
+
+
+	/**
+	 * Creates a new CORS request handler which records the checked
+	 * request origins if {@link CORSConfiguration#countDistinctOrigins}
+	 * is set.
+	 *
+	 * @param config            Specifies the cross-origin access policy.
+	 *                          Must not be {@code null}.
+	 * @param originCardinality The estimator of the distinct checked
+	 *                          origins, {@code null} if none.
+	 */
+	public CORSRequestHandler(final CORSConfiguration config,
+				  final OriginCardinality originCardinality) {
 	
 		this.config = config;
+		this.originCardinality = config.countDistinctOrigins ? originCardinality : null;
 		
 		// Pre-compute response headers where possible
 
@@ -67,6 +126,217 @@ public class CORSRequestHandler {
 
 		/// Access-Control-Expose-Headers
 		exposedHeaders = HeaderUtils.serialize(config.exposedHeaders, ", ");
+
+		if (config.originCacheSize > 0)
+			originCache = new BoundedCache<String,OriginDecision>(config.originCacheSize);
+		else
+			originCache = null;
+
+		if (config.preflightCacheSize > 0)
+			preflightCache = new BoundedCache<PreflightKey,PreflightVerdict>(config.preflightCacheSize);
+		else
+			preflightCache = null;
+
+		// Pre-compute the complete response headers, the request origin
+		// is filled in at write time
+		actualResponseHeaders = buildActualResponseHeaders();
+		preflightResponseHeaders = buildPreflightResponseHeaders();
+	}
+
+
+	/**
+	 * Appends the Access-Control-Allow-Origin, Access-Control-Allow-Credentials
+	 * and Vary headers. If the request origin is echoed the
+	 * Access-Control-Allow-Origin header becomes the origin slot.
+	 *
+	 * @param headers The response headers builder. Must not be 
+	 *                {@code null}.
+	 */
+	private void appendOriginHeaders(final ResponseHeaderBundle.Builder headers) {
+
+		if (config.supportsCredentials) {
+
+			// The string "*" cannot be used for a resource that supports credentials.
+			headers.setOrigin(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN);
+			headers.add(HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+
+			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
+			headers.add(HeaderName.VARY, "Origin");
+
+		} else if (config.allowAnyOrigin) {
+
+			headers.set(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+
+		} else {
+
+			headers.setOrigin(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN);
+
+			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
+			headers.add(HeaderName.VARY, "Origin");
+		}
+	}
+
+
+	/**
+	 * Builds the response headers for a successful simple / actual 
+	 * request.
+	 *
+	 * @return The response headers.
+	 */
+	private ResponseHeaderBundle buildActualResponseHeaders() {
+
+		ResponseHeaderBundle.Builder headers = new ResponseHeaderBundle.Builder();
+
+		appendOriginHeaders(headers);
+
+		if (! exposedHeaders.isEmpty())
+			headers.add(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS, exposedHeaders);
+
+		return headers.build();
+	}
+
+
+	/**
+	 * Builds the response headers for a successful preflight request. An
+	 * echo of the requested headers, if applicable, is not included.
+	 *
+	 * @return The response headers.
+	 */
+	private ResponseHeaderBundle buildPreflightResponseHeaders() {
+
+		ResponseHeaderBundle.Builder headers = new ResponseHeaderBundle.Builder();
+
+		appendOriginHeaders(headers);
+
+		if (config.maxAge > 0)
+			headers.add(HeaderName.ACCESS_CONTROL_MAX_AGE, Integer.toString(config.maxAge));
+
+		headers.add(HeaderName.ACCESS_CONTROL_ALLOW_METHODS, supportedMethods);
+
+		if (supportedHeaders != null && ! supportedHeaders.isEmpty())
+			headers.add(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, supportedHeaders);
+
+		return headers.build();
+	}
+
+
+	/**
+	 * Returns the CORS configuration applied by this handler.
+	 *
+	 * @return The CORS configuration.
+	 */
+	public CORSConfiguration getConfiguration() {
+
+		return config;
+	}
+
+
+	/**
+	 * Returns the cache of the access decisions for recently seen request
+	 * origins, which also provides the hit, miss and eviction counters.
+	 *
+	 * @return The origin cache, {@code null} if disabled.
+	 */
+	public BoundedCache<String,OriginDecision> getOriginCache() {
+
+		return originCache;
+	}
+
+
+	/**
+	 * Returns the cache of the verdicts for recently seen preflight 
+	 * requests, which also provides the hit, miss and eviction counters.
+	 *
+	 * @return The preflight cache, {@code null} if disabled.
+	 */
+	public BoundedCache<?,?> getPreflightCache() {
+
+		return preflightCache;
+	}
+
+
+	/**
+	 * Checks the specified request origin against the allow list, 
+	 * consulting the origin cache if enabled.
+	 *
+	 * @param originHeader The Origin header value. Must not be 
+	 *                     {@code null}.
+	 *
+	 * @return The request origin.
+	 *
+	 * @throws CORSOriginDeniedException If the origin is not allowed.
+	 */
+	private Origin checkOrigin(final String originHeader)
+		throws CORSOriginDeniedException {
+
+		if (originCache == null) {
+
+			Origin requestOrigin = new Origin(originHeader);
+
+			boolean allowed = config.isAllowedOrigin(requestOrigin);
+
+			if (originCardinality != null)
+				originCardinality.record(originHeader, allowed);
+
+			if (! allowed)
+				throw new CORSOriginDeniedException("CORS origin denied", requestOrigin);
+
+			return requestOrigin;
+		}
+
+		OriginDecision decision = originCache.get(originHeader);
+
+		if (decision == null) {
+			decision = OriginDecision.decide(config, originHeader);
+			originCache.put(originHeader, decision);
+		}
+
+		// Record the raw values, as keyed in the origin cache
+		if (originCardinality != null)
+			originCardinality.record(originHeader, decision.isAllowed());
+
+		if (! decision.isAllowed())
+			throw new CORSOriginDeniedException("CORS origin denied", decision.getOrigin());
+
+		return decision.getOrigin();
+	}
+	
+	
+	/**
+	 * Validates the tokens of an Access-Control-Request-Headers value and
+	 * checks them against the supported headers.
+	 */
+	private final class RequestHeadersCheck implements HeaderUtils.TokenHandler {
+
+
+		/**
+		 * {@code true} if an invalid header name was found.
+		 */
+		private boolean invalid = false;
+
+
+		/**
+		 * The first unsupported header name, in canonical format, 
+		 * {@code null} if none.
+		 */
+		private String unsupportedHeader = null;
+
+
+		@Override
+		public boolean handleToken(final String value, final int begin, final int end) {
+
+			if (! HeaderName.isToken(value, begin, end)) {
+
+				invalid = true;
+				return false;
+			}
+
+			// Check the raw name, format only an unsupported one
+			if (unsupportedHeader == null && ! config.isSupportedHeader(value, begin, end))
+				unsupportedHeader = HeaderName.formatCanonical(value, begin, end);
+
+			return true;
+		}
 	}
 	
 	
@@ -91,49 +361,74 @@ public class CORSRequestHandler {
 		throws InvalidCORSRequestException, 
 		       CORSOriginDeniedException, 
 		       UnsupportedHTTPMethodException {
+
+		handleActualRequest(CORSRequestContext.create(request), response);
+	}
+
+
+	/**
+	 * Handles a simple or actual CORS request, as previously read into a
+	 * CORS request context.
+	 *
+	 * @param context  The CORS request context.
+	 * @param response The HTTP response.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS simple /
+	 *                                        actual request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	public void handleActualRequest(final CORSRequestContext context, 
+		                        final HttpServletResponse response)
+		throws InvalidCORSRequestException, 
+		       CORSOriginDeniedException, 
+		       UnsupportedHTTPMethodException {
+
+		handleActualRequest(context, new ServletResponseSink(response));
+	}
+
+
+	/**
+	 * Handles a simple or actual CORS request, as previously read into a
+	 * CORS request context, setting the CORS response headers through the
+	 * specified response sink. Intended for servers other than servlet
+	 * containers.
+	 *
+	 * @param context  The CORS request context.
+	 * @param response The HTTP response sink.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS simple /
+	 *                                        actual request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	public void handleActualRequest(final CORSRequestContext context, 
+		                        final CORSResponseSink response)
+		throws InvalidCORSRequestException, 
+		       CORSOriginDeniedException, 
+		       UnsupportedHTTPMethodException {
 	
-		if (CORSRequestType.detect(request) != CORSRequestType.ACTUAL)
+		if (context.getType() != CORSRequestType.ACTUAL)
 			throw new InvalidCORSRequestException("Invalid simple/actual CORS request");
 		
 		
 		// Check origin against allow list
-		Origin requestOrigin = new Origin(request.getHeader(HeaderName.ORIGIN));
-		
-		if (! config.isAllowedOrigin(requestOrigin))
-			throw new CORSOriginDeniedException("CORS origin denied", requestOrigin);
+		Origin requestOrigin = checkOrigin(context.getOrigin());
 		
 		
 		// Check method
-		final String method = request.getMethod().toUpperCase();
+		final String method = context.getMethod();
 		
 		if (! config.isSupportedMethod(method))
-			throw new UnsupportedHTTPMethodException("Unsupported HTTP method", method);
+			throw new UnsupportedHTTPMethodException("Unsupported HTTP method", method != null ? method.toUpperCase() : null);
 		
 		
 		// Success, append response headers
-		if (config.supportsCredentials) {
-
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
-
-			// The string "*" cannot be used for a resource that supports credentials.
-			response.setHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
-
-			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-			response.addHeader(HeaderName.VARY, "Origin");
-
-		} else {
-			if (config.allowAnyOrigin) {
-				response.setHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-			} else {
-				response.setHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
-
-				// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-				response.addHeader(HeaderName.VARY, "Origin");
-			}
-		}
-		
-		if (! exposedHeaders.isEmpty())
-			response.addHeader(HeaderName.ACCESS_CONTROL_EXPOSE_HEADERS, exposedHeaders);
+		actualResponseHeaders.writeTo(response, requestOrigin.toString());
 	}
 	
 	
@@ -161,93 +456,170 @@ public class CORSRequestHandler {
 		       CORSOriginDeniedException, 
 		       UnsupportedHTTPMethodException, 
 		       UnsupportedHTTPHeaderException {
+
+		handlePreflightRequest(CORSRequestContext.create(request), response);
+	}
+
+
+	/**
+	 * Handles a preflight CORS request, as previously read into a CORS
+	 * request context.
+	 *
+	 * @param context  The CORS request context.
+	 * @param response The HTTP response.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS preflight
+	 *                                        request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 * @throws UnsupportedHTTPHeaderException If the requested HTTP header
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	public void handlePreflightRequest(final CORSRequestContext context, final HttpServletResponse response)
+		throws InvalidCORSRequestException, 
+		       CORSOriginDeniedException, 
+		       UnsupportedHTTPMethodException, 
+		       UnsupportedHTTPHeaderException {
+
+		handlePreflightRequest(context, new ServletResponseSink(response));
+	}
+
+
+	/**
+	 * Handles a preflight CORS request, as previously read into a CORS
+	 * request context, setting the CORS response headers through the
+	 * specified response sink. Intended for servers other than servlet
+	 * containers.
+	 *
+	 * @param context  The CORS request context.
+	 * @param response The HTTP response sink.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS preflight
+	 *                                        request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 * @throws UnsupportedHTTPHeaderException If the requested HTTP header
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	public void handlePreflightRequest(final CORSRequestContext context, final CORSResponseSink response)
+		throws InvalidCORSRequestException, 
+		       CORSOriginDeniedException, 
+		       UnsupportedHTTPMethodException, 
+		       UnsupportedHTTPHeaderException {
 		
-		if (CORSRequestType.detect(request) != CORSRequestType.PREFLIGHT)
+		if (context.getType() != CORSRequestType.PREFLIGHT)
 			throw new InvalidCORSRequestException("Invalid preflight CORS request");
 		
+		// Success, append response headers
+		ResponseHeaderBundle responseHeaders;
+
+		if (preflightCache == null) {
+
+			responseHeaders = checkPreflightRequest(context);
+
+		} else {
+
+			PreflightKey key = new PreflightKey(context);
+
+			PreflightVerdict verdict = preflightCache.get(key);
+
+			if (verdict == null) {
+
+				try {
+					verdict = PreflightVerdict.accept(checkPreflightRequest(context));
+
+				} catch (CORSException e) {
+
+					verdict = PreflightVerdict.reject(e);
+				}
+
+				preflightCache.put(key, verdict);
+
+			} else if (originCardinality != null) {
+
+				// Origin check skipped, record with the cached outcome
+				originCardinality.record(context.getOrigin(), verdict.isOriginAllowed());
+			}
+
+			// Throws the cached rejection, if any
+			responseHeaders = verdict.getResponseHeaders();
+		}
+
+		responseHeaders.writeTo(response, context.getOrigin());
+
+		if (config.supportAnyHeader && context.getRequestedHeaders() != null) {
+
+			// Echo author headers
+			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, context.getRequestedHeaders());
+		}
+	}
+
+
+	/**
+	 * Checks a preflight CORS request against the access policy.
+	 *
+	 * @param context The CORS request context of the preflight request.
+	 *
+	 * @return The response headers, excluding the echo of the requested
+	 *         headers.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS preflight
+	 *                                        request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 * @throws UnsupportedHTTPHeaderException If the requested HTTP header
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	private ResponseHeaderBundle checkPreflightRequest(final CORSRequestContext context)
+		throws InvalidCORSRequestException, 
+		       CORSOriginDeniedException, 
+		       UnsupportedHTTPMethodException, 
+		       UnsupportedHTTPHeaderException {
+
 		// Check origin against allow list
-		Origin requestOrigin = new Origin(request.getHeader(HeaderName.ORIGIN));
-		
-		if (! config.isAllowedOrigin(requestOrigin))
-			throw new CORSOriginDeniedException("CORS origin denied", requestOrigin);
+		checkOrigin(context.getOrigin());
 			
 		
 		// Parse requested method
 		// Note: method checking must be done after header parsing, see CORS spec
 		
-		String requestMethodHeader = request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_METHOD);
+		String requestMethodHeader = context.getRequestedMethod();
 		
 		if (requestMethodHeader == null)
 			throw new InvalidCORSRequestException("Invalid preflight CORS request: Missing Access-Control-Request-Method header");
 		
-		final String requestedMethod = requestMethodHeader.toUpperCase();
-		
-		// Parse the requested author (custom) headers
-		final String rawRequestHeadersString = request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_HEADERS);
-		final String[] requestHeaderValues = HeaderUtils.parseMultipleHeaderValues(rawRequestHeadersString);
-		
-		final String[] requestHeaders = new String[requestHeaderValues.length];
-		
-		for (int i=0; i<requestHeaders.length; i++) {
-		
-			try {
-				requestHeaders[i] = HeaderName.formatCanonical(requestHeaderValues[i]);
-				
-			} catch (IllegalArgumentException e) {
-				// Invalid header name
-				throw new InvalidCORSRequestException("Invalid preflight CORS request: Bad request header value");
-			}
-		}
-		
-		
-		// Now, do method check
-		if (! config.isSupportedMethod(requestedMethod))
-			throw new UnsupportedHTTPMethodException("Unsupported HTTP method", requestedMethod);
-		
-		
-		// Author request headers check
-		if (! config.supportAnyHeader) {
+		// Parse and check the requested author (custom) headers in one
+		// pass, but report unsupported headers after the method check
+		final String rawRequestHeadersString = context.getRequestedHeaders();
+
+		RequestHeadersCheck requestHeadersCheck = new RequestHeadersCheck();
 
-			for (String requestHeader : requestHeaders) {
+		HeaderUtils.tokenize(rawRequestHeadersString, requestHeadersCheck);
 
-				if (!config.supportedHeaders.contains(requestHeader))
-					throw new UnsupportedHTTPHeaderException("Unsupported HTTP request header", requestHeader);
-			}			
+		if (requestHeadersCheck.invalid) {
+			// Invalid header name
+			throw new InvalidCORSRequestException("Invalid preflight CORS request: Bad request header value");
 		}
 		
-		// Success, append response headers
 		
-		if (config.supportsCredentials) {
-			response.setHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
-
-			// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-			response.addHeader(HeaderName.VARY, "Origin");
-		} else {
-			if (config.allowAnyOrigin) {
-				response.setHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-			} else {
-				response.setHeader(HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, requestOrigin.toString());
-
-				// See https://bitbucket.org/thetransactioncompany/cors-filter/issue/16/
-				response.addHeader(HeaderName.VARY, "Origin");
-			}
-		}
+		// Now, do method check
+		if (! config.isSupportedMethod(requestMethodHeader))
+			throw new UnsupportedHTTPMethodException("Unsupported HTTP method", requestMethodHeader.toUpperCase());
 		
-		if (config.maxAge > 0)
-			response.addHeader(HeaderName.ACCESS_CONTROL_MAX_AGE, Integer.toString(config.maxAge));
 		
-		response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_METHODS, supportedMethods);
+		// Author request headers check
+		if (requestHeadersCheck.unsupportedHeader != null)
+			throw new UnsupportedHTTPHeaderException("Unsupported HTTP request header", requestHeadersCheck.unsupportedHeader);
 		
-
-		if (config.supportAnyHeader && rawRequestHeadersString != null) {
-
-			// Echo author headers
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, rawRequestHeadersString);
-
-		} else if (supportedHeaders != null && ! supportedHeaders.isEmpty()) {
-
-			response.addHeader(HeaderName.ACCESS_CONTROL_ALLOW_HEADERS, supportedHeaders);
-		}
+		return preflightResponseHeaders;
 	}
 }
@@ -0,0 +1,25 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Minimal write-only view of the attributes of an HTTP request, through
+ * which the {@link RequestTagger} passes CORS information to downstream
+ * handlers. Lets servers other than servlet containers, such as NIO servers
+ * and gateways, tag their native request type through a small adapter.
+ *
+ * <p>The {@link CORSFilter} sets the attributes of the
+ * {@code javax.servlet.http.HttpServletRequest} directly.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface CORSRequestTagSink {
+
+
+	/**
+	 * Sets a request attribute, replacing any previous value.
+	 *
+	 * @param name  The attribute name. Must not be {@code null}.
+	 * @param value The attribute value, {@code null} if undefined.
+	 */
+	public void setAttribute(final String name, final Object value);
+}
@@ -31,6 +31,30 @@ public enum CORSRequestType {
 	OTHER;
 	
 	
+	/**
+	 * Checks whether the specified origin equals the server origin made up
+	 * of the specified scheme and host, i.e. {@code scheme + "://" + host}.
+	 * The check is done without building the server origin string.
+	 *
+	 * @param origin The request origin. Must not be {@code null}.
+	 * @param scheme The request scheme. Must not be {@code null}.
+	 * @param host   The value of the Host header. Must not be 
+	 *               {@code null}.
+	 *
+	 * @return {@code true} if the origin is the server origin, else
+	 *         {@code false}.
+	 */
+	static boolean isSameOrigin(final String origin, final String scheme, final String host) {
+
+		final int schemeLength = scheme.length();
+
+		return origin.length() == schemeLength + 3 + host.length() &&
+		       origin.startsWith(scheme) &&
+		       origin.startsWith("://", schemeLength) &&
+		       origin.startsWith(host, schemeLength + 3);
+	}
+	
+	
 	/**
 	 * Detects the CORS type of the specified HTTP request.
 	 *
@@ -40,31 +64,23 @@ public enum CORSRequestType {
 	 */
 	public static CORSRequestType detect(final HttpServletRequest request) {
 
-		if (request.getHeader(HeaderName.ORIGIN) == null) {
-
-			// All CORS request have an Origin header
-			return OTHER;
-		}
-
-		// Some browsers include the Origin header even when submitting 
-		// from the same domain. This is legal according to RFC 6454, 
-		// section-7.3
-		String serverOrigin = request.getScheme() + "://" + request.getHeader(HeaderName.HOST);
-
-		if (request.getHeader(HeaderName.HOST) != null && request.getHeader(HeaderName.ORIGIN).equals(serverOrigin)) {
-			return OTHER;
-		}
-		
-		// We have a CORS request - determine type
-		if (request.getHeader(HeaderName.ACCESS_CONTROL_REQUEST_METHOD) != null &&
-		    request.getMethod()                                         != null &&
-		    request.getMethod().equalsIgnoreCase("OPTIONS")                        ) {
+		return CORSRequestContext.detectType(request);
+	}
 
-			return PREFLIGHT;
 
-		} else {
+	/**
+	 * Detects the CORS type of the specified HTTP request view. The
+	 * classification is the same as in
+	 * {@link CORSRequestContext#create(CORSRequestView)}, without creating
+	 * a context.
+	 *
+	 * @param request The HTTP request view to check. Must not be
+	 *                {@code null}.
+	 *
+	 * @return The CORS request type.
+	 */
+	public static CORSRequestType detect(final CORSRequestView request) {
 
-			return ACTUAL;
-		}
+		return CORSRequestContext.detectType(request);
 	}
 }
@@ -0,0 +1,46 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Minimal read-only view of an HTTP request, as needed to detect and handle
+ * CORS requests. Lets the CORS policy engine ({@link CORSRequestContext},
+ * {@link CORSRequestHandler}) run on servers other than servlet containers,
+ * such as NIO servers and gateways, by wrapping their native request type
+ * in a small adapter.
+ *
+ * <p>The {@link CORSFilter} uses an adapter for
+ * {@code javax.servlet.http.HttpServletRequest}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface CORSRequestView {
+
+
+	/**
+	 * Returns the HTTP method of the request.
+	 *
+	 * @return The HTTP method, e.g. "GET", {@code null} if not known.
+	 */
+	public String getMethod();
+
+
+	/**
+	 * Returns the scheme of the request.
+	 *
+	 * @return The scheme, e.g. "http" or "https", {@code null} if not
+	 *         known.
+	 */
+	public String getScheme();
+
+
+	/**
+	 * Returns the value of the specified request header. If the header
+	 * occurs more than once the first value is returned.
+	 *
+	 * @param name The header name, case insensitive. Must not be
+	 *             {@code null}.
+	 *
+	 * @return The header value, {@code null} if not present.
+	 */
+	public String getHeader(final String name);
+}
@@ -0,0 +1,35 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Minimal write-only view of an HTTP response, through which the CORS
+ * policy engine ({@link CORSRequestHandler}) sets its response headers.
+ * Lets the engine run on servers other than servlet containers, such as
+ * NIO servers and gateways, by wrapping their native response or header
+ * type in a small adapter.
+ *
+ * <p>The {@link CORSFilter} uses an adapter for
+ * {@code javax.servlet.http.HttpServletResponse}.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public interface CORSResponseSink {
+
+
+	/**
+	 * Sets a response header, replacing any previous values.
+	 *
+	 * @param name  The header name. Must not be {@code null}.
+	 * @param value The header value. Must not be {@code null}.
+	 */
+	public void setHeader(final String name, final String value);
+
+
+	/**
+	 * Adds a response header value, keeping any previous values.
+	 *
+	 * @param name  The header name. Must not be {@code null}.
+	 * @param value The header value. Must not be {@code null}.
+	 */
+	public void addHeader(final String name, final String value);
+}
@@ -0,0 +1,129 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Array of counters which can be incremented concurrently by many threads.
+ * Each counter is a {@link LongAdder}, which spreads the updates over
+ * padded cells when threads collide, and moves a thread to another cell
+ * when its updates keep colliding. Counters are read by summing their
+ * cells.
+ *
+ * <p>Sums are not atomic with respect to concurrent updates: a sum read
+ * while counters are updated may miss some of the updates.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class CounterArray {
+
+
+	/**
+	 * The counters.
+	 */
+	private final LongAdder[] counters;
+
+
+	/**
+	 * Creates a new counter array.
+	 *
+	 * @param size The number of counters. Must be positive.
+	 */
+	CounterArray(final int size) {
+
+		if (size < 1)
+			throw new IllegalArgumentException("The counter array size must be positive");
+
+		counters = new LongAdder[size];
+
+		for (int i = 0; i < size; i++)
+			counters[i] = new LongAdder();
+	}
+
+
+	/**
+	 * Returns the number of counters.
+	 *
+	 * @return The number of counters.
+	 */
+	int size() {
+
+		return counters.length;
+	}
+
+
+	/**
+	 * Increments the specified counter by one.
+	 *
+	 * @param index The counter index.
+	 */
+	void increment(final int index) {
+
+		counters[index].increment();
+	}
+
+
+	/**
+	 * Adds the specified value to the specified counter.
+	 *
+	 * @param index The counter index.
+	 * @param delta The value to add.
+	 */
+	void add(final int index, final long delta) {
+
+		counters[index].add(delta);
+	}
+
+
+	/**
+	 * Adds the specified values to two counters.
+	 *
+	 * @param index1 The index of the first counter.
+	 * @param delta1 The value to add to the first counter.
+	 * @param index2 The index of the second counter.
+	 * @param delta2 The value to add to the second counter.
+	 */
+	void add(final int index1, final long delta1, final int index2, final long delta2) {
+
+		counters[index1].add(delta1);
+		counters[index2].add(delta2);
+	}
+
+
+	/**
+	 * Returns the sum of the specified counter.
+	 *
+	 * @param index The counter index.
+	 *
+	 * @return The counter sum.
+	 */
+	long sum(final int index) {
+
+		return counters[index].sum();
+	}
+
+
+	/**
+	 * Sums all counters into the specified array.
+	 *
+	 * @param sums The array to receive the counter sums, with a length of
+	 *             at least {@link #size}. Overwritten.
+	 */
+	void sumAll(final long[] sums) {
+
+		for (int i = 0; i < counters.length; i++)
+			sums[i] = counters[i].sum();
+	}
+
+
+	/**
+	 * Resets all counters to zero. Updates made concurrently with the
+	 * reset may be lost or kept.
+	 */
+	void reset() {
+
+		for (LongAdder counter: counters)
+			counter.reset();
+	}
+}
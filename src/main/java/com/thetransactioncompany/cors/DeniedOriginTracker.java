@@ -0,0 +1,351 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Tracks the most frequently denied request origins in fixed memory, with
+ * a count-min sketch of the denial counts and a small min-heap of the top
+ * origins.
+ *
+ * <p>The sketch has {@link #DEPTH} rows of {@link #WIDTH} counters. An
+ * origin increments one counter per row, chosen by hashing its characters
+ * with a seeded {@link StringHash}, and its count is estimated by the
+ * smallest of them. Estimates never undercount, and overcount by at most
+ * about 0.3% of all recorded denials with high probability. The seeds are random per row and tracker, so that origins
+ * colliding in one row, or crafted from a known hash function such as
+ * {@link String#hashCode}, don't collide in the others. Memory use is
+ * constant, however many distinct origins are recorded.
+ *
+ * <p>The heap keeps the origins with the highest estimates. It is only
+ * locked when an origin's estimate exceeds the smallest count in the full
+ * heap, which is rare for one-off origins, such as those sent by scanners.
+ *
+ * <p>The counts don't decay: they accumulate from the creation of the
+ * tracker, or its last {@link #reset}, so an origin which was denied
+ * often in the past stays in the top origins until then. Reset the
+ * tracker periodically to observe recent denials only.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class DeniedOriginTracker {
+
+
+	/**
+	 * The number of sketch rows.
+	 */
+	public static final int DEPTH = 4;
+
+
+	/**
+	 * The number of counters per sketch row, a power of two.
+	 */
+	public static final int WIDTH = 1024;
+
+
+	/**
+	 * The default number of top origins to keep.
+	 */
+	public static final int DEFAULT_TOP_K = 16;
+
+
+	/**
+	 * The sketch counters, indexed by row * {@link #WIDTH} + column.
+	 */
+	private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+
+
+	/**
+	 * The hash seed of each row.
+	 */
+	private final long[] seeds = new long[DEPTH];
+
+
+	/**
+	 * The maximum number of top origins.
+	 */
+	private final int k;
+
+
+	/**
+	 * The top origins, as a min-heap ordered by {@link #heapCounts}.
+	 */
+	private final String[] heapOrigins;
+
+
+	/**
+	 * The estimated counts of the top origins.
+	 */
+	private final long[] heapCounts;
+
+
+	/**
+	 * The number of origins in the heap.
+	 */
+	private int heapSize = 0;
+
+
+	/**
+	 * The smallest count in the heap once full, zero before, to skip the
+	 * heap lock for origins which can't enter it.
+	 */
+	private volatile long threshold = 0;
+
+
+	/**
+	 * Creates a new denied origin tracker keeping the
+	 * {@link #DEFAULT_TOP_K default number} of top origins.
+	 */
+	public DeniedOriginTracker() {
+
+		this(DEFAULT_TOP_K);
+	}
+
+
+	/**
+	 * Creates a new denied origin tracker.
+	 *
+	 * @param k The number of top origins to keep. Must be positive.
+	 */
+	public DeniedOriginTracker(final int k) {
+
+		if (k < 1)
+			throw new IllegalArgumentException("The number of top origins must be positive");
+
+		this.k = k;
+		heapOrigins = new String[k];
+		heapCounts = new long[k];
+
+		Random random = new Random();
+
+		for (int i = 0; i < DEPTH; i++)
+			seeds[i] = random.nextLong();
+	}
+
+
+	/**
+	 * Returns the sketch column of the specified origin in the specified
+	 * row.
+	 *
+	 * @param origin The origin.
+	 * @param row    The row.
+	 *
+	 * @return The column.
+	 */
+	private int column(final String origin, final int row) {
+
+		return (int)StringHash.hash(origin, seeds[row]) & (WIDTH - 1);
+	}
+
+
+	/**
+	 * Records a denial of the specified origin.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 */
+	public void record(final String origin) {
+
+		long estimate = Long.MAX_VALUE;
+
+		for (int row = 0; row < DEPTH; row++) {
+
+			long count = counters.incrementAndGet(row * WIDTH + column(origin, row));
+
+			if (count < estimate)
+				estimate = count;
+		}
+
+		if (estimate > threshold)
+			offer(origin, estimate);
+	}
+
+
+	/**
+	 * Returns the estimated number of denials of the specified origin.
+	 *
+	 * @param origin The origin. Must not be {@code null}.
+	 *
+	 * @return The estimated count, never less than the actual count.
+	 */
+	public long estimate(final String origin) {
+
+		long estimate = Long.MAX_VALUE;
+
+		for (int row = 0; row < DEPTH; row++)
+			estimate = Math.min(estimate, counters.get(row * WIDTH + column(origin, row)));
+
+		return estimate;
+	}
+
+
+	/**
+	 * Offers the specified origin to the top origins heap.
+	 *
+	 * @param origin   The origin.
+	 * @param estimate The estimated count of the origin.
+	 */
+	private synchronized void offer(final String origin, final long estimate) {
+
+		for (int i = 0; i < heapSize; i++) {
+
+			if (heapOrigins[i].equals(origin)) {
+
+				if (estimate > heapCounts[i]) {
+					heapCounts[i] = estimate;
+					siftDown(i);
+					updateThreshold();
+				}
+
+				return;
+			}
+		}
+
+		if (heapSize < k) {
+
+			heapOrigins[heapSize] = origin;
+			heapCounts[heapSize] = estimate;
+			siftUp(heapSize++);
+
+		} else if (estimate > heapCounts[0]) {
+
+			// Replace the least frequent top origin
+			heapOrigins[0] = origin;
+			heapCounts[0] = estimate;
+			siftDown(0);
+		}
+
+		updateThreshold();
+	}
+
+
+	/**
+	 * Updates the heap threshold.
+	 */
+	private void updateThreshold() {
+
+		threshold = heapSize == k ? heapCounts[0] : 0;
+	}
+
+
+	/**
+	 * Moves the heap entry at the specified index up to its place.
+	 *
+	 * @param index The index.
+	 */
+	private void siftUp(int index) {
+
+		while (index > 0) {
+
+			int parent = (index - 1) >>> 1;
+
+			if (heapCounts[parent] <= heapCounts[index])
+				return;
+
+			swap(parent, index);
+			index = parent;
+		}
+	}
+
+
+	/**
+	 * Moves the heap entry at the specified index down to its place.
+	 *
+	 * @param index The index.
+	 */
+	private void siftDown(int index) {
+
+		while (true) {
+
+			int smallest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+
+			if (left < heapSize && heapCounts[left] < heapCounts[smallest])
+				smallest = left;
+
+			if (right < heapSize && heapCounts[right] < heapCounts[smallest])
+				smallest = right;
+
+			if (smallest == index)
+				return;
+
+			swap(smallest, index);
+			index = smallest;
+		}
+	}
+
+
+	/**
+	 * Swaps the heap entries at the specified indices.
+	 *
+	 * @param i The first index.
+	 * @param j The second index.
+	 */
+	private void swap(final int i, final int j) {
+
+		String origin = heapOrigins[i];
+		heapOrigins[i] = heapOrigins[j];
+		heapOrigins[j] = origin;
+
+		long count = heapCounts[i];
+		heapCounts[i] = heapCounts[j];
+		heapCounts[j] = count;
+	}
+
+
+	/**
+	 * Returns the most frequently denied origins.
+	 *
+	 * @return The origins with their estimated denial counts, in
+	 *         descending order of count.
+	 */
+	public synchronized Map<String,Long> getTopOrigins() {
+
+		List<Integer> order = new ArrayList<Integer>(heapSize);
+
+		for (int i = 0; i < heapSize; i++)
+			order.add(i);
+
+		Collections.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(final Integer a, final Integer b) {
+
+				long diff = heapCounts[b] - heapCounts[a];
+
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+
+		Map<String,Long> top = new LinkedHashMap<String,Long>();
+
+		for (int i: order)
+			top.put(heapOrigins[i], heapCounts[i]);
+
+		return top;
+	}
+
+
+	/**
+	 * Clears the sketch and the top origins.
+	 */
+	public synchronized void reset() {
+
+		for (int i = 0; i < counters.length(); i++)
+			counters.set(i, 0);
+
+		for (int i = 0; i < heapSize; i++)
+			heapOrigins[i] = null;
+
+		heapSize = 0;
+		updateThreshold();
+	}
+}
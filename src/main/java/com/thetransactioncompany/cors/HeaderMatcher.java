@@ -0,0 +1,102 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collection;
+
+
+/**
+ * Matches header names against a set of supported header names, ignoring
+ * case. The supported names are compiled into an open-addressing hash
+ * table, so that a header name can be checked directly against a region
+ * of the raw request header value, without first extracting it and
+ * converting it to canonical format. Lookups don't allocate.
+ *
+ * <p>Instances are immutable and safe for concurrent use.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HeaderMatcher {
+
+
+	/**
+	 * The hash table of the supported header names, {@code null} for
+	 * empty slots. Kept at most half full.
+	 */
+	private final String[] names;
+
+
+	/**
+	 * The case-insensitive hashes of the supported header names, matching
+	 * the {@link #names} slots.
+	 */
+	private final int[] hashes;
+
+
+	/**
+	 * Creates a new header matcher.
+	 *
+	 * @param headers The supported header names. Must not be
+	 *                {@code null}.
+	 */
+	HeaderMatcher(final Collection<String> headers) {
+
+		int size = 2;
+
+		while (size < headers.size() * 2)
+			size <<= 1;
+
+		names = new String[size];
+		hashes = new int[size];
+
+		for (String header: headers) {
+
+			if (matches(header, 0, header.length()))
+				continue; // duplicate
+
+			int h = HeaderName.hashIgnoreCase(header, 0, header.length());
+
+			int i = h & (size - 1);
+
+			while (names[i] != null)
+				i = (i + 1) & (size - 1);
+
+			names[i] = header;
+			hashes[i] = h;
+		}
+	}
+
+
+	/**
+	 * Checks whether the specified header name region is a supported
+	 * header name, ignoring case.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param begin The begin index of the header name, inclusive.
+	 * @param end   The end index of the header name, exclusive.
+	 *
+	 * @return {@code true} if the header name is supported, else
+	 *         {@code false}.
+	 */
+	boolean matches(final String s, final int begin, final int end) {
+
+		final int len = end - begin;
+
+		final int h = HeaderName.hashIgnoreCase(s, begin, end);
+
+		final int mask = names.length - 1;
+
+		int i = h & mask;
+
+		String candidate;
+
+		while ((candidate = names[i]) != null) {
+
+			if (hashes[i] == h && candidate.length() == len && candidate.regionMatches(true, 0, s, begin, len))
+				return true;
+
+			i = (i + 1) & mask;
+		}
+
+		return false;
+	}
+}
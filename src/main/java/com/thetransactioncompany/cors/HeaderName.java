@@ -1,10 +1,6 @@
 package com.thetransactioncompany.cors;
 
 
-import java.util.regex.Pattern;
-
-import static java.util.regex.Pattern.compile;
-
 
 /**
  * HTTP header name constants and utilities.
@@ -16,16 +12,73 @@ public class HeaderName {
 
 
 	/**
-	 * Must match "token", 1 or more of any US-ASCII char except control
-	 * chars or specific "separators", see:
+	 * Lookup table of the valid header name characters. A name must be a
+	 * "token", 1 or more of any US-ASCII char except control chars or 
+	 * specific "separators", see:
 	 * http://www.w3.org/Protocols/rfc2616/rfc2616-sec4.html#sec4.2
 	 * and
 	 * http://www.w3.org/Protocols/rfc2616/rfc2616-sec2.html#sec2
-	 *
-	 * Note use of regex character class subtraction and character class
-	 * metacharacter rules.
 	 */
-	private static final Pattern VALID = compile("^[\\x21-\\x7e&&[^]\\[}{()<>@,;:\\\\\"/?=]]+$");
+	private static final boolean[] TOKEN_CHARS = new boolean[128];
+
+
+	static {
+		for (char c = 0x21; c <= 0x7e; c++)
+			TOKEN_CHARS[c] = true;
+
+		for (char c: "()<>@,;:\\\"/[]?={}".toCharArray())
+			TOKEN_CHARS[c] = false;
+	}
+
+
+	/**
+	 * Well-known header names in canonical format, returned as shared 
+	 * instances by {@link #formatCanonical}.
+	 */
+	private static final String[] WELL_KNOWN = {
+		"Accept",
+		"Accept-Encoding",
+		"Accept-Language",
+		"Authorization",
+		"Cache-Control",
+		"Content-Encoding",
+		"Content-Language",
+		"Content-Length",
+		"Content-Type",
+		"Cookie",
+		"If-Match",
+		"If-Modified-Since",
+		"If-None-Match",
+		"Origin",
+		"Pragma",
+		"Range",
+		"User-Agent",
+		"X-Csrf-Token",
+		"X-Http-Method-Override",
+		"X-Request-Id",
+		"X-Requested-With",
+		"X-Xsrf-Token"
+	};
+
+
+	/**
+	 * Open-addressing hash table of the {@link #WELL_KNOWN} header names,
+	 * keyed by case-insensitive hash.
+	 */
+	private static final String[] INTERNED = new String[64];
+
+
+	static {
+		for (String name: WELL_KNOWN) {
+
+			int i = hashIgnoreCase(name, 0, name.length()) & (INTERNED.length - 1);
+
+			while (INTERNED[i] != null)
+				i = (i + 1) & (INTERNED.length - 1);
+
+			INTERNED[i] = name;
+		}
+	}
 
 
 	/**
@@ -94,6 +147,104 @@ public class HeaderName {
 	public static final String HOST = "Host";
 
 
+	/**
+	 * Checks whether the specified character is a valid header name
+	 * character.
+	 *
+	 * @param c The character.
+	 *
+	 * @return {@code true} if valid, else {@code false}.
+	 */
+	static boolean isTokenChar(final char c) {
+
+		return c < 128 && TOKEN_CHARS[c];
+	}
+
+
+	/**
+	 * Checks whether the specified string region is a valid, non-empty
+	 * header name.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param begin The begin index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return {@code true} if valid, else {@code false}.
+	 */
+	static boolean isToken(final String s, final int begin, final int end) {
+
+		if (begin >= end)
+			return false;
+
+		for (int i = begin; i < end; i++) {
+
+			if (! isTokenChar(s.charAt(i)))
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Computes a case-insensitive hash of the specified US-ASCII string
+	 * region.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param begin The begin index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The hash.
+	 */
+	static int hashIgnoreCase(final String s, final int begin, final int end) {
+
+		int h = 0;
+
+		for (int i = begin; i < end; i++) {
+
+			char c = s.charAt(i);
+
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+
+			h = 31 * h + c;
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+
+	/**
+	 * Looks up a well-known header name matching the specified string
+	 * region, ignoring case.
+	 *
+	 * @param s     The string. Must not be {@code null}.
+	 * @param begin The begin index, inclusive.
+	 * @param end   The end index, exclusive.
+	 *
+	 * @return The well-known header name in canonical format, 
+	 *         {@code null} if none matches.
+	 */
+	private static String lookupWellKnown(final String s, final int begin, final int end) {
+
+		final int len = end - begin;
+
+		int i = hashIgnoreCase(s, begin, end) & (INTERNED.length - 1);
+
+		String candidate;
+
+		while ((candidate = INTERNED[i]) != null) {
+
+			if (candidate.length() == len && candidate.regionMatches(true, 0, s, begin, len))
+				return candidate;
+
+			i = (i + 1) & (INTERNED.length - 1);
+		}
+
+		return null;
+	}
+
+
 	/**
 	 * Applies a {@code Aaa-Bbb-Ccc} format to a header name.
 	 *
@@ -106,36 +257,87 @@ public class HeaderName {
 	 */
 	public static String formatCanonical(final String name) {
 
-		String nameTrimmed = name.trim();
+		return formatCanonical(name, 0, name.length());
+	}
+
+
+	/**
+	 * Applies a {@code Aaa-Bbb-Ccc} format to a header name contained in
+	 * the specified string region. Validation and formatting are done in a
+	 * single pass. Well-known header names, and names that are already in
+	 * canonical format, are returned without allocating a new string.
+	 *
+	 * @param s     The string containing the header name to format. Must
+	 *              not be {@code null}.
+	 * @param begin The begin index of the header name, inclusive.
+	 * @param end   The end index of the header name, exclusive.
+	 *
+	 * @return The formatted header name.
+	 *
+	 * @throws IllegalArgumentException On a empty or invalid header name.
+	 */
+	static String formatCanonical(final String s, final int begin, final int end) {
 
-		if (nameTrimmed.isEmpty())
+		// Trim
+		int from = begin;
+		int to = end;
+
+		while (from < to && s.charAt(from) <= ' ')
+			from++;
+
+		while (to > from && s.charAt(to - 1) <= ' ')
+			to--;
+
+		if (from == to)
 			throw new IllegalArgumentException("The header field name must not be an empty string");
 
-		assert(VALID != null);
+		// Check for valid syntax and whether already canonical
+		boolean canonical = true;
+
+		boolean upper = true;
+
+		for (int i = from; i < to; i++) {
+
+			final char c = s.charAt(i);
+
+			if (! isTokenChar(c))
+				throw new IllegalArgumentException("Invalid header field name syntax (see RFC 2616)");
+
+			if (upper ? (c >= 'a' && c <= 'z') : (c >= 'A' && c <= 'Z'))
+				canonical = false;
+
+			upper = c == '-';
+		}
+
+		String wellKnown = lookupWellKnown(s, from, to);
 
-		// Check for valid syntax
-		if (! VALID.matcher(nameTrimmed).matches())
-			throw new IllegalArgumentException("Invalid header field name syntax (see RFC 2616)");
+		if (wellKnown != null)
+			return wellKnown;
 
+		if (canonical)
+			return from == 0 && to == s.length() ? s : s.substring(from, to);
 
-		String[] tokens = nameTrimmed.toLowerCase().split("-");
+		// Capitalise the first char of each dash-separated token, lower
+		// case the rest
+		char[] out = new char[to - from];
 
-		String out = "";
+		upper = true;
 
-		for (int i = 0; i < tokens.length; i++) {
+		for (int i = from; i < to; i++) {
 
-			char[] c = tokens[i].toCharArray();
+			char c = s.charAt(i);
 
-			// Capitalise first char
-			c[0] = Character.toUpperCase(c[0]);
+			if (upper && c >= 'a' && c <= 'z')
+				c -= 'a' - 'A';
+			else if (! upper && c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
 
-			if (i >= 1)
-				out = out + "-";
+			out[i - from] = c;
 
-			out = out + new String(c);
+			upper = c == '-';
 		}
 
-		return out;
+		return new String(out);
 	}
 
 
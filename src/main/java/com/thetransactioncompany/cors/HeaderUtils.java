@@ -1,7 +1,9 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 
@@ -13,6 +15,30 @@ import java.util.Set;
 public class HeaderUtils {
 
 
+	/**
+	 * Receives the tokens of a header value as they are parsed by
+	 * {@link #tokenize}.
+	 */
+	public interface TokenHandler {
+
+
+		/**
+		 * Handles a token. The token is passed as a region of the
+		 * header value to avoid allocating a string for it.
+		 *
+		 * @param value The header value.
+		 * @param begin The token begin index, inclusive.
+		 * @param end   The token end index, exclusive. Equals the
+		 *              begin index for an empty token (between two
+		 *              consecutive commas).
+		 *
+		 * @return {@code true} to continue with the next token,
+		 *         {@code false} to stop.
+		 */
+		boolean handleToken(final String value, final int begin, final int end);
+	}
+
+
 	/**
 	 * Serialises the items of a set into a string. Each item must have a
 	 * meaningful {@code toString()} method.
@@ -41,6 +67,90 @@ public class HeaderUtils {
 	}
 
 
+	/**
+	 * Checks whether the specified character separates the items of a
+	 * multi-valued header, i.e. a comma or whitespace (as {@code \s} in a
+	 * regular expression).
+	 *
+	 * @param c The character.
+	 *
+	 * @return {@code true} if a separator, else {@code false}.
+	 */
+	private static boolean isSeparator(final char c) {
+
+		return c == ',' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+
+	/**
+	 * Parses a header value consisting of zero or more space / comma /
+	 * space + comma separated strings and passes each string to the
+	 * specified handler, without allocating. The input string is trimmed
+	 * before splitting.
+	 *
+	 * <p>The tokens are the same as those produced by splitting with the
+	 * regular expression {@code \s*,\s*|\s+}: consecutive commas 
+	 * delimit empty tokens, trailing empty tokens are dropped.
+	 *
+	 * @param headerValue The header value, may be {@code null}.
+	 * @param handler     The token handler. Must not be {@code null}.
+	 */
+	public static void tokenize(final String headerValue, final TokenHandler handler) {
+
+		if (headerValue == null)
+			return;
+
+		int pos = 0;
+		int end = headerValue.length();
+
+		// Trim
+		while (pos < end && headerValue.charAt(pos) <= ' ')
+			pos++;
+
+		while (end > pos && headerValue.charAt(end - 1) <= ' ')
+			end--;
+
+		boolean first = true;
+
+		while (pos < end) {
+
+			// Skip the separators, counting the commas
+			int commas = 0;
+
+			while (pos < end && isSeparator(headerValue.charAt(pos))) {
+
+				if (headerValue.charAt(pos) == ',')
+					commas++;
+
+				pos++;
+			}
+
+			if (pos == end)
+				return; // trailing empty tokens are dropped
+
+			// Each comma delimits a token, so N commas between two
+			// tokens enclose N - 1 empty ones
+			int emptyTokens = first ? commas : commas - 1;
+
+			for (int i = 0; i < emptyTokens; i++) {
+
+				if (! handler.handleToken(headerValue, pos, pos))
+					return;
+			}
+
+			int begin = pos;
+
+			while (pos < end && ! isSeparator(headerValue.charAt(pos)))
+				pos++;
+
+			if (! handler.handleToken(headerValue, begin, pos))
+				return;
+
+			first = false;
+		}
+	}
+
+
 	/**
 	 * Parses a header value consisting of zero or more space / comma /
 	 * space + comma separated strings. The input string is trimmed before
@@ -53,14 +163,18 @@ public class HeaderUtils {
 	 */
 	public static String[] parseMultipleHeaderValues(final String headerValue) {
 
-		if (headerValue == null)
-			return new String[0]; // empty array
+		final List<String> values = new ArrayList<String>();
+
+		tokenize(headerValue, new TokenHandler() {
 
-		String trimmedHeaderValue = headerValue.trim();
+			@Override
+			public boolean handleToken(final String value, final int begin, final int end) {
 
-		if (trimmedHeaderValue.isEmpty())
-			return new String[0];
+				values.add(value.substring(begin, end));
+				return true;
+			}
+		});
 
-		return trimmedHeaderValue.split("\\s*,\\s*|\\s+");
+		return values.toArray(new String[values.size()]);
 	}
 }
@@ -0,0 +1,126 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * HyperLogLog estimator of the number of distinct strings added to it.
+ *
+ * <p>The estimator has 2<sup>{@link #PRECISION}</sup> registers of one byte
+ * each, packed four to an atomic int, which gives a standard error of about
+ * 1.6% in 4 KB of memory. Strings are hashed to 64 bits with a seeded
+ * {@link StringHash}, so that the estimate doesn't degrade at high
+ * cardinalities or for crafted inputs. Adding is lock-free
+ * and safe for concurrent use.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class HyperLogLog {
+
+
+	/**
+	 * The number of hash bits selecting the register.
+	 */
+	static final int PRECISION = 12;
+
+
+	/**
+	 * The number of registers.
+	 */
+	static final int REGISTERS = 1 << PRECISION;
+
+
+	/**
+	 * The bias correction constant for {@link #REGISTERS} registers.
+	 */
+	private static final double ALPHA = 0.7213 / (1.0 + 1.079 / REGISTERS);
+
+
+	/**
+	 * The registers, four per int.
+	 */
+	private final AtomicIntegerArray registers = new AtomicIntegerArray(REGISTERS / 4);
+
+
+	/**
+	 * The hash seed.
+	 */
+	private final long seed;
+
+
+	/**
+	 * Creates a new empty HyperLogLog estimator.
+	 *
+	 * @param seed The hash seed.
+	 */
+	HyperLogLog(final long seed) {
+
+		this.seed = seed;
+	}
+
+
+	/**
+	 * Adds the specified string.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 */
+	void add(final String s) {
+
+		final long h = StringHash.hash(s, seed);
+
+		final int register = (int)(h >>> (64 - PRECISION));
+
+		// Position of the first set bit in the remaining hash bits
+		final int rank = Long.numberOfLeadingZeros((h << PRECISION) | (1L << (PRECISION - 1))) + 1;
+
+		final int index = register >>> 2;
+		final int shift = (register & 3) << 3;
+
+		while (true) {
+
+			int word = registers.get(index);
+
+			if (rank <= ((word >>> shift) & 0xff))
+				return;
+
+			if (registers.compareAndSet(index, word, (word & ~(0xff << shift)) | (rank << shift)))
+				return;
+		}
+	}
+
+
+	/**
+	 * Returns the estimated number of distinct strings added.
+	 *
+	 * @return The estimate.
+	 */
+	long estimate() {
+
+		double sum = 0.0;
+		int zeros = 0;
+
+		for (int i = 0; i < REGISTERS / 4; i++) {
+
+			int word = registers.get(i);
+
+			for (int shift = 0; shift < 32; shift += 8) {
+
+				int rank = (word >>> shift) & 0xff;
+
+				sum += 1.0 / (1L << rank);
+
+				if (rank == 0)
+					zeros++;
+			}
+		}
+
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+
+		// Linear counting for small cardinalities
+		if (estimate <= 2.5 * REGISTERS && zeros > 0)
+			estimate = REGISTERS * Math.log((double)REGISTERS / zeros);
+
+		return Math.round(estimate);
+	}
+}
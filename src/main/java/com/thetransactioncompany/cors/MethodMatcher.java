@@ -0,0 +1,146 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Matches HTTP methods against a set of supported methods, ignoring case.
+ * The standard HTTP methods are compiled into a bitmask, so that checking
+ * one of them costs a switch on the method length, a region comparison and
+ * a bit test. Any extension methods are kept in a small array which is
+ * scanned. Lookups don't allocate.
+ *
+ * <p>Instances are immutable and safe for concurrent use.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class MethodMatcher {
+
+
+	/**
+	 * The standard HTTP methods, indexed by bit position.
+	 */
+	private static final String[] STANDARD_METHODS = {
+		"GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE", "CONNECT", "PATCH"
+	};
+
+
+	/**
+	 * The bits of the supported standard methods.
+	 */
+	private final int mask;
+
+
+	/**
+	 * The supported extension methods, in upper case.
+	 */
+	private final String[] extensionMethods;
+
+
+	/**
+	 * Creates a new method matcher.
+	 *
+	 * @param methods The supported methods. Must not be {@code null}.
+	 */
+	MethodMatcher(final Collection<String> methods) {
+
+		int bits = 0;
+
+		List<String> extensions = new ArrayList<String>();
+
+		for (String method: methods) {
+
+			int index = indexOf(method);
+
+			if (index >= 0)
+				bits |= 1 << index;
+			else
+				extensions.add(method.toUpperCase());
+		}
+
+		mask = bits;
+		extensionMethods = extensions.toArray(new String[extensions.size()]);
+	}
+
+
+	/**
+	 * Returns the index of the specified standard HTTP method, ignoring
+	 * case.
+	 *
+	 * @param method The HTTP method. Must not be {@code null}.
+	 *
+	 * @return The index of the method in {@link #STANDARD_METHODS}, -1 if
+	 *         not a standard method.
+	 */
+	static int indexOf(final String method) {
+
+		final int index;
+
+		switch (method.length()) {
+
+			case 3:
+				if (method.equalsIgnoreCase("GET"))
+					return 0;
+				index = 3; // PUT
+				break;
+
+			case 4:
+				if (method.equalsIgnoreCase("HEAD"))
+					return 1;
+				index = 2; // POST
+				break;
+
+			case 5:
+				if (method.equalsIgnoreCase("TRACE"))
+					return 6;
+				index = 8; // PATCH
+				break;
+
+			case 6:
+				index = 4; // DELETE
+				break;
+
+			case 7:
+				if (method.equalsIgnoreCase("OPTIONS"))
+					return 5;
+				index = 7; // CONNECT
+				break;
+
+			default:
+				return -1;
+		}
+
+		return method.equalsIgnoreCase(STANDARD_METHODS[index]) ? index : -1;
+	}
+
+
+	/**
+	 * Checks whether the specified HTTP method is supported, ignoring
+	 * case.
+	 *
+	 * @param method The HTTP method. May be {@code null}.
+	 *
+	 * @return {@code true} if the method is supported, else {@code false}.
+	 */
+	boolean matches(final String method) {
+
+		if (method == null)
+			return false;
+
+		int index = indexOf(method);
+
+		if (index >= 0)
+			return (mask & (1 << index)) != 0;
+
+		for (String extension: extensionMethods) {
+
+			if (extension.equalsIgnoreCase(method))
+				return true;
+		}
+
+		return false;
+	}
+}
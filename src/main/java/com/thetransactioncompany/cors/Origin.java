@@ -49,7 +49,8 @@ public class Origin {
 	
 	
 	/**
-	 * Returns a validated instance of this origin.
+	 * Returns a validated instance of this origin. Recently validated 
+	 * origins are memoised.
 	 * 
 	 * @throws OriginException If the value doesn't represent a valid and
 	 *                         supported origin string.
@@ -57,7 +58,7 @@ public class Origin {
 	public ValidatedOrigin validate()
 		throws OriginException {
 	
-		return new ValidatedOrigin(value);
+		return ValidatedOrigin.parse(value);
 	}
 	
 	
@@ -0,0 +1,308 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Random;
+
+
+/**
+ * Estimates the number of distinct request origins seen in rotating time
+ * windows, separately for the allowed and the denied origins. Intended for
+ * sizing the origin cache and the allow lists.
+ *
+ * <p>Each window keeps two {@link HyperLogLog} estimators of 4 KB, with a
+ * standard error of about 1.6%. The current and the previous complete
+ * window are retained. Recording is lock-free, except for the rotation
+ * at the start of each window.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class OriginCardinality {
+
+
+	/**
+	 * The default window length, one hour in milliseconds.
+	 */
+	public static final long DEFAULT_WINDOW_LENGTH = 3600000L;
+
+
+	/**
+	 * Distinct origin estimators for a time window.
+	 */
+	private static final class Window {
+
+
+		/**
+		 * The window start, in milliseconds since the epoch.
+		 */
+		final long start;
+
+
+		/**
+		 * The estimator of the allowed origins.
+		 */
+		final HyperLogLog allowed;
+
+
+		/**
+		 * The estimator of the denied origins.
+		 */
+		final HyperLogLog denied;
+
+
+		/**
+		 * Creates a new empty window.
+		 *
+		 * @param start The window start.
+		 * @param seed  The hash seed.
+		 */
+		Window(final long start, final long seed) {
+
+			this.start = start;
+			allowed = new HyperLogLog(seed);
+			denied = new HyperLogLog(seed);
+		}
+	}
+
+
+	/**
+	 * The window length, in milliseconds.
+	 */
+	private final long windowLength;
+
+
+	/**
+	 * The hash seed, random per instance.
+	 */
+	private final long seed = new Random().nextLong();
+
+
+	/**
+	 * The current window.
+	 */
+	private volatile Window current;
+
+
+	/**
+	 * The previous window, {@code null} if none or not adjacent to the
+	 * current window.
+	 */
+	private volatile Window previous;
+
+
+	/**
+	 * Creates a new origin cardinality estimator with
+	 * {@link #DEFAULT_WINDOW_LENGTH hourly} windows.
+	 */
+	public OriginCardinality() {
+
+		this(DEFAULT_WINDOW_LENGTH);
+	}
+
+
+	/**
+	 * Creates a new origin cardinality estimator.
+	 *
+	 * @param windowLength The window length, in milliseconds. Must be
+	 *                     positive.
+	 */
+	public OriginCardinality(final long windowLength) {
+
+		if (windowLength < 1)
+			throw new IllegalArgumentException("The window length must be positive");
+
+		this.windowLength = windowLength;
+		current = new Window(windowStart(System.currentTimeMillis()), seed);
+	}
+
+
+	/**
+	 * Returns the start of the window containing the specified time.
+	 *
+	 * @param time The time, in milliseconds since the epoch.
+	 *
+	 * @return The window start.
+	 */
+	private long windowStart(final long time) {
+
+		return time - time % windowLength;
+	}
+
+
+	/**
+	 * Returns the window for the specified time, rotating the windows
+	 * when a new one begins.
+	 *
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The current window.
+	 */
+	private Window window(final long now) {
+
+		Window w = current;
+
+		// Don't rotate back if the clock is adjusted
+		if (now < w.start + windowLength)
+			return w;
+
+		return rotate(now);
+	}
+
+
+	/**
+	 * Starts the window containing the specified time.
+	 *
+	 * @param now The current time, in milliseconds since the epoch.
+	 *
+	 * @return The new current window.
+	 */
+	private synchronized Window rotate(final long now) {
+
+		final long start = windowStart(now);
+
+		if (current.start >= start)
+			return current; // rotated by another thread
+
+		previous = current.start == start - windowLength ? current : null;
+		current = new Window(start, seed);
+
+		return current;
+	}
+
+
+	/**
+	 * Returns the window length.
+	 *
+	 * @return The window length, in milliseconds.
+	 */
+	public long getWindowLength() {
+
+		return windowLength;
+	}
+
+
+	/**
+	 * Records a checked request origin.
+	 *
+	 * @param origin  The Origin header value. Must not be {@code null}.
+	 * @param allowed {@code true} if the origin was allowed,
+	 *                {@code false} if denied.
+	 */
+	public void record(final String origin, final boolean allowed) {
+
+		record(origin, allowed, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Records a checked request origin at the specified time.
+	 *
+	 * @param origin  The Origin header value. Must not be {@code null}.
+	 * @param allowed {@code true} if the origin was allowed,
+	 *                {@code false} if denied.
+	 * @param now     The current time, in milliseconds since the epoch.
+	 */
+	void record(final String origin, final boolean allowed, final long now) {
+
+		Window w = window(now);
+
+		if (allowed)
+			w.allowed.add(origin);
+		else
+			w.denied.add(origin);
+	}
+
+
+	/**
+	 * Returns the estimated number of distinct origins at the specified
+	 * time.
+	 *
+	 * @param allowed  {@code true} for the allowed origins,
+	 *                 {@code false} for the denied.
+	 * @param previous {@code true} for the previous complete window,
+	 *                 {@code false} for the current window.
+	 * @param now      The current time, in milliseconds since the epoch.
+	 *
+	 * @return The estimate, zero if the window has no records.
+	 */
+	long estimate(final boolean allowed, final boolean previous, final long now) {
+
+		Window w = window(now);
+
+		if (previous)
+			w = this.previous;
+
+		if (w == null)
+			return 0L;
+
+		return allowed ? w.allowed.estimate() : w.denied.estimate();
+	}
+
+
+	/**
+	 * Returns the start of the current window.
+	 *
+	 * @return The window start, in milliseconds since the epoch.
+	 */
+	public long getWindowStart() {
+
+		return window(System.currentTimeMillis()).start;
+	}
+
+
+	/**
+	 * Returns the estimated number of distinct allowed origins in the
+	 * current window.
+	 *
+	 * @return The estimate.
+	 */
+	public long getAllowedCount() {
+
+		return estimate(true, false, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Returns the estimated number of distinct denied origins in the
+	 * current window.
+	 *
+	 * @return The estimate.
+	 */
+	public long getDeniedCount() {
+
+		return estimate(false, false, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Returns the estimated number of distinct allowed origins in the
+	 * previous complete window.
+	 *
+	 * @return The estimate, zero if none.
+	 */
+	public long getPreviousAllowedCount() {
+
+		return estimate(true, true, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Returns the estimated number of distinct denied origins in the
+	 * previous complete window.
+	 *
+	 * @return The estimate, zero if none.
+	 */
+	public long getPreviousDeniedCount() {
+
+		return estimate(false, true, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Clears the current and the previous window.
+	 */
+	public synchronized void reset() {
+
+		previous = null;
+		current = new Window(windowStart(System.currentTimeMillis()), seed);
+	}
+}
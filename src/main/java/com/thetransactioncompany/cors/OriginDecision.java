@@ -0,0 +1,115 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * The access decision for a request origin, as cached by
+ * {@link CORSRequestHandler} when {@link CORSConfiguration#originCacheSize}
+ * is set. Immutable.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class OriginDecision {
+
+
+	/**
+	 * The request origin.
+	 */
+	private final Origin origin;
+
+
+	/**
+	 * The canonical (validated) origin, {@code null} if invalid.
+	 */
+	private final ValidatedOrigin canonicalOrigin;
+
+
+	/**
+	 * The access verdict.
+	 */
+	private final boolean allowed;
+
+
+	/**
+	 * Creates a new origin decision.
+	 *
+	 * @param origin          The request origin. Must not be
+	 *                        {@code null}.
+	 * @param canonicalOrigin The canonical (validated) origin,
+	 *                        {@code null} if the origin is invalid.
+	 * @param allowed         {@code true} if the origin is allowed, else
+	 *                        {@code false}.
+	 */
+	public OriginDecision(final Origin origin,
+			      final ValidatedOrigin canonicalOrigin,
+			      final boolean allowed) {
+
+		if (origin == null)
+			throw new IllegalArgumentException("The origin must not be null");
+
+		this.origin = origin;
+		this.canonicalOrigin = canonicalOrigin;
+		this.allowed = allowed;
+	}
+
+
+	/**
+	 * Decides whether the specified request origin is allowed by the
+	 * configured policy.
+	 *
+	 * @param config The CORS configuration. Must not be {@code null}.
+	 * @param value  The Origin header value. Must not be {@code null}.
+	 *
+	 * @return The origin decision.
+	 */
+	public static OriginDecision decide(final CORSConfiguration config, final String value) {
+
+		Origin origin = new Origin(value);
+
+		ValidatedOrigin canonicalOrigin;
+
+		try {
+			canonicalOrigin = origin.validate();
+
+		} catch (OriginException e) {
+
+			canonicalOrigin = null;
+		}
+
+		return new OriginDecision(origin, canonicalOrigin, config.isAllowedOrigin(origin, canonicalOrigin));
+	}
+
+
+	/**
+	 * Returns the request origin.
+	 *
+	 * @return The request origin.
+	 */
+	public Origin getOrigin() {
+
+		return origin;
+	}
+
+
+	/**
+	 * Returns the canonical form of the request origin, with lower case
+	 * scheme and host.
+	 *
+	 * @return The canonical origin, {@code null} if the origin is
+	 *         invalid.
+	 */
+	public ValidatedOrigin getCanonicalOrigin() {
+
+		return canonicalOrigin;
+	}
+
+
+	/**
+	 * Returns the access verdict.
+	 *
+	 * @return {@code true} if the origin is allowed, else {@code false}.
+	 */
+	public boolean isAllowed() {
+
+		return allowed;
+	}
+}
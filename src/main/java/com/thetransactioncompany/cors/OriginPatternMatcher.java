@@ -0,0 +1,367 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Matches origins against a set of origin patterns, such as
+ * {@code https://*.preview.example.com} or {@code http://localhost:*}. A
+ * {@code *} wildcard matches one or more letters, digits or dashes, i.e. a
+ * single host name label or a port number, but never a {@code .},
+ * {@code :} or {@code /}. Matching is case-insensitive.
+ *
+ * <p>The patterns are compiled into one deterministic finite automaton
+ * (DFA), so that an origin is matched in a single left-to-right pass over
+ * its characters, without iterating over the patterns or backtracking,
+ * and without allocating.
+ *
+ * <p>Instances are immutable and safe for concurrent use.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class OriginPatternMatcher {
+
+
+	/**
+	 * The wildcard token in a compiled pattern.
+	 */
+	private static final int WILDCARD = -1;
+
+
+	/**
+	 * The maximum number of DFA states.
+	 */
+	private static final int MAX_STATES = 100000;
+
+
+	/**
+	 * The character class of the characters which occur neither in the
+	 * patterns nor in wildcard matches.
+	 */
+	private static final int OTHER_CLASS = 0;
+
+
+	/**
+	 * The character class of the characters matched by a wildcard, which
+	 * don't occur literally in the patterns.
+	 */
+	private static final int WILDCARD_CLASS = 1;
+
+
+	/**
+	 * The character class of each lower case US-ASCII character.
+	 */
+	private final int[] classOf = new int[128];
+
+
+	/**
+	 * The number of character classes.
+	 */
+	private final int classCount;
+
+
+	/**
+	 * The DFA transitions, indexed by state * {@link #classCount} +
+	 * character class, -1 for the dead state.
+	 */
+	private final int[] transitions;
+
+
+	/**
+	 * The accepting DFA states. Empty if there are no patterns.
+	 */
+	private final boolean[] accepting;
+
+
+	/**
+	 * Creates a new origin pattern matcher.
+	 *
+	 * @param patterns The origin patterns. Must not be {@code null}.
+	 *
+	 * @throws IllegalArgumentException On a invalid pattern.
+	 */
+	OriginPatternMatcher(final Collection<String> patterns) {
+
+		// Tokenise the patterns
+		final int[][] tokens = new int[patterns.size()][];
+
+		int p = 0;
+
+		for (String pattern: patterns)
+			tokens[p++] = tokenize(pattern);
+
+		// Partition the alphabet into classes of characters which the
+		// automaton can't tell apart
+		int count = 2;
+
+		for (char c = 0; c < 128; c++)
+			classOf[c] = isWildcardChar(c) ? WILDCARD_CLASS : OTHER_CLASS;
+
+		for (int[] pattern: tokens) {
+
+			for (int token: pattern) {
+
+				if (token != WILDCARD && classOf[token] < 2)
+					classOf[token] = count++;
+			}
+		}
+
+		classCount = count;
+
+		// A representative character for each class, -1 if unused
+		final int[] representative = new int[classCount];
+
+		for (int i = 0; i < classCount; i++)
+			representative[i] = -1;
+
+		for (char c = 0; c < 128; c++) {
+
+			if (c >= 'A' && c <= 'Z')
+				continue; // folded to lower case
+
+			if (representative[classOf[c]] < 0)
+				representative[classOf[c]] = c;
+		}
+
+		// Number the NFA states: a position within a pattern
+		final int[] offset = new int[tokens.length];
+
+		int nfaStates = 0;
+
+		for (int i = 0; i < tokens.length; i++) {
+			offset[i] = nfaStates;
+			nfaStates += tokens[i].length + 1;
+		}
+
+		final int[] owner = new int[nfaStates];
+
+		for (int i = 0; i < tokens.length; i++) {
+
+			for (int j = 0; j <= tokens[i].length; j++)
+				owner[offset[i] + j] = i;
+		}
+
+		// Subset construction
+		BitSet start = new BitSet(nfaStates);
+
+		for (int i = 0; i < tokens.length; i++)
+			start.set(offset[i]);
+
+		if (start.isEmpty()) {
+			transitions = new int[0];
+			accepting = new boolean[0];
+			return;
+		}
+
+		Map<BitSet,Integer> stateIds = new HashMap<BitSet,Integer>();
+		List<BitSet> states = new ArrayList<BitSet>();
+		List<int[]> rows = new ArrayList<int[]>();
+
+		stateIds.put(start, 0);
+		states.add(start);
+
+		for (int s = 0; s < states.size(); s++) {
+
+			final BitSet current = states.get(s);
+
+			final int[] row = new int[classCount];
+
+			for (int cls = 0; cls < classCount; cls++) {
+
+				if (representative[cls] < 0) {
+					row[cls] = -1;
+					continue;
+				}
+
+				BitSet next = step(tokens, owner, offset, current, (char)representative[cls]);
+
+				if (next.isEmpty()) {
+					row[cls] = -1;
+					continue;
+				}
+
+				Integer id = stateIds.get(next);
+
+				if (id == null) {
+
+					if (states.size() == MAX_STATES)
+						throw new IllegalArgumentException("Too many or too complex origin patterns");
+
+					id = states.size();
+					stateIds.put(next, id);
+					states.add(next);
+				}
+
+				row[cls] = id;
+			}
+
+			rows.add(row);
+		}
+
+		transitions = new int[states.size() * classCount];
+		accepting = new boolean[states.size()];
+
+		for (int s = 0; s < states.size(); s++) {
+
+			System.arraycopy(rows.get(s), 0, transitions, s * classCount, classCount);
+
+			BitSet set = states.get(s);
+
+			for (int i = 0; i < tokens.length; i++) {
+
+				if (set.get(offset[i] + tokens[i].length))
+					accepting[s] = true;
+			}
+		}
+	}
+
+
+	/**
+	 * Checks whether the specified character can be matched by a
+	 * wildcard.
+	 *
+	 * @param c The lower case character.
+	 *
+	 * @return {@code true} if the character can be matched by a
+	 *         wildcard, else {@code false}.
+	 */
+	private static boolean isWildcardChar(final char c) {
+
+		return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-';
+	}
+
+
+	/**
+	 * Tokenises the specified origin pattern.
+	 *
+	 * @param pattern The origin pattern. Must not be {@code null}.
+	 *
+	 * @return The tokens: lower case characters and {@link #WILDCARD}s.
+	 *
+	 * @throws IllegalArgumentException On a invalid pattern.
+	 */
+	private static int[] tokenize(final String pattern) {
+
+		final int schemeEnd = pattern.indexOf("://");
+
+		if (schemeEnd < 1)
+			throw new IllegalArgumentException("Missing scheme in origin pattern: " + pattern);
+
+		int[] tokens = new int[pattern.length()];
+
+		for (int i = 0; i < pattern.length(); i++) {
+
+			char c = pattern.charAt(i);
+
+			if (c == '*') {
+
+				if (i < schemeEnd + 3)
+					throw new IllegalArgumentException("Wildcard in origin pattern scheme: " + pattern);
+
+				if (tokens[i - 1] == WILDCARD)
+					throw new IllegalArgumentException("Consecutive wildcards in origin pattern: " + pattern);
+
+				tokens[i] = WILDCARD;
+
+			} else {
+
+				if (c >= 128 || c <= ' ')
+					throw new IllegalArgumentException("Illegal character in origin pattern: " + pattern);
+
+				if (c >= 'A' && c <= 'Z')
+					c += 'a' - 'A';
+
+				tokens[i] = c;
+			}
+		}
+
+		return tokens;
+	}
+
+
+	/**
+	 * Computes the NFA states reached from the specified states on the
+	 * specified character.
+	 *
+	 * <p>A pattern with n tokens has the NFA states 0 to n, state n being
+	 * accepting. A wildcard token at position j moves state j to j + 1 on
+	 * a wildcard character, and state j + 1 loops on further wildcard
+	 * characters.
+	 *
+	 * @param tokens  The pattern tokens.
+	 * @param owner   The pattern of each NFA state.
+	 * @param offset  The NFA state offset of each pattern.
+	 * @param current The current NFA states.
+	 * @param c       The lower case character.
+	 *
+	 * @return The next NFA states.
+	 */
+	private static BitSet step(final int[][] tokens,
+				   final int[] owner,
+				   final int[] offset,
+				   final BitSet current,
+				   final char c) {
+
+		BitSet next = new BitSet();
+
+		final boolean wildcardChar = isWildcardChar(c);
+
+		for (int k = current.nextSetBit(0); k >= 0; k = current.nextSetBit(k + 1)) {
+
+			final int[] pattern = tokens[owner[k]];
+
+			final int j = k - offset[owner[k]];
+
+			if (j < pattern.length) {
+
+				if (pattern[j] == c || (pattern[j] == WILDCARD && wildcardChar))
+					next.set(k + 1);
+			}
+
+			if (j > 0 && pattern[j - 1] == WILDCARD && wildcardChar)
+				next.set(k);
+		}
+
+		return next;
+	}
+
+
+	/**
+	 * Checks whether the specified origin matches one of the patterns.
+	 *
+	 * @param origin The origin value. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin matches, else {@code false}.
+	 */
+	boolean matches(final String origin) {
+
+		if (accepting.length == 0)
+			return false;
+
+		int state = 0;
+
+		for (int i = 0; i < origin.length(); i++) {
+
+			char c = origin.charAt(i);
+
+			if (c >= 128)
+				return false;
+
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+
+			state = transitions[state * classCount + classOf[c]];
+
+			if (state < 0)
+				return false;
+		}
+
+		return accepting[state];
+	}
+}
@@ -0,0 +1,480 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * Selects the CORS policy, represented by its {@link CORSRequestHandler},
+ * which applies to an HTTP request:
+ *
+ * <ol>
+ *     <li>Path policies are selected by the longest matching request path
+ *         prefix, with a single walk of a compiled character trie. A path
+ *         policy can be a bypass, which skips CORS processing entirely.
+ *         The path is the container-decoded servlet path and path info,
+ *         and a prefix matches only at a {@code /} segment boundary.
+ *     <li>Tenant policies are selected by the request host name with a
+ *         single hash lookup.
+ *     <li>All other requests get the default policy.
+ * </ol>
+ *
+ * <p>Instances are immutable and safe for concurrent use. The
+ * {@link CORSFilter} replaces its router as a whole when the configuration
+ * is set or reloaded.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class PolicyRouter {
+
+
+	/**
+	 * Path prefix trie node. The children are keyed by path character,
+	 * stored in ascending order to permit binary search.
+	 */
+	private static final class Node {
+
+
+		/**
+		 * The child keys, in ascending order.
+		 */
+		private char[] keys = new char[0];
+
+
+		/**
+		 * The child nodes, matching the key order.
+		 */
+		private Node[] children = new Node[0];
+
+
+		/**
+		 * {@code true} if a path prefix ends at this node.
+		 */
+		private boolean terminal = false;
+
+
+		/**
+		 * The handler for the path prefix ending at this node,
+		 * {@code null} for a bypass.
+		 */
+		private CORSRequestHandler handler = null;
+
+
+		/**
+		 * Returns the child for the specified character.
+		 *
+		 * @param c The character.
+		 *
+		 * @return The child node, {@code null} if none.
+		 */
+		Node get(final char c) {
+
+			int low = 0;
+			int high = keys.length - 1;
+
+			while (low <= high) {
+
+				int mid = (low + high) >>> 1;
+
+				if (keys[mid] < c)
+					low = mid + 1;
+				else if (keys[mid] > c)
+					high = mid - 1;
+				else
+					return children[mid];
+			}
+
+			return null;
+		}
+
+
+		/**
+		 * Returns the child for the specified character, creating it
+		 * if necessary.
+		 *
+		 * @param c The character.
+		 *
+		 * @return The child node.
+		 */
+		Node getOrCreate(final char c) {
+
+			Node child = get(c);
+
+			if (child != null)
+				return child;
+
+			int pos = 0;
+
+			while (pos < keys.length && keys[pos] < c)
+				pos++;
+
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+
+			System.arraycopy(keys, 0, newKeys, 0, pos);
+			System.arraycopy(children, 0, newChildren, 0, pos);
+			System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+			System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+
+			child = new Node();
+			newKeys[pos] = c;
+			newChildren[pos] = child;
+
+			keys = newKeys;
+			children = newChildren;
+
+			return child;
+		}
+	}
+
+
+	/**
+	 * The handler for the default policy.
+	 */
+	private final CORSRequestHandler defaultHandler;
+
+
+	/**
+	 * The handlers for the tenant policies, keyed by lower case host name.
+	 * Empty if none.
+	 */
+	private final Map<String,CORSRequestHandler> hostHandlers;
+
+
+	/**
+	 * The root of the path prefix trie, {@code null} if there are no path
+	 * policies.
+	 */
+	private final Node pathRoot;
+
+
+	/**
+	 * Creates a new policy router.
+	 *
+	 * @param defaultConfig The default CORS configuration. Must not be
+	 *                      {@code null}.
+	 * @param hostConfigs   The tenant CORS configurations, keyed by host
+	 *                      name. Must not be {@code null}.
+	 * @param pathConfigs   The path CORS configurations, keyed by path
+	 *                      prefix, {@code null} values for bypassed path
+	 *                      prefixes. Must not be {@code null}.
+	 */
+	PolicyRouter(final CORSConfiguration defaultConfig,
+		     final Map<String,CORSConfiguration> hostConfigs,
+		     final Map<String,CORSConfiguration> pathConfigs) {
+
+		this(defaultConfig, hostConfigs, pathConfigs, null);
+	}
+
+
+	/**
+	 * Creates a new policy router with handlers which record the checked
+	 * request origins.
+	 *
+	 * @param defaultConfig     The default CORS configuration. Must not
+	 *                          be {@code null}.
+	 * @param hostConfigs       The tenant CORS configurations, keyed by
+	 *                          host name. Must not be {@code null}.
+	 * @param pathConfigs       The path CORS configurations, keyed by
+	 *                          path prefix, {@code null} values for
+	 *                          bypassed path prefixes. Must not be
+	 *                          {@code null}.
+	 * @param originCardinality The estimator of the distinct checked
+	 *                          origins, shared by all handlers,
+	 *                          {@code null} if none.
+	 */
+	PolicyRouter(final CORSConfiguration defaultConfig,
+		     final Map<String,CORSConfiguration> hostConfigs,
+		     final Map<String,CORSConfiguration> pathConfigs,
+		     final OriginCardinality originCardinality) {
+
+		defaultHandler = new CORSRequestHandler(defaultConfig, originCardinality);
+
+		if (hostConfigs.isEmpty()) {
+
+			hostHandlers = Collections.emptyMap();
+
+		} else {
+
+			hostHandlers = new HashMap<String,CORSRequestHandler>();
+
+			for (Map.Entry<String,CORSConfiguration> entry: hostConfigs.entrySet())
+				hostHandlers.put(entry.getKey().toLowerCase(), new CORSRequestHandler(entry.getValue(), originCardinality));
+		}
+
+		if (pathConfigs.isEmpty()) {
+
+			pathRoot = null;
+
+		} else {
+
+			pathRoot = new Node();
+
+			for (Map.Entry<String,CORSConfiguration> entry: pathConfigs.entrySet()) {
+
+				Node node = pathRoot;
+
+				for (int i = 0; i < entry.getKey().length(); i++)
+					node = node.getOrCreate(entry.getKey().charAt(i));
+
+				node.terminal = true;
+				node.handler = entry.getValue() != null ? new CORSRequestHandler(entry.getValue(), originCardinality) : null;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the handler for the default policy.
+	 *
+	 * @return The default handler.
+	 */
+	CORSRequestHandler getDefaultHandler() {
+
+		return defaultHandler;
+	}
+
+
+	/**
+	 * Returns the handler for the policy of the specified host.
+	 *
+	 * @param host The host name, {@code null} if not known.
+	 *
+	 * @return The handler for the host policy, the default handler if
+	 *         none is configured for the host.
+	 */
+	CORSRequestHandler getHandler(final String host) {
+
+		if (host == null || hostHandlers.isEmpty())
+			return defaultHandler;
+
+		CORSRequestHandler handler = hostHandlers.get(host);
+
+		if (handler == null && ! isLowerCase(host))
+			handler = hostHandlers.get(host.toLowerCase());
+
+		return handler != null ? handler : defaultHandler;
+	}
+
+
+	/**
+	 * Returns the node of the longest path prefix which matches the 
+	 * specified request path. A prefix matches if it ends with a 
+	 * {@code /}, or if the path continues with a {@code /} or ends after
+	 * it. A prefix with a trailing {@code /} also matches the path
+	 * without it, so that {@code /api/} matches {@code /api}.
+	 *
+	 * @param path The normalised request path. Must not be {@code null}.
+	 *
+	 * @return The node of the longest matching path prefix, {@code null}
+	 *         if none matches.
+	 */
+	private Node matchPath(final String path) {
+
+		Node match = pathRoot.terminal ? pathRoot : null;
+
+		Node node = pathRoot;
+
+		final int length = path.length();
+
+		for (int i = 0; i < length; i++) {
+
+			final char c = path.charAt(i);
+
+			node = node.get(c);
+
+			if (node == null)
+				return match;
+
+			// Match at segment boundaries only
+			if (node.terminal && (c == '/' || i + 1 == length || path.charAt(i + 1) == '/'))
+				match = node;
+		}
+
+		// The path equals a prefix without its trailing slash
+		Node slash = node.get('/');
+
+		if (slash != null && slash.terminal)
+			match = slash;
+
+		return match;
+	}
+
+
+	/**
+	 * Returns the path of the specified HTTP request within the web
+	 * application, i.e. the servlet path followed by the path info. Both
+	 * are decoded by the container and stripped of path parameters, 
+	 * unlike the request URI.
+	 *
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The normalised request path.
+	 */
+	static String getPath(final HttpServletRequest request) {
+
+		final String servletPath = request.getServletPath();
+		final String pathInfo = request.getPathInfo();
+
+		String path;
+
+		if (pathInfo == null)
+			path = servletPath != null ? servletPath : "";
+		else if (servletPath == null || servletPath.isEmpty())
+			path = pathInfo;
+		else
+			path = servletPath + pathInfo;
+
+		return normalizePath(path);
+	}
+
+
+	/**
+	 * Normalises the specified request path, as a safeguard against 
+	 * containers which don't. Removes path parameters ({@code ;...}), 
+	 * empty and {@code .} segments, and resolves {@code ..} segments.
+	 *
+	 * @param path The request path. Must not be {@code null}.
+	 *
+	 * @return The normalised path, starting with a {@code /}.
+	 */
+	static String normalizePath(final String path) {
+
+		if (path.startsWith("/") &&
+		    path.indexOf(';') < 0 &&
+		    path.indexOf("//") < 0 &&
+		    path.indexOf("/.") < 0) {
+
+			// Already normal
+			return path;
+		}
+
+		List<String> segments = new ArrayList<String>();
+
+		boolean directory = false;
+
+		int begin = 0;
+
+		while (begin <= path.length()) {
+
+			int end = path.indexOf('/', begin);
+
+			if (end < 0)
+				end = path.length();
+
+			String segment = path.substring(begin, end);
+
+			int params = segment.indexOf(';');
+
+			if (params >= 0)
+				segment = segment.substring(0, params);
+
+			if (segment.equals("..")) {
+
+				if (! segments.isEmpty())
+					segments.remove(segments.size() - 1);
+
+				directory = true;
+
+			} else if (segment.isEmpty() || segment.equals(".")) {
+
+				directory = true;
+
+			} else {
+
+				segments.add(segment);
+				directory = false;
+			}
+
+			begin = end + 1;
+		}
+
+		StringBuilder sb = new StringBuilder(path.length());
+
+		for (String segment: segments)
+			sb.append('/').append(segment);
+
+		if (directory || segments.isEmpty())
+			sb.append('/');
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Selects the handler for the policy that applies to the specified
+	 * HTTP request, by its path within the web application (see 
+	 * {@link #getPath}) and then by its server name as taken from the 
+	 * Host header.
+	 *
+	 * @param request The HTTP request. Must not be {@code null}.
+	 *
+	 * @return The handler, {@code null} if CORS processing must be
+	 *         bypassed.
+	 */
+	CORSRequestHandler select(final HttpServletRequest request) {
+
+		if (pathRoot != null) {
+
+			Node match = matchPath(getPath(request));
+
+			if (match != null)
+				return match.handler;
+		}
+
+		if (hostHandlers.isEmpty())
+			return defaultHandler;
+
+		return getHandler(request.getServerName());
+	}
+
+
+	/**
+	 * Returns the handler for the policy of the specified path.
+	 *
+	 * @param path The request path within the web application. Must not
+	 *             be {@code null}.
+	 *
+	 * @return The handler for the longest matching path prefix, 
+	 *         {@code null} if bypassed, the default handler if no path
+	 *         prefix matches.
+	 */
+	CORSRequestHandler getPathHandler(final String path) {
+
+		if (pathRoot == null)
+			return defaultHandler;
+
+		Node match = matchPath(normalizePath(path));
+
+		return match != null ? match.handler : defaultHandler;
+	}
+
+
+	/**
+	 * Checks whether the specified string contains no upper case ASCII
+	 * letters.
+	 *
+	 * @param s The string. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the string is lower case, else
+	 *         {@code false}.
+	 */
+	private static boolean isLowerCase(final String s) {
+
+		for (int i = 0; i < s.length(); i++) {
+
+			char c = s.charAt(i);
+
+			if (c >= 'A' && c <= 'Z')
+				return false;
+		}
+
+		return true;
+	}
+}
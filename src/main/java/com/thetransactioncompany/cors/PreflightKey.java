@@ -0,0 +1,81 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Preflight cache key, made up of the raw values of the Origin,
+ * Access-Control-Request-Method and Access-Control-Request-Headers 
+ * headers. Immutable.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class PreflightKey {
+
+
+	/**
+	 * The value of the Origin header.
+	 */
+	private final String origin;
+
+
+	/**
+	 * The value of the Access-Control-Request-Method header.
+	 */
+	private final String requestedMethod;
+
+
+	/**
+	 * The value of the Access-Control-Request-Headers header,
+	 * {@code null} if not specified.
+	 */
+	private final String requestedHeaders;
+
+
+	/**
+	 * The pre-computed hash code.
+	 */
+	private final int hash;
+
+
+	/**
+	 * Creates a new preflight cache key.
+	 *
+	 * @param context The preflight request context. Must not be
+	 *                {@code null}.
+	 */
+	PreflightKey(final CORSRequestContext context) {
+
+		origin = context.getOrigin();
+		requestedMethod = context.getRequestedMethod();
+		requestedHeaders = context.getRequestedHeaders();
+
+		int h = origin.hashCode();
+		h = 31 * h + requestedMethod.hashCode();
+		h = 31 * h + (requestedHeaders != null ? requestedHeaders.hashCode() : 0);
+		hash = h;
+	}
+
+
+	@Override
+	public int hashCode() {
+
+		return hash;
+	}
+
+
+	@Override
+	public boolean equals(final Object object) {
+
+		if (this == object)
+			return true;
+
+		if (! (object instanceof PreflightKey))
+			return false;
+
+		PreflightKey other = (PreflightKey)object;
+
+		return hash == other.hash &&
+		       origin.equals(other.origin) &&
+		       requestedMethod.equals(other.requestedMethod) &&
+		       (requestedHeaders == null ? other.requestedHeaders == null : requestedHeaders.equals(other.requestedHeaders));
+	}
+}
@@ -0,0 +1,119 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * The outcome of a preflight request check, as cached by
+ * {@link CORSRequestHandler} when 
+ * {@link CORSConfiguration#preflightCacheSize} is set: either the 
+ * response headers to write or the rejection to report. Immutable.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class PreflightVerdict {
+
+
+	/**
+	 * The response headers, {@code null} if rejected.
+	 */
+	private final ResponseHeaderBundle responseHeaders;
+
+
+	/**
+	 * The rejection, {@code null} if accepted. Serves as a template only,
+	 * a fresh exception is thrown for each request.
+	 */
+	private final CORSException rejection;
+
+
+	/**
+	 * Creates a new preflight verdict.
+	 *
+	 * @param responseHeaders The response headers, {@code null} if 
+	 *                        rejected.
+	 * @param rejection       The rejection, {@code null} if accepted.
+	 */
+	private PreflightVerdict(final ResponseHeaderBundle responseHeaders,
+				 final CORSException rejection) {
+
+		this.responseHeaders = responseHeaders;
+		this.rejection = rejection;
+	}
+
+
+	/**
+	 * Creates a new verdict for an accepted preflight request.
+	 *
+	 * @param responseHeaders The response headers. Must not be 
+	 *                        {@code null}.
+	 *
+	 * @return The preflight verdict.
+	 */
+	static PreflightVerdict accept(final ResponseHeaderBundle responseHeaders) {
+
+		return new PreflightVerdict(responseHeaders, null);
+	}
+
+
+	/**
+	 * Creates a new verdict for a rejected preflight request.
+	 *
+	 * @param rejection The rejection. Must not be {@code null}.
+	 *
+	 * @return The preflight verdict.
+	 */
+	static PreflightVerdict reject(final CORSException rejection) {
+
+		return new PreflightVerdict(null, rejection);
+	}
+
+
+	/**
+	 * Returns {@code true} if the request origin passed the origin check,
+	 * which is the first preflight check.
+	 *
+	 * @return {@code true} if the origin is allowed, {@code false} if it
+	 *         was denied.
+	 */
+	boolean isOriginAllowed() {
+
+		return ! (rejection instanceof CORSOriginDeniedException);
+	}
+
+
+	/**
+	 * Returns the response headers of an accepted preflight request, else
+	 * throws a copy of the rejection.
+	 *
+	 * @return The response headers.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS preflight
+	 *                                        request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 * @throws UnsupportedHTTPHeaderException If the requested HTTP header
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	ResponseHeaderBundle getResponseHeaders()
+		throws InvalidCORSRequestException,
+		       CORSOriginDeniedException,
+		       UnsupportedHTTPMethodException,
+		       UnsupportedHTTPHeaderException {
+
+		if (rejection == null)
+			return responseHeaders;
+
+		if (rejection instanceof CORSOriginDeniedException)
+			throw new CORSOriginDeniedException(rejection.getMessage(), ((CORSOriginDeniedException)rejection).getRequestOrigin());
+
+		if (rejection instanceof UnsupportedHTTPMethodException)
+			throw new UnsupportedHTTPMethodException(rejection.getMessage(), ((UnsupportedHTTPMethodException)rejection).getRequestedMethod());
+
+		if (rejection instanceof UnsupportedHTTPHeaderException)
+			throw new UnsupportedHTTPHeaderException(rejection.getMessage(), ((UnsupportedHTTPHeaderException)rejection).getRequestHeader());
+
+		throw new InvalidCORSRequestException(rejection.getMessage());
+	}
+}
@@ -6,7 +6,8 @@ import javax.servlet.http.HttpServletRequest;
 
 /**
  * Request tagger. Tags HTTP servlet requests to provide CORS information to 
- * downstream handlers.
+ * downstream handlers. Requests of other servers can be tagged through a
+ * {@link CORSRequestTagSink}.
  *
  * @author Vladimir Dzhuvinov
  */
@@ -57,4 +58,71 @@ public final class RequestTagger {
 				request.setAttribute("cors.isCorsRequest", false);
 		}
 	}
+
+
+	/**
+	 * Tags an HTTP servlet request to provide CORS information to 
+	 * downstream handlers. Same as {@link #tag(HttpServletRequest, 
+	 * CORSRequestType)}, but takes the header values from the specified
+	 * CORS request context instead of looking them up again.
+	 *
+	 * @param request The servlet request to tag. Must not be 
+	 *                {@code null}.
+	 * @param context The CORS request context. Must not be {@code null}.
+	 */
+	public static void tag(final HttpServletRequest request,
+			       final CORSRequestContext context) {
+
+		switch (context.getType()) {
+
+			case ACTUAL:
+				request.setAttribute("cors.isCorsRequest", true);
+				request.setAttribute("cors.origin", context.getOrigin());
+				request.setAttribute("cors.requestType", "actual");
+				break;
+
+			case PREFLIGHT:
+				request.setAttribute("cors.isCorsRequest", true);
+				request.setAttribute("cors.origin", context.getOrigin());
+				request.setAttribute("cors.requestType", "preflight");
+				request.setAttribute("cors.requestHeaders", context.getRequestedHeaders());
+				break;
+
+			case OTHER:
+				request.setAttribute("cors.isCorsRequest", false);
+		}
+	}
+
+
+	/**
+	 * Tags an HTTP request through the specified sink to provide CORS
+	 * information to downstream handlers. Sets the same attributes as
+	 * {@link #tag(HttpServletRequest, CORSRequestType)}, taking the
+	 * header values from the specified CORS request context.
+	 *
+	 * @param sink    The request tag sink. Must not be {@code null}.
+	 * @param context The CORS request context. Must not be {@code null}.
+	 */
+	public static void tag(final CORSRequestTagSink sink,
+			       final CORSRequestContext context) {
+
+		switch (context.getType()) {
+
+			case ACTUAL:
+				sink.setAttribute("cors.isCorsRequest", true);
+				sink.setAttribute("cors.origin", context.getOrigin());
+				sink.setAttribute("cors.requestType", "actual");
+				break;
+
+			case PREFLIGHT:
+				sink.setAttribute("cors.isCorsRequest", true);
+				sink.setAttribute("cors.origin", context.getOrigin());
+				sink.setAttribute("cors.requestType", "preflight");
+				sink.setAttribute("cors.requestHeaders", context.getRequestedHeaders());
+				break;
+
+			case OTHER:
+				sink.setAttribute("cors.isCorsRequest", false);
+		}
+	}
 }
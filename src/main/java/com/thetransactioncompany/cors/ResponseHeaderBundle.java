@@ -0,0 +1,201 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Immutable bundle of CORS response headers, precomputed by
+ * {@link CORSRequestHandler} so that a successful CORS request is answered
+ * with two tight write loops, one for the set and one for the added headers,
+ * without a per-header branch.
+ *
+ * <p>A bundle may have an origin slot: a set header, such as
+ * Access-Control-Allow-Origin, whose value is the request origin, supplied
+ * at write time. A single bundle can thus serve any allowed origin.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class ResponseHeaderBundle {
+
+
+	/**
+	 * The names of the headers which replace any existing header with the
+	 * same name (set).
+	 */
+	private final String[] setNames;
+
+
+	/**
+	 * The values of the set headers.
+	 */
+	private final String[] setValues;
+
+
+	/**
+	 * The names of the headers which are appended to any existing headers
+	 * with the same name (add).
+	 */
+	private final String[] addNames;
+
+
+	/**
+	 * The values of the added headers.
+	 */
+	private final String[] addValues;
+
+
+	/**
+	 * The name of the header set to the request origin, {@code null} if
+	 * the bundle has no origin slot.
+	 */
+	private final String originName;
+
+
+	/**
+	 * Creates a new response header bundle.
+	 *
+	 * @param headers The headers to include. Must not be {@code null}.
+	 */
+	private ResponseHeaderBundle(final Builder headers) {
+
+		setNames = headers.setNames.toArray(new String[headers.setNames.size()]);
+		setValues = headers.setValues.toArray(new String[headers.setValues.size()]);
+		addNames = headers.addNames.toArray(new String[headers.addNames.size()]);
+		addValues = headers.addValues.toArray(new String[headers.addValues.size()]);
+		originName = headers.originName;
+	}
+
+
+	/**
+	 * Writes the headers to the specified HTTP response sink, first the
+	 * origin slot header, if any, then the set headers, then the added
+	 * headers.
+	 *
+	 * @param response The HTTP response sink. Must not be {@code null}.
+	 * @param origin   The request origin value to fill the origin slot
+	 *                 with. Must not be {@code null} if the bundle has
+	 *                 an origin slot.
+	 */
+	void writeTo(final CORSResponseSink response, final String origin) {
+
+		if (originName != null)
+			response.setHeader(originName, origin);
+
+		for (int i = 0; i < setNames.length; i++)
+			response.setHeader(setNames[i], setValues[i]);
+
+		for (int i = 0; i < addNames.length; i++)
+			response.addHeader(addNames[i], addValues[i]);
+	}
+
+
+	/**
+	 * Returns the number of headers in this bundle.
+	 *
+	 * @return The number of headers.
+	 */
+	int size() {
+
+		return (originName != null ? 1 : 0) + setNames.length + addNames.length;
+	}
+
+
+	/**
+	 * Collects the headers for a new response header bundle.
+	 */
+	static final class Builder {
+
+
+		/**
+		 * The set header names.
+		 */
+		private final List<String> setNames = new ArrayList<String>();
+
+
+		/**
+		 * The set header values.
+		 */
+		private final List<String> setValues = new ArrayList<String>();
+
+
+		/**
+		 * The added header names.
+		 */
+		private final List<String> addNames = new ArrayList<String>();
+
+
+		/**
+		 * The added header values.
+		 */
+		private final List<String> addValues = new ArrayList<String>();
+
+
+		/**
+		 * The origin slot header name, {@code null} if none.
+		 */
+		private String originName;
+
+
+		/**
+		 * Sets the origin slot: a header that replaces any existing
+		 * header with the same name and whose value is the request
+		 * origin, supplied at write time.
+		 *
+		 * @param name The header name. Must not be {@code null}.
+		 *
+		 * @return This builder.
+		 */
+		Builder setOrigin(final String name) {
+
+			originName = name;
+			return this;
+		}
+
+
+		/**
+		 * Appends a header that replaces any existing header with the
+		 * same name.
+		 *
+		 * @param name  The header name. Must not be {@code null}.
+		 * @param value The header value. Must not be {@code null}.
+		 *
+		 * @return This builder.
+		 */
+		Builder set(final String name, final String value) {
+
+			setNames.add(name);
+			setValues.add(value);
+			return this;
+		}
+
+
+		/**
+		 * Appends a header that is added to any existing headers with
+		 * the same name.
+		 *
+		 * @param name  The header name. Must not be {@code null}.
+		 * @param value The header value. Must not be {@code null}.
+		 *
+		 * @return This builder.
+		 */
+		Builder add(final String name, final String value) {
+
+			addNames.add(name);
+			addValues.add(value);
+			return this;
+		}
+
+
+		/**
+		 * Builds the response header bundle.
+		 *
+		 * @return The response header bundle.
+		 */
+		ResponseHeaderBundle build() {
+
+			return new ResponseHeaderBundle(this);
+		}
+	}
+}
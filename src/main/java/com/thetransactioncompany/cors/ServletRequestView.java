@@ -0,0 +1,51 @@
+package com.thetransactioncompany.cors;
+
+
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * Adapts an HTTP servlet request to the {@link CORSRequestView} interface.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class ServletRequestView implements CORSRequestView {
+
+
+	/**
+	 * The HTTP servlet request.
+	 */
+	private final HttpServletRequest request;
+
+
+	/**
+	 * Creates a new view of the specified HTTP servlet request.
+	 *
+	 * @param request The HTTP servlet request. Must not be {@code null}.
+	 */
+	ServletRequestView(final HttpServletRequest request) {
+
+		this.request = request;
+	}
+
+
+	@Override
+	public String getMethod() {
+
+		return request.getMethod();
+	}
+
+
+	@Override
+	public String getScheme() {
+
+		return request.getScheme();
+	}
+
+
+	@Override
+	public String getHeader(final String name) {
+
+		return request.getHeader(name);
+	}
+}
@@ -0,0 +1,45 @@
+package com.thetransactioncompany.cors;
+
+
+import javax.servlet.http.HttpServletResponse;
+
+
+/**
+ * Adapts an HTTP servlet response to the {@link CORSResponseSink}
+ * interface.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class ServletResponseSink implements CORSResponseSink {
+
+
+	/**
+	 * The HTTP servlet response.
+	 */
+	private final HttpServletResponse response;
+
+
+	/**
+	 * Creates a new sink for the specified HTTP servlet response.
+	 *
+	 * @param response The HTTP servlet response. Must not be {@code null}.
+	 */
+	ServletResponseSink(final HttpServletResponse response) {
+
+		this.response = response;
+	}
+
+
+	@Override
+	public void setHeader(final String name, final String value) {
+
+		response.setHeader(name, value);
+	}
+
+
+	@Override
+	public void addHeader(final String name, final String value) {
+
+		response.addHeader(name, value);
+	}
+}
@@ -0,0 +1,44 @@
+package com.thetransactioncompany.cors;
+
+
+/**
+ * Seeded 64-bit string hash for the origin sketches ({@link HyperLogLog},
+ * {@link DeniedOriginTracker}). The characters are hashed with FNV-1a,
+ * starting from a seeded offset basis, and the result is mixed with the
+ * MurmurHash3 finaliser, so that all output bits depend on all input
+ * characters. A random seed keeps the hash values unpredictable to
+ * clients crafting colliding origins.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class StringHash {
+
+
+	/**
+	 * Returns the 64-bit hash of the specified string.
+	 *
+	 * @param s    The string. Must not be {@code null}.
+	 * @param seed The hash seed.
+	 *
+	 * @return The hash.
+	 */
+	static long hash(final String s, final long seed) {
+
+		// FNV-1a
+		long h = 0xcbf29ce484222325L ^ seed;
+
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+
+		// Murmur3 finaliser
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93e53b98a63L;
+		h ^= h >>> 33;
+
+		return h;
+	}
+}
@@ -0,0 +1,270 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Matches origins against the subdomains of a set of allowed origins. The
+ * allowed host names are compiled into reversed character tries, one per
+ * distinct scheme and port combination, so that a lookup costs
+ * O(host length) regardless of the number of allowed origins and doesn't
+ * allocate.
+ *
+ * <p>Example: the allowed origin {@code https://example.com} matches
+ * {@code https://foo.example.com} and {@code https://a.b.example.com}, but
+ * not {@code https://example.com} itself, {@code https://myexample.com} or
+ * {@code http://foo.example.com}.
+ *
+ * <p>Instances are immutable and safe for concurrent use.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class SubdomainMatcher {
+
+
+	/**
+	 * Trie node. The children are keyed by host name character, stored in
+	 * ascending order to permit binary search.
+	 */
+	private static final class Node {
+
+
+		/**
+		 * The child keys, in ascending order.
+		 */
+		private char[] keys = new char[0];
+
+
+		/**
+		 * The child nodes, matching the key order.
+		 */
+		private Node[] children = new Node[0];
+
+
+		/**
+		 * {@code true} if an allowed host name ends at this node.
+		 */
+		private boolean terminal = false;
+
+
+		/**
+		 * Returns the child for the specified character.
+		 *
+		 * @param c The character.
+		 *
+		 * @return The child node, {@code null} if none.
+		 */
+		Node get(final char c) {
+
+			int low = 0;
+			int high = keys.length - 1;
+
+			while (low <= high) {
+
+				int mid = (low + high) >>> 1;
+
+				if (keys[mid] < c)
+					low = mid + 1;
+				else if (keys[mid] > c)
+					high = mid - 1;
+				else
+					return children[mid];
+			}
+
+			return null;
+		}
+
+
+		/**
+		 * Returns the child for the specified character, creating it if
+		 * it doesn't exist.
+		 *
+		 * @param c The character.
+		 *
+		 * @return The child node.
+		 */
+		Node getOrCreate(final char c) {
+
+			Node child = get(c);
+
+			if (child != null)
+				return child;
+
+			int pos = 0;
+
+			while (pos < keys.length && keys[pos] < c)
+				pos++;
+
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+
+			System.arraycopy(keys, 0, newKeys, 0, pos);
+			System.arraycopy(children, 0, newChildren, 0, pos);
+
+			child = new Node();
+			newKeys[pos] = c;
+			newChildren[pos] = child;
+
+			System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+			System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+
+			keys = newKeys;
+			children = newChildren;
+
+			return child;
+		}
+	}
+
+
+	/**
+	 * Trie root for a scheme and port combination.
+	 */
+	private static final class Root {
+
+
+		/**
+		 * The scheme, lower case.
+		 */
+		private final String scheme;
+
+
+		/**
+		 * The port, -1 for default port.
+		 */
+		private final int port;
+
+
+		/**
+		 * The trie of the reversed allowed host names.
+		 */
+		private final Node node = new Node();
+
+
+		/**
+		 * Creates a new trie root.
+		 *
+		 * @param scheme The scheme, lower case.
+		 * @param port   The port, -1 for default port.
+		 */
+		Root(final String scheme, final int port) {
+
+			this.scheme = scheme;
+			this.port = port;
+		}
+	}
+
+
+	/**
+	 * The trie roots, one per distinct scheme and port. Their number is
+	 * typically very small (e.g. http and https), so a linear scan is
+	 * faster than hashing.
+	 */
+	private final Root[] roots;
+
+
+	/**
+	 * Creates a new subdomain matcher.
+	 *
+	 * @param allowedOrigins The allowed origins. Must not be {@code null}.
+	 */
+	SubdomainMatcher(final Collection<ValidatedOrigin> allowedOrigins) {
+
+		List<Root> rootList = new ArrayList<Root>();
+
+		for (ValidatedOrigin origin: allowedOrigins) {
+
+			String host = origin.getHost();
+
+			if (host == null)
+				continue;
+
+			Root root = null;
+
+			for (Root r: rootList) {
+
+				if (r.port == origin.getPort() && r.scheme.equals(origin.getScheme())) {
+					root = r;
+					break;
+				}
+			}
+
+			if (root == null) {
+				root = new Root(origin.getScheme(), origin.getPort());
+				rootList.add(root);
+			}
+
+			Node node = root.node;
+
+			for (int i = host.length() - 1; i >= 0; i--)
+				node = node.getOrCreate(host.charAt(i));
+
+			node.terminal = true;
+		}
+
+		roots = rootList.toArray(new Root[rootList.size()]);
+	}
+
+
+	/**
+	 * Checks whether the specified origin is a subdomain origin of one of
+	 * the allowed origins.
+	 *
+	 * @param scheme The origin scheme, lower case. Must not be
+	 *               {@code null}.
+	 * @param host   The origin host, lower case. Must not be {@code null}.
+	 * @param port   The origin port, -1 for default port.
+	 *
+	 * @return {@code true} if the origin is an allowed subdomain origin,
+	 *         else {@code false}.
+	 */
+	boolean matches(final String scheme, final String host, final int port) {
+
+		Node node = null;
+
+		for (Root root: roots) {
+
+			if (root.port == port && root.scheme.equalsIgnoreCase(scheme)) {
+				node = root.node;
+				break;
+			}
+		}
+
+		if (node == null)
+			return false;
+
+		for (int i = host.length() - 1; i > 0; i--) {
+
+			node = node.get(host.charAt(i));
+
+			if (node == null)
+				return false;
+
+			// An allowed host ends here, check for a label boundary
+			if (node.terminal && host.charAt(i - 1) == '.')
+				return true;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Checks whether the specified origin is a subdomain origin of one of
+	 * the allowed origins.
+	 *
+	 * @param origin The validated origin. Must not be {@code null}.
+	 *
+	 * @return {@code true} if the origin is an allowed subdomain origin,
+	 *         else {@code false}.
+	 */
+	boolean matches(final ValidatedOrigin origin) {
+
+		if (origin.getScheme() == null || origin.getHost() == null)
+			return false;
+
+		return matches(origin.getScheme(), origin.getHost(), origin.getPort());
+	}
+}
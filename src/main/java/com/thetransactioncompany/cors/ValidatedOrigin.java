@@ -10,12 +10,32 @@ import java.net.IDN;
  * Validated resource request origin, as defined in The Web Origin Concept 
  * (RFC 6454). Supported schemes are {@code http} and {@code https}.
  *
+ * <p>Origins of the common {@code scheme://host[:port]} form with a plain
+ * ASCII host name are parsed directly. All other origins, such as those
+ * with an internationalised or IP address host, are parsed as a URI and
+ * have the IDNA toASCII algorithm applied to their host.
+ *
  * @author Vladimir Dzhuvinov
  * @author Luis Sala
  * @author Jared Ottley
  * @author Edraí Brosa
  */
 public class ValidatedOrigin extends Origin {
+
+
+	/**
+	 * The maximum length of a host name label.
+	 */
+	private static final int MAX_LABEL_LENGTH = 63;
+
+
+	/**
+	 * Memo of recently validated origins, keyed by origin value. Holds
+	 * the {@link ValidatedOrigin} of a valid value and the
+	 * {@link OriginException} of an invalid one.
+	 */
+	private static final BoundedCache<String,Object> MEMO =
+		new BoundedCache<String,Object>(1024);
 	
 	
 	/**
@@ -49,7 +69,171 @@ public class ValidatedOrigin extends Origin {
 		throws OriginException {
 	
 		super(value);
-		
+
+		if (! parseASCII(value))
+			parseURI(value);
+	}
+
+
+	/**
+	 * Returns a validated origin for the specified URI string. Recently
+	 * validated origins are memoised, so that the parsing cost is paid 
+	 * once per distinct origin value. Invalid values are memoised too, 
+	 * and rethrow the exception of their first parse.
+	 *
+	 * @param value The URI string for the origin. Must not be 
+	 *              {@code null}.
+	 *
+	 * @return The validated origin.
+	 *
+	 * @throws OriginException If the value doesn't represent a valid and
+	 *                         supported origin string.
+	 */
+	static ValidatedOrigin parse(final String value)
+		throws OriginException {
+
+		final Object memo = MEMO.get(value);
+
+		if (memo instanceof ValidatedOrigin)
+			return (ValidatedOrigin)memo;
+
+		if (memo != null)
+			throw (OriginException)memo;
+
+		final ValidatedOrigin origin;
+
+		try {
+			origin = new ValidatedOrigin(value);
+
+		} catch (OriginException e) {
+
+			// Scanners tend to repeat the same junk origins
+			MEMO.put(value, e);
+			throw e;
+		}
+
+		MEMO.put(value, origin);
+
+		return origin;
+	}
+
+
+	/**
+	 * Parses an origin of the {@code scheme://host[:port]} form with a
+	 * plain ASCII host name, without the URI and IDNA machinery. The
+	 * result is the same as that of {@link #parseURI}.
+	 *
+	 * @param value The URI string for the origin. Must not be 
+	 *              {@code null}.
+	 *
+	 * @return {@code true} if the origin was parsed, {@code false} if it
+	 *         isn't of the simple form and must be parsed as a URI.
+	 */
+	private boolean parseASCII(final String value) {
+
+		final int len = value.length();
+
+		// Scheme: ALPHA *( ALPHA / DIGIT )
+		int i = 0;
+
+		while (i < len && isASCIILetterOrDigit(value.charAt(i)))
+			i++;
+
+		if (i == 0 || ! isASCIILetter(value.charAt(0)))
+			return false;
+
+		final int schemeEnd = i;
+
+		if (! value.startsWith("://", i))
+			return false;
+
+		// Host name: labels of ALPHA / DIGIT / "-", which must not begin
+		// or end with a dash; the last label must begin with a letter
+		final int hostBegin = i + 3;
+
+		boolean lowerCase = true;
+
+		int labelBegin;
+
+		i = hostBegin;
+
+		while (true) {
+
+			labelBegin = i;
+
+			char c;
+
+			while (i < len && (isASCIILetterOrDigit(c = value.charAt(i)) || c == '-')) {
+
+				if (c >= 'A' && c <= 'Z')
+					lowerCase = false;
+
+				i++;
+			}
+
+			final int labelLen = i - labelBegin;
+
+			if (labelLen == 0 || labelLen > MAX_LABEL_LENGTH)
+				return false;
+
+			if (value.charAt(labelBegin) == '-' || value.charAt(i - 1) == '-')
+				return false;
+
+			if (i < len && value.charAt(i) == '.')
+				i++; // next label
+			else
+				break;
+		}
+
+		if (! isASCIILetter(value.charAt(labelBegin)))
+			return false; // IP address or bad top label
+
+		final int hostEnd = i;
+
+		// Optional port: ":" 1*9DIGIT
+		int parsedPort = -1;
+
+		if (hostEnd < len) {
+
+			final int digits = len - hostEnd - 1;
+
+			if (value.charAt(hostEnd) != ':' || digits < 1 || digits > 9)
+				return false;
+
+			parsedPort = 0;
+
+			for (i = hostEnd + 1; i < len; i++) {
+
+				final char c = value.charAt(i);
+
+				if (c < '0' || c > '9')
+					return false;
+
+				parsedPort = parsedPort * 10 + (c - '0');
+			}
+		}
+
+		String parsedScheme = value.substring(0, schemeEnd);
+		String parsedHost = value.substring(hostBegin, hostEnd);
+
+		scheme = parsedScheme.toLowerCase();
+		host = lowerCase ? parsedHost : parsedHost.toLowerCase();
+		port = parsedPort;
+		return true;
+	}
+
+
+	/**
+	 * Parses the specified origin as a URI.
+	 *
+	 * @param value The URI string for the origin. Must not be 
+	 *              {@code null}.
+	 *
+	 * @throws OriginException If the value doesn't represent a valid and
+	 *                         supported origin string.
+	 */
+	private void parseURI(final String value)
+		throws OriginException {
 		
 		// Parse URI value
 	
@@ -79,6 +263,45 @@ public class ValidatedOrigin extends Origin {
 		// Finally, convert to lower case
 		host = host.toLowerCase();
 	}
+
+
+	/**
+	 * Checks whether the specified character is an ASCII letter.
+	 *
+	 * @param c The character.
+	 *
+	 * @return {@code true} if an ASCII letter, else {@code false}.
+	 */
+	private static boolean isASCIILetter(final char c) {
+
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+
+	/**
+	 * Checks whether the specified character is an ASCII letter or digit.
+	 *
+	 * @param c The character.
+	 *
+	 * @return {@code true} if an ASCII letter or digit, else
+	 *         {@code false}.
+	 */
+	private static boolean isASCIILetterOrDigit(final char c) {
+
+		return isASCIILetter(c) || (c >= '0' && c <= '9');
+	}
+
+
+	/**
+	 * Returns this origin, which is already validated.
+	 *
+	 * @return This validated origin.
+	 */
+	@Override
+	public ValidatedOrigin validate() {
+
+		return this;
+	}
 	
 	
 	/**
@@ -0,0 +1,459 @@
+package com.thetransactioncompany.cors.demo;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.thetransactioncompany.cors.CORSFilter;
+import com.thetransactioncompany.cors.CORSMetrics;
+
+
+/**
+ * Servlet which renders the metrics of the CORS filters in the web
+ * application in the Prometheus text exposition format. Map it to a path
+ * such as {@code /metrics/cors} for scraping.
+ *
+ * <p>The metrics of each filter, as published under the servlet context
+ * attribute {@link CORSFilter#METRICS_ATTRIBUTE_PREFIX} + filter name, are
+ * labelled with {@code filter="[filter-name]"}:
+ *
+ * <ul>
+ *     <li>{@code cors_requests_total} with a {@code type} label of
+ *         {@code actual}, {@code preflight}, {@code other} or
+ *         {@code bypassed}.
+ *     <li>{@code cors_denials_total} with a {@code cause} label of
+ *         {@code origin}, {@code method}, {@code header}, {@code invalid}
+ *         or {@code generic}.
+ *     <li>{@code cors_check_duration_seconds} histogram of the time spent
+ *         in the CORS request checks.
+ * </ul>
+ *
+ * <p>Each scrape encodes its output into its own buffer, without locking,
+ * and writes the buffer to the response in one go, with a Content-Length.
+ * A slow client therefore doesn't hold up concurrent scrapes.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSMetricsServlet extends HttpServlet {
+
+
+	/**
+	 * The content type of the Prometheus text exposition format.
+	 */
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+
+	/**
+	 * The character set of the output.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The initial size of the output buffer.
+	 */
+	private static final int BUFFER_SIZE = 4096;
+
+
+	private static final byte[] REQUESTS_HEADER = encode(
+		"# HELP cors_requests_total CORS filter requests by type.\n" +
+		"# TYPE cors_requests_total counter\n");
+
+	private static final byte[] REQUESTS = encode("cors_requests_total{filter=\"");
+
+	private static final byte[] DENIALS_HEADER = encode(
+		"# HELP cors_denials_total CORS filter denied requests by cause.\n" +
+		"# TYPE cors_denials_total counter\n");
+
+	private static final byte[] DENIALS = encode("cors_denials_total{filter=\"");
+
+	private static final byte[] DURATION_HEADER = encode(
+		"# HELP cors_check_duration_seconds Time spent in the CORS request checks.\n" +
+		"# TYPE cors_check_duration_seconds histogram\n");
+
+	private static final byte[] DURATION_BUCKET = encode("cors_check_duration_seconds_bucket{filter=\"");
+
+	private static final byte[] DURATION_SUM = encode("cors_check_duration_seconds_sum{filter=\"");
+
+	private static final byte[] DURATION_COUNT = encode("cors_check_duration_seconds_count{filter=\"");
+
+	private static final byte[] TYPE_ACTUAL = encode("\",type=\"actual\"} ");
+	private static final byte[] TYPE_PREFLIGHT = encode("\",type=\"preflight\"} ");
+	private static final byte[] TYPE_OTHER = encode("\",type=\"other\"} ");
+	private static final byte[] TYPE_BYPASSED = encode("\",type=\"bypassed\"} ");
+
+	private static final byte[] CAUSE_ORIGIN = encode("\",cause=\"origin\"} ");
+	private static final byte[] CAUSE_METHOD = encode("\",cause=\"method\"} ");
+	private static final byte[] CAUSE_HEADER = encode("\",cause=\"header\"} ");
+	private static final byte[] CAUSE_INVALID = encode("\",cause=\"invalid\"} ");
+	private static final byte[] CAUSE_GENERIC = encode("\",cause=\"generic\"} ");
+
+	private static final byte[] LABELS_END = encode("\"} ");
+
+
+	/**
+	 * The {@code le} label of each latency bucket, closing the label set.
+	 */
+	private static final byte[][] BUCKET_LABELS = new byte[CORSMetrics.LATENCY_BUCKETS][];
+
+
+	static {
+		for (int i = 0; i < CORSMetrics.LATENCY_BUCKETS - 1; i++)
+			BUCKET_LABELS[i] = encode("\",le=\"" + formatSeconds(CORSMetrics.getLatencyBucketBound(i)) + "\"} ");
+
+		BUCKET_LABELS[CORSMetrics.LATENCY_BUCKETS - 1] = encode("\",le=\"+Inf\"} ");
+	}
+
+
+	/**
+	 * Writer of the exposition format into a growable buffer, one per
+	 * scrape.
+	 */
+	private static final class ExpositionWriter {
+
+
+		/**
+		 * The buffer.
+		 */
+		private byte[] buf = new byte[BUFFER_SIZE];
+
+
+		/**
+		 * The number of bytes in the buffer.
+		 */
+		private int count = 0;
+
+
+		/**
+		 * Returns the number of written bytes.
+		 *
+		 * @return The number of written bytes.
+		 */
+		int size() {
+
+			return count;
+		}
+
+
+		/**
+		 * Writes the buffered bytes to the specified output stream.
+		 *
+		 * @param out The output stream.
+		 *
+		 * @throws IOException On a I/O exception.
+		 */
+		void writeTo(final OutputStream out)
+			throws IOException {
+
+			out.write(buf, 0, count);
+		}
+
+
+		/**
+		 * Ensures the buffer has room for the specified number of
+		 * additional bytes.
+		 *
+		 * @param n The number of additional bytes.
+		 */
+		private void ensureCapacity(final int n) {
+
+			if (count + n <= buf.length)
+				return;
+
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+		}
+
+
+		/**
+		 * Writes the specified bytes.
+		 *
+		 * @param bytes The bytes.
+		 */
+		void write(final byte[] bytes) {
+
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buf, count, bytes.length);
+			count += bytes.length;
+		}
+
+
+		/**
+		 * Writes the specified US-ASCII character.
+		 *
+		 * @param c The character.
+		 */
+		void write(final char c) {
+
+			ensureCapacity(1);
+			buf[count++] = (byte)c;
+		}
+
+
+		/**
+		 * Writes the specified non-negative number in decimal,
+		 * padded with leading zeros to the specified number of
+		 * digits.
+		 *
+		 * @param value  The number.
+		 * @param digits The minimum number of digits.
+		 */
+		private void writeDigits(final long value, final int digits) {
+
+			int n = 1;
+
+			for (long v = value / 10; v > 0; v /= 10)
+				n++;
+
+			if (n < digits)
+				n = digits;
+
+			ensureCapacity(n);
+
+			long v = value;
+
+			for (int i = count + n - 1; i >= count; i--) {
+				buf[i] = (byte)('0' + v % 10);
+				v /= 10;
+			}
+
+			count += n;
+		}
+
+
+		/**
+		 * Writes the specified number in decimal.
+		 *
+		 * @param value The number.
+		 */
+		void writeLong(final long value) {
+
+			if (value < 0) {
+				// Counters are never negative, except on overflow
+				write('-');
+				writeDigits(value == Long.MIN_VALUE ? Long.MAX_VALUE : -value, 1);
+				return;
+			}
+
+			writeDigits(value, 1);
+		}
+
+
+		/**
+		 * Writes the specified duration in seconds, with up to nine
+		 * decimal places.
+		 *
+		 * @param nanos The duration in nanoseconds.
+		 */
+		void writeSeconds(final long nanos) {
+
+			if (nanos < 0) {
+				write('-');
+				writeSeconds(nanos == Long.MIN_VALUE ? Long.MAX_VALUE : -nanos);
+				return;
+			}
+
+			writeDigits(nanos / 1000000000L, 1);
+
+			long fraction = nanos % 1000000000L;
+
+			if (fraction == 0)
+				return;
+
+			int digits = 9;
+
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				digits--;
+			}
+
+			write('.');
+			writeDigits(fraction, digits);
+		}
+	}
+
+
+	/**
+	 * Encodes the specified string.
+	 *
+	 * @param s The string.
+	 *
+	 * @return The UTF-8 bytes.
+	 */
+	private static byte[] encode(final String s) {
+
+		return s.getBytes(UTF_8);
+	}
+
+
+	/**
+	 * Formats the specified duration in seconds, with up to nine decimal
+	 * places.
+	 *
+	 * @param nanos The non-negative duration in nanoseconds.
+	 *
+	 * @return The formatted duration.
+	 */
+	private static String formatSeconds(final long nanos) {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(nanos / 1000000000L);
+
+		long fraction = nanos % 1000000000L;
+
+		if (fraction > 0) {
+
+			String digits = Long.toString(1000000000L + fraction).substring(1);
+
+			int end = digits.length();
+
+			while (digits.charAt(end - 1) == '0')
+				end--;
+
+			sb.append('.').append(digits, 0, end);
+		}
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Escapes the specified label value.
+	 *
+	 * @param value The label value.
+	 *
+	 * @return The escaped label value, UTF-8 encoded.
+	 */
+	private static byte[] encodeLabelValue(final String value) {
+
+		StringBuilder sb = new StringBuilder(value.length());
+
+		for (int i = 0; i < value.length(); i++) {
+
+			char c = value.charAt(i);
+
+			if (c == '\\')
+				sb.append("\\\\");
+			else if (c == '"')
+				sb.append("\\\"");
+			else if (c == '\n')
+				sb.append("\\n");
+			else
+				sb.append(c);
+		}
+
+		return encode(sb.toString());
+	}
+
+
+	/**
+	 * Writes a single sample.
+	 *
+	 * @param writer The exposition writer.
+	 * @param name   The metric name and the opening of the filter label.
+	 * @param filter The encoded filter label value.
+	 * @param labels The closing of the label set.
+	 * @param value  The sample value.
+	 */
+	private static void writeSample(final ExpositionWriter writer, final byte[] name, final byte[] filter, final byte[] labels, final long value) {
+
+		writer.write(name);
+		writer.write(filter);
+		writer.write(labels);
+		writer.writeLong(value);
+		writer.write('\n');
+	}
+
+
+	@Override
+	public void doGet(final HttpServletRequest request, final HttpServletResponse response)
+		throws IOException, ServletException {
+
+		// Collect the published filter metrics
+		List<byte[]> filters = new ArrayList<byte[]>();
+		List<CORSMetrics.Snapshot> snapshots = new ArrayList<CORSMetrics.Snapshot>();
+
+		ServletContext context = getServletContext();
+
+		Enumeration<?> names = context.getAttributeNames();
+
+		while (names.hasMoreElements()) {
+
+			String name = (String)names.nextElement();
+
+			if (! name.startsWith(CORSFilter.METRICS_ATTRIBUTE_PREFIX))
+				continue;
+
+			Object metrics = context.getAttribute(name);
+
+			if (metrics instanceof CORSMetrics) {
+				filters.add(encodeLabelValue(name.substring(CORSFilter.METRICS_ATTRIBUTE_PREFIX.length())));
+				snapshots.add(((CORSMetrics)metrics).snapshot());
+			}
+		}
+
+		ExpositionWriter writer = new ExpositionWriter();
+
+		writer.write(REQUESTS_HEADER);
+
+		for (int i = 0; i < filters.size(); i++) {
+
+			CORSMetrics.Snapshot s = snapshots.get(i);
+			writeSample(writer, REQUESTS, filters.get(i), TYPE_ACTUAL, s.getActualRequests());
+			writeSample(writer, REQUESTS, filters.get(i), TYPE_PREFLIGHT, s.getPreflightRequests());
+			writeSample(writer, REQUESTS, filters.get(i), TYPE_OTHER, s.getOtherRequests());
+			writeSample(writer, REQUESTS, filters.get(i), TYPE_BYPASSED, s.getBypassedRequests());
+		}
+
+		writer.write(DENIALS_HEADER);
+
+		for (int i = 0; i < filters.size(); i++) {
+
+			CORSMetrics.Snapshot s = snapshots.get(i);
+			writeSample(writer, DENIALS, filters.get(i), CAUSE_ORIGIN, s.getOriginDenials());
+			writeSample(writer, DENIALS, filters.get(i), CAUSE_METHOD, s.getMethodDenials());
+			writeSample(writer, DENIALS, filters.get(i), CAUSE_HEADER, s.getHeaderDenials());
+			writeSample(writer, DENIALS, filters.get(i), CAUSE_INVALID, s.getInvalidRequests());
+			writeSample(writer, DENIALS, filters.get(i), CAUSE_GENERIC, s.getGenericDenials());
+		}
+
+		writer.write(DURATION_HEADER);
+
+		for (int i = 0; i < filters.size(); i++) {
+
+			CORSMetrics.Snapshot s = snapshots.get(i);
+
+			// Prometheus buckets are cumulative
+			long cumulative = 0;
+
+			for (int b = 0; b < CORSMetrics.LATENCY_BUCKETS; b++) {
+				cumulative += s.getLatencyBucketCount(b);
+				writeSample(writer, DURATION_BUCKET, filters.get(i), BUCKET_LABELS[b], cumulative);
+			}
+
+			writer.write(DURATION_SUM);
+			writer.write(filters.get(i));
+			writer.write(LABELS_END);
+			writer.writeSeconds(s.getLatencySum());
+			writer.write('\n');
+
+			writeSample(writer, DURATION_COUNT, filters.get(i), LABELS_END, cumulative);
+		}
+
+		response.setContentType(CONTENT_TYPE);
+		response.setContentLength(writer.size());
+
+		writer.writeTo(response.getOutputStream());
+	}
+}
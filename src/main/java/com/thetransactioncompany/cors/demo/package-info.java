@@ -1,4 +1,5 @@
 /**
- * Demo servlet for testing the CORS filter.
+ * Demo servlet for testing the CORS filter, and a servlet for scraping the
+ * CORS filter metrics in Prometheus format.
  */
 package com.thetransactioncompany.cors.demo;
\ No newline at end of file
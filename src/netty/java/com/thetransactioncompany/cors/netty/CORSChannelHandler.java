@@ -0,0 +1,468 @@
+package com.thetransactioncompany.cors.netty;
+
+
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+
+import com.thetransactioncompany.cors.CORSConfiguration;
+import com.thetransactioncompany.cors.CORSOriginDeniedException;
+import com.thetransactioncompany.cors.CORSRequestContext;
+import com.thetransactioncompany.cors.CORSRequestHandler;
+import com.thetransactioncompany.cors.CORSRequestType;
+import com.thetransactioncompany.cors.InvalidCORSRequestException;
+import com.thetransactioncompany.cors.UnsupportedHTTPHeaderException;
+import com.thetransactioncompany.cors.UnsupportedHTTPMethodException;
+
+
+/**
+ * Netty channel handler which applies a CORS policy to HTTP requests. Place
+ * it in the pipeline after the {@code HttpServerCodec} (and the
+ * {@code HttpObjectAggregator}, if any) and before the application
+ * handlers.
+ *
+ * <ul>
+ *     <li>Preflight requests are answered directly from the event loop with
+ *         a {@code FullHttpResponse}, and are not passed on. The response
+ *         headers are copied from a header set pre-built by the
+ *         {@link CORSChannelPolicy}.
+ *     <li>Allowed actual requests are passed on, and the CORS response
+ *         headers are added to their response on its way out.
+ *     <li>Denied requests are answered with the same status codes and
+ *         messages as the {@link com.thetransactioncompany.cors.CORSFilter},
+ *         and are not passed on.
+ *     <li>Non-CORS requests are passed on unless generic HTTP requests
+ *         are disallowed by the policy.
+ * </ul>
+ *
+ * <p>A channel handler instance keeps per-connection state and must not be
+ * shared between channels. The {@link CORSChannelPolicy} should be shared,
+ * so that the pre-built preflight headers are reused across channels.
+ *
+ * <p>HTTP/1.1 pipelining is supported: a request answered directly while
+ * earlier requests on the connection are still in flight has its response
+ * queued, and written once the responses to the earlier requests are
+ * complete. The application is expected to respond in request order.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSChannelHandler extends ChannelDuplexHandler {
+
+
+	/**
+	 * UTF-8 is the character set of the error messages.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+	/**
+	 * The prefix of the error messages.
+	 */
+	private static final String MESSAGE_PREFIX = "Cross-Origin Resource Sharing (CORS) Filter: ";
+
+
+	/**
+	 * The content type of the error messages.
+	 */
+	private static final String MESSAGE_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+
+	/**
+	 * Marks a request whose response doesn't receive CORS headers.
+	 */
+	private static final PendingHeaders NO_HEADERS = new PendingHeaders();
+
+
+	/**
+	 * A response to a request answered directly, queued behind the
+	 * responses to earlier requests.
+	 */
+	private static final class QueuedResponse {
+
+
+		/**
+		 * The HTTP response.
+		 */
+		private final FullHttpResponse response;
+
+
+		/**
+		 * {@code true} if the connection is kept alive after the
+		 * response.
+		 */
+		private final boolean keepAlive;
+
+
+		/**
+		 * Creates a new queued response.
+		 *
+		 * @param response  The HTTP response.
+		 * @param keepAlive {@code true} if the connection is kept
+		 *                  alive after the response.
+		 */
+		QueuedResponse(final FullHttpResponse response, final boolean keepAlive) {
+
+			this.response = response;
+			this.keepAlive = keepAlive;
+		}
+	}
+
+
+	/**
+	 * The CORS policy.
+	 */
+	private final CORSChannelPolicy policy;
+
+
+	/**
+	 * The CORS request handler.
+	 */
+	private final CORSRequestHandler handler;
+
+
+	/**
+	 * The requests in flight, in request order: the
+	 * {@link PendingHeaders} of the requests passed on and the
+	 * {@link QueuedResponse}s of the requests answered directly. The head
+	 * is the request currently being responded to.
+	 */
+	private final Queue<Object> pending = new ArrayDeque<Object>();
+
+
+	/**
+	 * {@code true} while an interim response, such as 100 Continue, is
+	 * being written.
+	 */
+	private boolean interim = false;
+
+
+	/**
+	 * The scheme of the channel, {@code null} if not determined yet.
+	 */
+	private String scheme = null;
+
+
+	/**
+	 * {@code true} if the content of a request answered directly is being
+	 * discarded.
+	 */
+	private boolean discarding = false;
+
+
+	/**
+	 * Creates a new CORS channel handler.
+	 *
+	 * @param policy The CORS channel policy, typically shared by all
+	 *               channels. Must not be {@code null}.
+	 */
+	public CORSChannelHandler(final CORSChannelPolicy policy) {
+
+		if (policy == null)
+			throw new IllegalArgumentException("The CORS channel policy must not be null");
+
+		this.policy = policy;
+		handler = policy.getHandler();
+	}
+
+
+	/**
+	 * Creates a new CORS channel handler with its own policy.
+	 *
+	 * @param handler The CORS request handler. Must not be {@code null}.
+	 */
+	public CORSChannelHandler(final CORSRequestHandler handler) {
+
+		this(new CORSChannelPolicy(handler));
+	}
+
+
+	/**
+	 * Creates a new CORS channel handler with its own policy.
+	 *
+	 * @param config The CORS configuration. Must not be {@code null}.
+	 */
+	public CORSChannelHandler(final CORSConfiguration config) {
+
+		this(new CORSRequestHandler(config));
+	}
+
+
+	/**
+	 * Gets the CORS channel policy.
+	 *
+	 * @return The CORS channel policy.
+	 */
+	public CORSChannelPolicy getPolicy() {
+
+		return policy;
+	}
+
+
+	/**
+	 * Gets the CORS request handler.
+	 *
+	 * @return The CORS request handler.
+	 */
+	public CORSRequestHandler getHandler() {
+
+		return handler;
+	}
+
+
+	@Override
+	public void channelRead(final ChannelHandlerContext ctx, final Object msg)
+		throws Exception {
+
+		if (msg instanceof HttpRequest) {
+
+			handleRequest(ctx, (HttpRequest)msg);
+
+		} else if (discarding && msg instanceof HttpContent) {
+
+			if (msg instanceof LastHttpContent)
+				discarding = false;
+
+			ReferenceCountUtil.release(msg);
+
+		} else {
+
+			ctx.fireChannelRead(msg);
+		}
+	}
+
+
+	/**
+	 * Applies the CORS policy to the specified HTTP request.
+	 *
+	 * @param ctx     The channel handler context.
+	 * @param request The HTTP request.
+	 */
+	private void handleRequest(final ChannelHandlerContext ctx, final HttpRequest request) {
+
+		if (scheme == null)
+			scheme = ctx.pipeline().get(SslHandler.class) != null ? "https" : "http";
+
+		final CORSConfiguration config = handler.getConfiguration();
+
+		final CORSRequestContext context = CORSRequestContext.create(new NettyRequestView(request, scheme));
+
+		final CORSRequestType type = context.getType();
+
+		try {
+			if (type == CORSRequestType.ACTUAL) {
+
+				// Simple / actual CORS request, record the headers
+				// for the response
+				PendingHeaders headers = new PendingHeaders();
+				handler.handleActualRequest(context, headers);
+				pending.add(headers);
+				ctx.fireChannelRead(request);
+
+			} else if (type == CORSRequestType.PREFLIGHT) {
+
+				// Preflight CORS request, answer from the event loop
+				// with the pre-built headers
+				HttpHeaders headers = policy.getPreflightHeaders(context);
+				FullHttpResponse response = new DefaultFullHttpResponse(
+					request.protocolVersion(), HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+				response.headers().set(headers);
+				respond(ctx, request, response);
+
+			} else if (config.allowGenericHttpRequests) {
+
+				// Not a CORS request, but allow it through
+				pending.add(NO_HEADERS);
+				ctx.fireChannelRead(request);
+
+			} else {
+
+				// Generic HTTP requests denied
+				reject(ctx, request, config, HttpResponseStatus.FORBIDDEN, "Generic HTTP requests not allowed", null);
+			}
+
+		} catch (InvalidCORSRequestException e) {
+
+			reject(ctx, request, config, HttpResponseStatus.BAD_REQUEST, e.getMessage(), null);
+
+		} catch (CORSOriginDeniedException e) {
+
+			reject(ctx, request, config, HttpResponseStatus.FORBIDDEN, e.getMessage(), String.valueOf(e.getRequestOrigin()));
+
+		} catch (UnsupportedHTTPMethodException e) {
+
+			reject(ctx, request, config, HttpResponseStatus.METHOD_NOT_ALLOWED, e.getMessage(), e.getRequestedMethod());
+
+		} catch (UnsupportedHTTPHeaderException e) {
+
+			reject(ctx, request, config, HttpResponseStatus.FORBIDDEN, e.getMessage(), e.getRequestHeader());
+		}
+	}
+
+
+	/**
+	 * Answers the specified HTTP request with an error message.
+	 *
+	 * @param ctx     The channel handler context.
+	 * @param request The HTTP request.
+	 * @param config  The CORS configuration.
+	 * @param status  The HTTP status.
+	 * @param msg     The error message.
+	 * @param detail  Optional detail to append to the error message,
+	 *                {@code null} if none.
+	 */
+	private void reject(final ChannelHandlerContext ctx,
+			    final HttpRequest request,
+			    final CORSConfiguration config,
+			    final HttpResponseStatus status,
+			    final String msg,
+			    final String detail) {
+
+		final ByteBuf content;
+
+		if (config.omitErrorMessages) {
+
+			content = Unpooled.EMPTY_BUFFER;
+
+		} else {
+
+			String text = MESSAGE_PREFIX + msg;
+
+			if (detail != null)
+				text += ": " + detail;
+
+			content = Unpooled.wrappedBuffer((text + "\n").getBytes(UTF_8));
+		}
+
+		FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status, content);
+
+		if (content.isReadable())
+			response.headers().set(HttpHeaderNames.CONTENT_TYPE, MESSAGE_CONTENT_TYPE);
+
+		respond(ctx, request, response);
+	}
+
+
+	/**
+	 * Answers the specified HTTP request directly, without passing it on,
+	 * and discards the request content that follows, if any. The response
+	 * is queued if earlier requests are still in flight.
+	 *
+	 * @param ctx      The channel handler context.
+	 * @param request  The HTTP request.
+	 * @param response The HTTP response.
+	 */
+	private void respond(final ChannelHandlerContext ctx,
+			     final HttpRequest request,
+			     final FullHttpResponse response) {
+
+		final boolean keepAlive = HttpUtil.isKeepAlive(request);
+
+		HttpUtil.setContentLength(response, response.content().readableBytes());
+		HttpUtil.setKeepAlive(response, keepAlive);
+
+		discarding = ! (request instanceof LastHttpContent);
+
+		ReferenceCountUtil.release(request);
+
+		if (pending.isEmpty())
+			send(ctx, response, keepAlive);
+		else
+			pending.add(new QueuedResponse(response, keepAlive)); // pipelined
+	}
+
+
+	/**
+	 * Writes and flushes the specified response to a request answered
+	 * directly.
+	 *
+	 * @param ctx       The channel handler context.
+	 * @param response  The HTTP response.
+	 * @param keepAlive {@code true} to keep the connection alive after
+	 *                  the response, {@code false} to close it.
+	 */
+	private static void send(final ChannelHandlerContext ctx,
+				 final FullHttpResponse response,
+				 final boolean keepAlive) {
+
+		ChannelFuture future = ctx.writeAndFlush(response);
+
+		if (! keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+	}
+
+
+	@Override
+	public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+		throws Exception {
+
+		if (msg instanceof HttpResponse) {
+
+			HttpResponse response = (HttpResponse)msg;
+
+			int code = response.status().code();
+
+			// Skip interim responses, such as 100 Continue
+			interim = code < 200 && code != 101;
+
+			if (! interim) {
+
+				Object head = pending.peek();
+
+				if (head instanceof PendingHeaders && head != NO_HEADERS)
+					((PendingHeaders)head).replay(new NettyResponseSink(response.headers()));
+			}
+		}
+
+		final boolean complete = msg instanceof LastHttpContent && ! interim;
+
+		if (msg instanceof LastHttpContent)
+			interim = false;
+
+		ctx.write(msg, promise);
+
+		if (complete && pending.poll() != null) {
+
+			// Send the queued responses which are now next in order
+			while (pending.peek() instanceof QueuedResponse) {
+
+				QueuedResponse queued = (QueuedResponse)pending.poll();
+				send(ctx, queued.response, queued.keepAlive);
+			}
+		}
+	}
+
+
+	@Override
+	public void handlerRemoved(final ChannelHandlerContext ctx)
+		throws Exception {
+
+		// Release the responses which were never sent
+		for (Object o: pending) {
+
+			if (o instanceof QueuedResponse)
+				ReferenceCountUtil.release(((QueuedResponse)o).response);
+		}
+
+		pending.clear();
+	}
+}
@@ -0,0 +1,152 @@
+package com.thetransactioncompany.cors.netty;
+
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import com.thetransactioncompany.cors.BoundedCache;
+import com.thetransactioncompany.cors.CORSConfiguration;
+import com.thetransactioncompany.cors.CORSOriginDeniedException;
+import com.thetransactioncompany.cors.CORSRequestContext;
+import com.thetransactioncompany.cors.CORSRequestHandler;
+import com.thetransactioncompany.cors.InvalidCORSRequestException;
+import com.thetransactioncompany.cors.UnsupportedHTTPHeaderException;
+import com.thetransactioncompany.cors.UnsupportedHTTPMethodException;
+
+
+/**
+ * A CORS policy shared by the {@link CORSChannelHandler}s of many channels.
+ * Holds the {@link CORSRequestHandler} and the pre-built header sets of the
+ * accepted preflight responses, so that a repeated preflight request is
+ * answered by copying a ready header set.
+ *
+ * <p>The header sets are built once per distinct origin, requested method
+ * and requested headers, and are never modified after that. They are kept
+ * in a {@link BoundedCache} with the capacity of
+ * {@link CORSConfiguration#preflightCacheSize}, or
+ * {@link #DEFAULT_PREFLIGHT_CACHE_SIZE} if not set. Thread-safe.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public final class CORSChannelPolicy {
+
+
+	/**
+	 * The default capacity of the preflight header cache.
+	 */
+	public static final int DEFAULT_PREFLIGHT_CACHE_SIZE = 256;
+
+
+	/**
+	 * The CORS request handler.
+	 */
+	private final CORSRequestHandler handler;
+
+
+	/**
+	 * The pre-built headers of the accepted preflight responses, keyed by
+	 * origin, requested method and requested headers.
+	 */
+	private final BoundedCache<String,HttpHeaders> preflightHeaders;
+
+
+	/**
+	 * Creates a new CORS channel policy.
+	 *
+	 * @param handler The CORS request handler. Must not be {@code null}.
+	 */
+	public CORSChannelPolicy(final CORSRequestHandler handler) {
+
+		if (handler == null)
+			throw new IllegalArgumentException("The CORS request handler must not be null");
+
+		this.handler = handler;
+
+		int size = handler.getConfiguration().preflightCacheSize;
+
+		preflightHeaders = new BoundedCache<String,HttpHeaders>(size > 0 ? size : DEFAULT_PREFLIGHT_CACHE_SIZE);
+	}
+
+
+	/**
+	 * Creates a new CORS channel policy.
+	 *
+	 * @param config The CORS configuration. Must not be {@code null}.
+	 */
+	public CORSChannelPolicy(final CORSConfiguration config) {
+
+		this(new CORSRequestHandler(config));
+	}
+
+
+	/**
+	 * Gets the CORS request handler.
+	 *
+	 * @return The CORS request handler.
+	 */
+	public CORSRequestHandler getHandler() {
+
+		return handler;
+	}
+
+
+	/**
+	 * Gets the cache of the pre-built preflight response headers, which
+	 * also provides the hit, miss and eviction counters.
+	 *
+	 * @return The preflight header cache.
+	 */
+	public BoundedCache<?,?> getPreflightHeaderCache() {
+
+		return preflightHeaders;
+	}
+
+
+	/**
+	 * Returns the pre-built headers of the response to the specified
+	 * preflight request, building them on the first request. The
+	 * returned headers must not be modified.
+	 *
+	 * @param context The CORS request context of the preflight request.
+	 *
+	 * @return The response headers, including a zero Content-Length.
+	 *
+	 * @throws InvalidCORSRequestException    If not a valid CORS preflight
+	 *                                        request.
+	 * @throws CORSOriginDeniedException      If the origin is not allowed.
+	 * @throws UnsupportedHTTPMethodException If the requested HTTP method
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 * @throws UnsupportedHTTPHeaderException If the requested HTTP header
+	 *                                        is not supported by the CORS
+	 *                                        policy.
+	 */
+	HttpHeaders getPreflightHeaders(final CORSRequestContext context)
+		throws InvalidCORSRequestException,
+		       CORSOriginDeniedException,
+		       UnsupportedHTTPMethodException,
+		       UnsupportedHTTPHeaderException {
+
+		final String requestedHeaders = context.getRequestedHeaders();
+
+		final String key = context.getOrigin() + '\n' +
+		                   context.getRequestedMethod() + '\n' +
+		                   (requestedHeaders != null ? requestedHeaders : "");
+
+		HttpHeaders headers = preflightHeaders.get(key);
+
+		if (headers != null)
+			return headers;
+
+		// Rejections are not cached here, see the preflight verdict
+		// cache of the CORS request handler
+		headers = new DefaultHttpHeaders();
+		handler.handlePreflightRequest(context, new NettyResponseSink(headers));
+		headers.setInt(HttpHeaderNames.CONTENT_LENGTH, 0);
+
+		preflightHeaders.put(key, headers);
+
+		return headers;
+	}
+}
@@ -0,0 +1,61 @@
+package com.thetransactioncompany.cors.netty;
+
+
+import io.netty.handler.codec.http.HttpRequest;
+
+import com.thetransactioncompany.cors.CORSRequestView;
+
+
+/**
+ * Adapts a Netty HTTP request to the {@link CORSRequestView} interface.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class NettyRequestView implements CORSRequestView {
+
+
+	/**
+	 * The Netty HTTP request.
+	 */
+	private final HttpRequest request;
+
+
+	/**
+	 * The scheme of the channel.
+	 */
+	private final String scheme;
+
+
+	/**
+	 * Creates a new view of the specified Netty HTTP request.
+	 *
+	 * @param request The Netty HTTP request. Must not be {@code null}.
+	 * @param scheme  The scheme of the channel, "http" or "https".
+	 */
+	NettyRequestView(final HttpRequest request, final String scheme) {
+
+		this.request = request;
+		this.scheme = scheme;
+	}
+
+
+	@Override
+	public String getMethod() {
+
+		return request.method().name();
+	}
+
+
+	@Override
+	public String getScheme() {
+
+		return scheme;
+	}
+
+
+	@Override
+	public String getHeader(final String name) {
+
+		return request.headers().get(name);
+	}
+}
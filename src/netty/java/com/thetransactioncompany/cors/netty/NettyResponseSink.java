@@ -0,0 +1,48 @@
+package com.thetransactioncompany.cors.netty;
+
+
+import io.netty.handler.codec.http.HttpHeaders;
+
+import com.thetransactioncompany.cors.CORSResponseSink;
+
+
+/**
+ * Adapts Netty HTTP response headers to the {@link CORSResponseSink}
+ * interface.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class NettyResponseSink implements CORSResponseSink {
+
+
+	/**
+	 * The Netty HTTP response headers.
+	 */
+	private final HttpHeaders headers;
+
+
+	/**
+	 * Creates a new sink for the specified Netty HTTP response headers.
+	 *
+	 * @param headers The Netty HTTP response headers. Must not be
+	 *                {@code null}.
+	 */
+	NettyResponseSink(final HttpHeaders headers) {
+
+		this.headers = headers;
+	}
+
+
+	@Override
+	public void setHeader(final String name, final String value) {
+
+		headers.set(name, value);
+	}
+
+
+	@Override
+	public void addHeader(final String name, final String value) {
+
+		headers.add(name, value);
+	}
+}
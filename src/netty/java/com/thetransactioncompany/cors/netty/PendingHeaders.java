@@ -0,0 +1,71 @@
+package com.thetransactioncompany.cors.netty;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.thetransactioncompany.cors.CORSResponseSink;
+
+
+/**
+ * Records the CORS response headers for an actual request while the request
+ * is processed further down the pipeline, to replay them on its response.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+final class PendingHeaders implements CORSResponseSink {
+
+
+	/**
+	 * The header names.
+	 */
+	private final List<String> names = new ArrayList<String>(4);
+
+
+	/**
+	 * The header values.
+	 */
+	private final List<String> values = new ArrayList<String>(4);
+
+
+	/**
+	 * The set / add flags.
+	 */
+	private final List<Boolean> replace = new ArrayList<Boolean>(4);
+
+
+	@Override
+	public void setHeader(final String name, final String value) {
+
+		names.add(name);
+		values.add(value);
+		replace.add(Boolean.TRUE);
+	}
+
+
+	@Override
+	public void addHeader(final String name, final String value) {
+
+		names.add(name);
+		values.add(value);
+		replace.add(Boolean.FALSE);
+	}
+
+
+	/**
+	 * Replays the recorded headers to the specified response sink, in
+	 * their original order.
+	 *
+	 * @param sink The response sink. Must not be {@code null}.
+	 */
+	void replay(final CORSResponseSink sink) {
+
+		for (int i = 0; i < names.size(); i++) {
+
+			if (replace.get(i))
+				sink.setHeader(names.get(i), values.get(i));
+			else
+				sink.addHeader(names.get(i), values.get(i));
+		}
+	}
+}
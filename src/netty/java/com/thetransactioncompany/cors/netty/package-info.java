@@ -0,0 +1,20 @@
+/**
+ * Netty adapter for the CORS policy engine.
+ *
+ * <p>The {@link com.thetransactioncompany.cors.netty.CORSChannelHandler}
+ * applies a {@link com.thetransactioncompany.cors.CORSConfiguration} to the
+ * HTTP requests of a Netty channel. Preflight requests are answered directly
+ * from the event loop; actual requests are passed on and have the CORS
+ * headers added to their responses. A
+ * {@link com.thetransactioncompany.cors.netty.CORSChannelPolicy} shares the
+ * policy and its pre-built preflight headers between the channels.
+ *
+ * <p>Package dependencies:
+ *
+ * <ul>
+ *     <li>{@code io.netty:netty-codec-http} version 4.1, provided by the
+ *         application. The package is compiled with the {@code netty} Maven
+ *         profile.</li>
+ * </ul>
+ */
+package com.thetransactioncompany.cors.netty;
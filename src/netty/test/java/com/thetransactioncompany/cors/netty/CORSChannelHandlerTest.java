@@ -0,0 +1,340 @@
+package com.thetransactioncompany.cors.netty;
+
+
+import java.util.Properties;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.cors.CORSConfiguration;
+
+
+/**
+ * Tests the CORS channel handler.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSChannelHandlerTest extends TestCase {
+
+
+	private static CORSChannelPolicy createPolicy()
+		throws Exception {
+
+		Properties p = new Properties();
+		p.setProperty("cors.allowOrigin", "http://example.com");
+		p.setProperty("cors.supportedMethods", "GET, POST, PUT");
+
+		return new CORSChannelPolicy(new CORSConfiguration(p));
+	}
+
+
+	private static EmbeddedChannel createChannel()
+		throws Exception {
+
+		return new EmbeddedChannel(new CORSChannelHandler(createPolicy()));
+	}
+
+
+	private static FullHttpRequest createRequest(final HttpMethod method, final String origin) {
+
+		FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, "/api");
+		request.headers().set("Host", "api.example.com");
+
+		if (origin != null)
+			request.headers().set("Origin", origin);
+
+		return request;
+	}
+
+
+	public void testPreflightAnsweredFromEventLoop()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		FullHttpRequest request = createRequest(HttpMethod.OPTIONS, "http://example.com");
+		request.headers().set("Access-Control-Request-Method", "PUT");
+
+		assertFalse(channel.writeInbound(request));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.OK, response.status());
+		assertEquals("http://example.com", response.headers().get("Access-Control-Allow-Origin"));
+		assertNotNull(response.headers().get("Access-Control-Allow-Methods"));
+		assertEquals("0", response.headers().get("Content-Length"));
+		response.release();
+
+		assertEquals(0, request.refCnt());
+		assertTrue(channel.isOpen());
+	}
+
+
+	public void testPreflightDenied()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		FullHttpRequest request = createRequest(HttpMethod.OPTIONS, "http://example.com");
+		request.headers().set("Access-Control-Request-Method", "DELETE");
+
+		assertFalse(channel.writeInbound(request));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.METHOD_NOT_ALLOWED, response.status());
+		assertNull(response.headers().get("Access-Control-Allow-Origin"));
+		assertTrue(response.content().isReadable());
+		response.release();
+	}
+
+
+	public void testActualRequest()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		assertTrue(channel.writeInbound(createRequest(HttpMethod.GET, "http://example.com")));
+
+		FullHttpRequest passed = channel.readInbound();
+		assertEquals("/api", passed.uri());
+		passed.release();
+
+		// The application responds
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals("http://example.com", response.headers().get("Access-Control-Allow-Origin"));
+		response.release();
+	}
+
+
+	public void testActualRequestDenied()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		assertFalse(channel.writeInbound(createRequest(HttpMethod.GET, "http://other.com")));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.FORBIDDEN, response.status());
+		response.release();
+	}
+
+
+	public void testNonCORSRequest()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		assertTrue(channel.writeInbound(createRequest(HttpMethod.GET, null)));
+
+		FullHttpRequest passed = channel.readInbound();
+		passed.release();
+
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertNull(response.headers().get("Access-Control-Allow-Origin"));
+		response.release();
+	}
+
+
+	public void testPreflightHeadersPrebuilt()
+		throws Exception {
+
+		CORSChannelPolicy policy = createPolicy();
+
+		for (int i = 0; i < 2; i++) {
+
+			// A new channel for each request, sharing the policy
+			EmbeddedChannel channel = new EmbeddedChannel(new CORSChannelHandler(policy));
+
+			FullHttpRequest request = createRequest(HttpMethod.OPTIONS, "http://example.com");
+			request.headers().set("Access-Control-Request-Method", "PUT");
+
+			assertFalse(channel.writeInbound(request));
+
+			FullHttpResponse response = channel.readOutbound();
+			assertEquals(HttpResponseStatus.OK, response.status());
+			assertEquals("http://example.com", response.headers().get("Access-Control-Allow-Origin"));
+			assertEquals("0", response.headers().get("Content-Length"));
+			response.release();
+		}
+
+		assertEquals(1L, policy.getPreflightHeaderCache().getMisses());
+		assertEquals(1L, policy.getPreflightHeaderCache().getHits());
+	}
+
+
+	public void testPipelinedPreflightQueued()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		// Actual request, passed on to the application
+		assertTrue(channel.writeInbound(createRequest(HttpMethod.GET, "http://example.com")));
+
+		FullHttpRequest passed = channel.readInbound();
+		passed.release();
+
+		// Pipelined preflight, answered only after the actual request
+		FullHttpRequest preflight = createRequest(HttpMethod.OPTIONS, "http://example.com");
+		preflight.headers().set("Access-Control-Request-Method", "PUT");
+
+		assertFalse(channel.writeInbound(preflight));
+		assertNull(channel.readOutbound());
+
+		// Pipelined denied request, queued too
+		assertFalse(channel.writeInbound(createRequest(HttpMethod.GET, "http://other.com")));
+		assertNull(channel.readOutbound());
+
+		// The application responds to the actual request
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.ACCEPTED));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.ACCEPTED, response.status());
+		assertEquals("http://example.com", response.headers().get("Access-Control-Allow-Origin"));
+		response.release();
+
+		response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.OK, response.status());
+		assertNotNull(response.headers().get("Access-Control-Allow-Methods"));
+		response.release();
+
+		response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.FORBIDDEN, response.status());
+		response.release();
+
+		assertNull(channel.readOutbound());
+	}
+
+
+	public void testInterimResponse()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		assertTrue(channel.writeInbound(createRequest(HttpMethod.GET, "http://example.com")));
+
+		FullHttpRequest passed = channel.readInbound();
+		passed.release();
+
+		FullHttpRequest preflight = createRequest(HttpMethod.OPTIONS, "http://example.com");
+		preflight.headers().set("Access-Control-Request-Method", "PUT");
+		assertFalse(channel.writeInbound(preflight));
+
+		// 100 Continue doesn't complete the actual request
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.CONTINUE, response.status());
+		assertNull(response.headers().get("Access-Control-Allow-Origin"));
+		response.release();
+
+		assertNull(channel.readOutbound());
+
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+		response = channel.readOutbound();
+		assertEquals("http://example.com", response.headers().get("Access-Control-Allow-Origin"));
+		response.release();
+
+		response = channel.readOutbound();
+		assertNotNull(response.headers().get("Access-Control-Allow-Methods"));
+		response.release();
+	}
+
+
+	public void testRejectedRequestContentDiscarded()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		// Streamed request, without an aggregator in the pipeline
+		HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/api");
+		request.headers().set("Host", "api.example.com");
+		request.headers().set("Origin", "http://other.com");
+
+		HttpContent content = new DefaultHttpContent(Unpooled.copiedBuffer(new byte[]{1, 2, 3}));
+		HttpContent last = new DefaultLastHttpContent(Unpooled.copiedBuffer(new byte[]{4}));
+
+		assertFalse(channel.writeInbound(request));
+		assertFalse(channel.writeInbound(content));
+		assertFalse(channel.writeInbound(last));
+
+		assertEquals(0, content.refCnt());
+		assertEquals(0, last.refCnt());
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.FORBIDDEN, response.status());
+		response.release();
+
+		// The next request is handled again
+		assertTrue(channel.writeInbound(createRequest(HttpMethod.GET, "http://example.com")));
+
+		FullHttpRequest passed = channel.readInbound();
+		passed.release();
+	}
+
+
+	public void testConnectionClose()
+		throws Exception {
+
+		EmbeddedChannel channel = createChannel();
+
+		FullHttpRequest request = createRequest(HttpMethod.GET, "http://other.com");
+		request.headers().set("Connection", HttpHeaderValues.CLOSE);
+
+		assertFalse(channel.writeInbound(request));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.FORBIDDEN, response.status());
+		assertEquals("close", response.headers().get("Connection"));
+		response.release();
+
+		assertFalse(channel.isOpen());
+	}
+
+
+	public void testQueuedResponsesDroppedOnRemoval()
+		throws Exception {
+
+		CORSChannelHandler handler = new CORSChannelHandler(createPolicy());
+
+		EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+		assertTrue(channel.writeInbound(createRequest(HttpMethod.GET, "http://example.com")));
+
+		FullHttpRequest passed = channel.readInbound();
+		passed.release();
+
+		assertFalse(channel.writeInbound(createRequest(HttpMethod.GET, "http://other.com")));
+		assertNull(channel.readOutbound());
+
+		channel.pipeline().remove(handler);
+
+		// The queued rejection is released, not sent
+		channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+		FullHttpResponse response = channel.readOutbound();
+		assertEquals(HttpResponseStatus.OK, response.status());
+		assertNull(response.headers().get("Access-Control-Allow-Origin"));
+		response.release();
+
+		assertNull(channel.readOutbound());
+	}
+}
@@ -0,0 +1,84 @@
+package com.thetransactioncompany.cors;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the bounded cache.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class BoundedCacheTest extends TestCase {
+
+
+	public void testCapacity() {
+
+		assertEquals(1, new BoundedCache<String,String>(1).getCapacity());
+		assertEquals(16, new BoundedCache<String,String>(10).getCapacity());
+		assertEquals(1024, new BoundedCache<String,String>(1024).getCapacity());
+	}
+
+
+	public void testBadCapacity() {
+
+		try {
+			new BoundedCache<String,String>(0);
+			fail();
+
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testGetPut() {
+
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(16);
+
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		cache.put("a", "1");
+		assertEquals("1", cache.get("a"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+
+		// Replacing the value for the same key is not an eviction
+		cache.put("a", "2");
+		assertEquals("2", cache.get("a"));
+		assertEquals(0, cache.getEvictions());
+
+		cache.clear();
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testEviction() {
+
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(1);
+
+		cache.put("a", "1");
+		cache.put("b", "2");
+
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(1, cache.size());
+	}
+
+
+	public void testBounded() {
+
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(64);
+
+		for (int i = 0; i < 10000; i++)
+			cache.put("http://example" + i + ".com", "v");
+
+		assertTrue(cache.size() <= 64);
+		assertTrue(cache.getEvictions() >= 10000 - 64);
+	}
+}
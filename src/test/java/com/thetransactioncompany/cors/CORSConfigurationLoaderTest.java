@@ -61,4 +61,36 @@ public class CORSConfigurationLoaderTest extends TestCase {
 		
 		assertEquals(3600, c.maxAge);
 	}
+
+
+	public void testReloadInterval()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+
+		CORSConfigurationLoader configLoader = new CORSConfigurationLoader(filterConfig);
+
+		assertEquals(0, configLoader.getReloadInterval());
+
+		filterConfig.setInitParameter(CORSConfigurationLoader.RELOAD_INTERVAL_PARAM_NAME, " 30 ");
+		assertEquals(30, configLoader.getReloadInterval());
+
+		filterConfig.setInitParameter(CORSConfigurationLoader.RELOAD_INTERVAL_PARAM_NAME, "-1");
+
+		try {
+			configLoader.getReloadInterval();
+			fail();
+		} catch (CORSConfigurationException e) {
+			// ok
+		}
+
+		filterConfig.setInitParameter(CORSConfigurationLoader.RELOAD_INTERVAL_PARAM_NAME, "soon");
+
+		try {
+			configLoader.getReloadInterval();
+			fail();
+		} catch (CORSConfigurationException e) {
+			// ok
+		}
+	}
 }
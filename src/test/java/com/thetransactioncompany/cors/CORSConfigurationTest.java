@@ -1,7 +1,10 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -79,6 +82,10 @@ public class CORSConfigurationTest extends TestCase {
 		assertFalse(c.isSupportedMethod("DELETE"));
 		assertFalse(c.isSupportedMethod("PUT"));
 		assertFalse(c.isSupportedMethod("TRACE"));
+
+		// Case insensitive
+		assertTrue(c.isSupportedMethod("get"));
+		assertTrue(c.isSupportedMethod("Post"));
 		
 		assertTrue(c.supportAnyHeader);
 		assertTrue(c.isSupportedHeader("X-Requested-By"));
@@ -86,6 +93,7 @@ public class CORSConfigurationTest extends TestCase {
 		assertEquals(-1, c.maxAge);
 
 		assertFalse(c.tagRequests);
+		assertFalse(c.countDistinctOrigins);
         }
         
         
@@ -98,6 +106,7 @@ public class CORSConfigurationTest extends TestCase {
 		p.setProperty("cors.supportedHeaders", "*");
 		p.setProperty("cors.supportsCredentials", "false");
 		p.setProperty("cors.tagRequests", "true");
+		p.setProperty("cors.countDistinctOrigins", "true");
 		
 		CORSConfiguration c = null;
 		
@@ -124,6 +133,7 @@ public class CORSConfigurationTest extends TestCase {
 		assertTrue(c.isSupportedHeader("X-Requested-By"));
 
 		assertTrue(c.tagRequests);
+		assertTrue(c.countDistinctOrigins);
         }
 	
 	
@@ -297,7 +307,8 @@ public class CORSConfigurationTest extends TestCase {
 	}
 	
 
-	public void testAllowSubdomainOrigin(){
+	public void testAllowSubdomainOrigin()
+		throws Exception {
 
 		Properties p = new Properties();
 		p.setProperty("cors.allowSubdomains", "true");
@@ -317,11 +328,110 @@ public class CORSConfigurationTest extends TestCase {
 
 		assertTrue(c.isAllowedSubdomainOrigin(origin));
 		assertTrue(c.isAllowedOrigin(origin));
+		assertTrue(c.isAllowedOrigin(origin, new ValidatedOrigin(origin.toString())));
+		assertFalse(c.isAllowedOrigin(origin, null));
 		
 		
 		origin = new Origin("http://myexample.com:8080");
 
 		assertFalse(c.isAllowedSubdomainOrigin(origin));
 		assertFalse(c.isAllowedOrigin(origin));
+		assertFalse(c.isAllowedOrigin(origin, new ValidatedOrigin(origin.toString())));
+	}
+
+
+	public void testOriginCacheSize()
+		throws Exception {
+
+		assertEquals(0, new CORSConfiguration(new Properties()).originCacheSize);
+
+		Properties p = new Properties();
+		p.setProperty("cors.originCache.size", "1000");
+
+		assertEquals(1000, new CORSConfiguration(p).originCacheSize);
+
+		p.setProperty("cors.originCache.size", "-1");
+
+		try {
+			new CORSConfiguration(p);
+			fail();
+
+		} catch (CORSConfigurationException e) {
+			// ok
+		}
+	}
+
+
+	public void testAllowOriginPatterns()
+		throws Exception {
+
+		Properties p = new Properties();
+		p.setProperty("cors.allowOrigin", "https://example.com https://*.preview.example.com http://localhost:*");
+
+		CORSConfiguration c = new CORSConfiguration(p);
+
+		assertFalse(c.allowAnyOrigin);
+		assertEquals(1, c.allowedOrigins.size());
+		assertEquals(2, c.allowedOriginPatterns.size());
+
+		assertTrue(c.isAllowedOrigin(new Origin("https://example.com")));
+		assertTrue(c.isAllowedOrigin(new Origin("https://pr-1234.preview.example.com")));
+		assertTrue(c.isAllowedOrigin(new Origin("http://localhost:8080")));
+
+		assertFalse(c.isAllowedOrigin(new Origin("https://www.example.com")));
+		assertFalse(c.isAllowedOrigin(new Origin("https://preview.example.com")));
+		assertFalse(c.isAllowedOrigin(new Origin("http://localhost")));
+
+		p.setProperty("cors.allowOrigin", "https://**.example.com");
+
+		try {
+			new CORSConfiguration(p);
+			fail();
+
+		} catch (CORSConfigurationException e) {
+			// ok
+		}
+	}
+
+
+	public void testSetsUnmodifiable()
+		throws Exception {
+
+		Properties p = new Properties();
+		p.setProperty("cors.allowOrigin", "http://example.com https://*.example.com");
+		p.setProperty("cors.supportedHeaders", "Content-Type");
+		p.setProperty("cors.exposedHeaders", "X-Custom");
+
+		CORSConfiguration c = new CORSConfiguration(p);
+
+		List<Set<?>> sets = new ArrayList<Set<?>>();
+		sets.add(c.allowedOrigins);
+		sets.add(c.allowedOriginPatterns);
+		sets.add(c.supportedMethods);
+		sets.add(c.supportedHeaders);
+		sets.add(c.exposedHeaders);
+
+		for (Set<?> set: sets) {
+
+			assertFalse(set.isEmpty());
+
+			try {
+				set.clear();
+				fail();
+
+			} catch (UnsupportedOperationException e) {
+				// ok
+			}
+		}
+
+		try {
+			c.supportedMethods.add("DELETE");
+			fail();
+
+		} catch (UnsupportedOperationException e) {
+			// ok
+		}
+
+		assertFalse(c.isSupportedMethod("DELETE"));
 	}
 }
@@ -0,0 +1,520 @@
+package com.thetransactioncompany.cors;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.thetransactioncompany.cors.environment.MockEnvironment;
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the CORS filter.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSFilterTest extends TestCase {
+
+
+	/**
+	 * The configuration file, relative to the mock servlet context root
+	 * at src/test/resources.
+	 */
+	private static final String CONFIG_FILE = "/../../../target/cors-reload-test.configuration";
+
+
+	private static void writeConfigFile(final String content)
+		throws IOException {
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream("src/test/resources" + CONFIG_FILE), "UTF-8");
+		writer.write(content);
+		writer.close();
+	}
+
+
+	/**
+	 * The host configuration directory.
+	 */
+	private static final File HOST_CONFIG_DIR = new File("target/cors-host-test");
+
+
+	private static void writeHostConfigFile(final String host, final String content)
+		throws IOException {
+
+		HOST_CONFIG_DIR.mkdirs();
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(HOST_CONFIG_DIR, host + ".properties")), "UTF-8");
+		writer.write(content);
+		writer.close();
+	}
+
+
+	@Override
+	public void tearDown() {
+
+		new File("src/test/resources" + CONFIG_FILE).delete();
+
+		File[] files = HOST_CONFIG_DIR.listFiles();
+
+		if (files != null) {
+			for (File file: files)
+				file.delete();
+		}
+
+		HOST_CONFIG_DIR.delete();
+	}
+
+
+	public void testReloadDisabledByDefault()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(new MockFilterConfig());
+
+		assertTrue(filter.getConfiguration().allowAnyOrigin);
+		assertFalse(filter.reloadConfiguration());
+		assertEquals(0, filter.getReloadCount());
+
+		filter.destroy();
+	}
+
+
+	public void testReloadConfiguration()
+		throws Exception {
+
+		writeConfigFile("cors.allowOrigin=http://example.com\n");
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter(CORSConfigurationLoader.CONFIG_FILE_PARAM_NAME, CONFIG_FILE);
+		filterConfig.setInitParameter(CORSConfigurationLoader.RELOAD_INTERVAL_PARAM_NAME, "3600");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		CORSConfiguration config = filter.getConfiguration();
+		assertTrue(config.isAllowedOrigin(new Origin("http://example.com")));
+
+		// Unchanged
+		assertFalse(filter.reloadConfiguration());
+		assertSame(config, filter.getConfiguration());
+
+		// Changed
+		writeConfigFile("cors.allowOrigin=http://example.org\n");
+
+		assertTrue(filter.reloadConfiguration());
+		assertEquals(1, filter.getReloadCount());
+		assertFalse(filter.getConfiguration().isAllowedOrigin(new Origin("http://example.com")));
+		assertTrue(filter.getConfiguration().isAllowedOrigin(new Origin("http://example.org")));
+		assertEquals(1, filterConfig.getServletContext().getLogMessages().size());
+
+		// Invalid, keeps the current configuration
+		config = filter.getConfiguration();
+		writeConfigFile("cors.maxAge=forever\n");
+
+		assertFalse(filter.reloadConfiguration());
+		assertEquals(1, filter.getReloadCount());
+		assertEquals(1, filter.getReloadFailureCount());
+		assertSame(config, filter.getConfiguration());
+		assertEquals(2, filterConfig.getServletContext().getLogMessages().size());
+
+		filter.destroy();
+	}
+
+
+	public void testEnvironmentConfigurationFileIsNotReloadedWithoutInterval()
+		throws Exception {
+
+		CORSConfigurationLoader configLoader = new CORSConfigurationLoader(new MockFilterConfig());
+
+		MockEnvironment mockEnv = new MockEnvironment();
+		mockEnv.setConfigurationFileName("cors-sample.configuration");
+		configLoader.setEnvironment(mockEnv);
+
+		assertEquals("cors-sample.configuration", configLoader.getConfigurationFile());
+		assertEquals(0, configLoader.getReloadInterval());
+	}
+
+
+	public void testJMX()
+		throws Exception {
+
+		writeConfigFile("cors.allowOrigin=http://example.com\ncors.preflightCache.size=64\ncors.countDistinctOrigins=true\n");
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter(CORSConfigurationLoader.CONFIG_FILE_PARAM_NAME, CONFIG_FILE);
+		filterConfig.setInitParameter(CORSConfigurationLoader.JMX_PARAM_NAME, "true");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		ObjectName name = filter.getMBeanName();
+		assertEquals("com.thetransactioncompany.cors:type=CORSFilter,context=\"/\",name=\"CORSFilter\"", name.toString());
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertTrue(server.isRegistered(name));
+
+		assertEquals(Arrays.asList("http://example.com"), Arrays.asList((String[])server.getAttribute(name, "AllowedOrigins")));
+		assertEquals(Boolean.FALSE, server.getAttribute(name, "AllowAnyOrigin"));
+		assertEquals(-1, server.getAttribute(name, "MaxAge"));
+		assertEquals(64, server.getAttribute(name, "PreflightCacheCapacity"));
+		assertEquals(0, server.getAttribute(name, "OriginCacheCapacity"));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://other.com");
+		request.setMethod("GET");
+		filter.doFilter(request, new MockServletResponse(), null);
+
+		assertEquals(1L, server.getAttribute(name, "ActualRequests"));
+		assertEquals(1L, server.getAttribute(name, "OriginDenials"));
+
+		CORSFilterMXBean proxy = JMX.newMXBeanProxy(server, name, CORSFilterMXBean.class);
+		assertEquals(Collections.singletonMap("http://other.com", 1L), proxy.getTopDeniedOrigins());
+		assertEquals(0L, proxy.getDistinctAllowedOrigins());
+		assertEquals(1L, proxy.getDistinctDeniedOrigins());
+
+		server.invoke(name, "resetStatistics", null, null);
+		assertEquals(0L, server.getAttribute(name, "ActualRequests"));
+
+		// Reload on demand, without a reload interval
+		assertEquals(0L, server.getAttribute(name, "LastReloadTime"));
+		writeConfigFile("cors.allowOrigin=http://example.org\n");
+
+		assertEquals(Boolean.TRUE, server.invoke(name, "reloadConfiguration", null, null));
+		assertEquals(Arrays.asList("http://example.org"), Arrays.asList((String[])server.getAttribute(name, "AllowedOrigins")));
+		assertEquals(1L, server.getAttribute(name, "ReloadCount"));
+		assertTrue((Long)server.getAttribute(name, "LastReloadTime") > 0L);
+
+		filter.destroy();
+
+		assertFalse(server.isRegistered(name));
+		assertNull(filter.getMBeanName());
+	}
+
+
+	public void testJMXDisabledByDefault()
+		throws Exception {
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(new MockFilterConfig());
+
+		assertNull(filter.getMBeanName());
+
+		filter.destroy();
+	}
+
+
+	public void testErrorMessages()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.allowGenericHttpRequests", "false");
+		props.setProperty("cors.supportedHeaders", "Content-Type");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://other.com");
+		request.setMethod("GET");
+
+		MockServletResponse response = new MockServletResponse();
+
+		filter.doFilter(request, response, null);
+
+		assertEquals(403, response.getStatus());
+		assertEquals("text/plain; charset=UTF-8", response.getContentType());
+
+		String expected = "Cross-Origin Resource Sharing (CORS) Filter: CORS origin denied: http://other.com\n";
+		assertEquals(expected, new String(response.getBody(), "UTF-8"));
+		assertEquals(expected.length(), response.getContentLength());
+
+		// Generic request
+		response = new MockServletResponse();
+		filter.doFilter(new MockServletRequest(), response, null);
+
+		assertEquals(403, response.getStatus());
+		expected = "Cross-Origin Resource Sharing (CORS) Filter: Generic HTTP requests not allowed\n";
+		assertEquals(expected, new String(response.getBody(), "UTF-8"));
+		assertEquals(expected.length(), response.getContentLength());
+
+		// Invalid preflight, no detail
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "GET");
+		request.setHeader("Access-Control-Request-Headers", "X-B@d");
+		request.setMethod("OPTIONS");
+
+		response = new MockServletResponse();
+		filter.doFilter(request, response, null);
+
+		assertEquals(400, response.getStatus());
+		expected = "Cross-Origin Resource Sharing (CORS) Filter: Invalid preflight CORS request: Bad request header value\n";
+		assertEquals(expected, new String(response.getBody(), "UTF-8"));
+
+		// Unsupported method
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("DELETE");
+
+		response = new MockServletResponse();
+		filter.doFilter(request, response, null);
+
+		assertEquals(405, response.getStatus());
+		expected = "Cross-Origin Resource Sharing (CORS) Filter: Unsupported HTTP method: DELETE\n";
+		assertEquals(expected, new String(response.getBody(), "UTF-8"));
+
+		// Unsupported header
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "GET");
+		request.setHeader("Access-Control-Request-Headers", "X-Custom");
+		request.setMethod("OPTIONS");
+
+		response = new MockServletResponse();
+		filter.doFilter(request, response, null);
+
+		assertEquals(403, response.getStatus());
+		expected = "Cross-Origin Resource Sharing (CORS) Filter: Unsupported HTTP request header: X-Custom\n";
+		assertEquals(expected, new String(response.getBody(), "UTF-8"));
+	}
+
+
+	public void testMetrics()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.allowGenericHttpRequests", "false");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		FilterChain chain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) {
+			}
+		};
+
+		// Allowed actual request
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("GET");
+		filter.doFilter(request, new MockServletResponse(), chain);
+
+		// Allowed preflight
+		request.setHeader("Access-Control-Request-Method", "POST");
+		request.setMethod("OPTIONS");
+		filter.doFilter(request, new MockServletResponse(), chain);
+
+		// Denied origin
+		request = new MockServletRequest();
+		request.setHeader("Origin", "http://other.com");
+		request.setMethod("GET");
+		filter.doFilter(request, new MockServletResponse(), chain);
+
+		// Denied method
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("DELETE");
+		filter.doFilter(request, new MockServletResponse(), chain);
+
+		// Denied generic request
+		filter.doFilter(new MockServletRequest(), new MockServletResponse(), chain);
+
+		CORSMetrics.Snapshot snapshot = filter.getMetrics().snapshot();
+
+		assertEquals(3, snapshot.getActualRequests());
+		assertEquals(1, snapshot.getPreflightRequests());
+		assertEquals(1, snapshot.getOtherRequests());
+		assertEquals(0, snapshot.getBypassedRequests());
+		assertEquals(1, snapshot.getOriginDenials());
+		assertEquals(1, snapshot.getMethodDenials());
+		assertEquals(0, snapshot.getHeaderDenials());
+		assertEquals(0, snapshot.getInvalidRequests());
+		assertEquals(1, snapshot.getGenericDenials());
+		assertEquals(3, snapshot.getDenials());
+		assertEquals(4, snapshot.getLatencyCount());
+
+		filter.getMetrics().reset();
+
+		assertEquals(0, filter.getMetrics().snapshot().getActualRequests());
+	}
+
+
+	public void testOmitErrorMessages()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.omitErrorMessages", "true");
+
+		CORSFilter filter = new CORSFilter(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://other.com");
+		request.setMethod("GET");
+
+		MockServletResponse response = new MockServletResponse();
+
+		filter.doFilter(request, response, null);
+
+		assertEquals(403, response.getStatus());
+		assertEquals(0, response.getContentLength());
+		assertEquals(0, response.getBody().length);
+	}
+
+
+	public void testHostConfigurations()
+		throws Exception {
+
+		writeHostConfigFile("tenant-a.example.com", "cors.allowOrigin=https://a.example.org\n");
+		writeHostConfigFile("Tenant-B.example.com", "cors.allowOrigin=https://b.example.org\n");
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.allowOrigin", "https://default.example.org");
+		filterConfig.setInitParameter(CORSConfigurationLoader.HOST_CONFIG_DIR_PARAM_NAME, HOST_CONFIG_DIR.getPath());
+		filterConfig.setInitParameter(CORSConfigurationLoader.RELOAD_INTERVAL_PARAM_NAME, "3600");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		assertTrue(filter.getConfiguration().isAllowedOrigin(new Origin("https://default.example.org")));
+		assertTrue(filter.getConfiguration("tenant-a.example.com").isAllowedOrigin(new Origin("https://a.example.org")));
+		assertTrue(filter.getConfiguration("TENANT-A.example.com").isAllowedOrigin(new Origin("https://a.example.org")));
+		assertTrue(filter.getConfiguration("tenant-b.example.com").isAllowedOrigin(new Origin("https://b.example.org")));
+		assertSame(filter.getConfiguration(), filter.getConfiguration("other.example.com"));
+
+		// Request to tenant A
+		MockServletRequest request = new MockServletRequest();
+		request.setServerName("tenant-a.example.com");
+		request.setHeader("Origin", "https://a.example.org");
+		request.setMethod("GET");
+
+		MockServletResponse response = new MockServletResponse();
+
+		filter.doFilter(request, response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) {
+			}
+		});
+
+		assertEquals(200, response.getStatus());
+		assertEquals("https://a.example.org", response.getHeader("Access-Control-Allow-Origin"));
+
+		// Request with the tenant A origin to another host
+		request.setServerName("other.example.com");
+
+		response = new MockServletResponse();
+
+		filter.doFilter(request, response, null);
+
+		assertEquals(403, response.getStatus());
+
+		// Changed tenant configuration
+		assertFalse(filter.reloadConfiguration());
+
+		writeHostConfigFile("tenant-a.example.com", "cors.allowOrigin=https://a2.example.org\n");
+
+		assertTrue(filter.reloadConfiguration());
+		assertTrue(filter.getConfiguration("tenant-a.example.com").isAllowedOrigin(new Origin("https://a2.example.org")));
+		assertFalse(filter.getConfiguration("tenant-a.example.com").isAllowedOrigin(new Origin("https://a.example.org")));
+
+		filter.destroy();
+	}
+
+
+	public void testBadHostConfiguration()
+		throws Exception {
+
+		writeHostConfigFile("tenant-a.example.com", "cors.maxAge=forever\n");
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter(CORSConfigurationLoader.HOST_CONFIG_DIR_PARAM_NAME, HOST_CONFIG_DIR.getPath());
+
+		try {
+			new CORSFilter().init(filterConfig);
+			fail();
+		} catch (ServletException e) {
+			assertTrue(e.getMessage().contains("tenant-a.example.com"));
+		}
+	}
+
+
+	public void testPathPolicies()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.allowOrigin", "https://default.example.org");
+		filterConfig.setInitParameter(CORSConfigurationLoader.PATH_POLICIES_PARAM_NAME,
+			"/api/partner/*=/cors-sample.configuration, /static/*=bypass");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		assertTrue(filter.getPathConfiguration("/api/partner/orders").isAllowedOrigin(new Origin("http://example.com:8008")));
+		assertNull(filter.getPathConfiguration("/static/app.js"));
+		assertSame(filter.getConfiguration(), filter.getPathConfiguration("/index.html"));
+
+		final int[] chained = new int[1];
+
+		FilterChain chain = new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) {
+				chained[0]++;
+			}
+		};
+
+		// Bypassed, even with a denied origin
+		MockServletRequest request = new MockServletRequest();
+		request.setServletPath("/static/app.js");
+		request.setHeader("Origin", "https://evil.example.org");
+
+		MockServletResponse response = new MockServletResponse();
+
+		filter.doFilter(request, response, chain);
+
+		assertEquals(1, chained[0]);
+		assertEquals(200, response.getStatus());
+		assertNull(response.getHeader("Access-Control-Allow-Origin"));
+
+		// Partner policy
+		request.setServletPath("/api/partner/orders");
+		request.setHeader("Origin", "http://example.com:8008");
+
+		response = new MockServletResponse();
+
+		filter.doFilter(request, response, chain);
+
+		assertEquals(2, chained[0]);
+		assertEquals("http://example.com:8008", response.getHeader("Access-Control-Allow-Origin"));
+
+		filter.destroy();
+	}
+
+
+	public void testBadPathPolicies() {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter(CORSConfigurationLoader.PATH_POLICIES_PARAM_NAME, "static=bypass");
+
+		try {
+			new CORSFilter().init(filterConfig);
+			fail();
+		} catch (ServletException e) {
+			// ok
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.thetransactioncompany.cors;
+
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Properties;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+
+import junit.framework.TestCase;
+
+import com.thetransactioncompany.cors.demo.CORSMetricsServlet;
+
+
+/**
+ * Tests the CORS metrics servlet.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSMetricsServletTest extends TestCase {
+
+
+	private static CORSMetricsServlet createServlet(final ServletContext context)
+		throws Exception {
+
+		CORSMetricsServlet servlet = new CORSMetricsServlet();
+
+		servlet.init(new ServletConfig() {
+
+			@Override
+			public String getServletName() {
+				return "CORSMetricsServlet";
+			}
+
+			@Override
+			public ServletContext getServletContext() {
+				return context;
+			}
+
+			@Override
+			public String getInitParameter(String name) {
+				return null;
+			}
+
+			@Override
+			public Enumeration getInitParameterNames() {
+				return null;
+			}
+		});
+
+		return servlet;
+	}
+
+
+	public void testExposition()
+		throws Exception {
+
+		MockFilterConfig filterConfig = new MockFilterConfig();
+		filterConfig.setInitParameter("cors.allowOrigin", "http://example.com");
+
+		CORSFilter filter = new CORSFilter();
+		filter.init(filterConfig);
+
+		assertSame(filter.getMetrics(), filterConfig.getServletContext().getAttribute(CORSFilter.METRICS_ATTRIBUTE_PREFIX + "CORSFilter"));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://other.com");
+		request.setMethod("GET");
+		filter.doFilter(request, new MockServletResponse(), null);
+
+		CORSMetrics.Snapshot snapshot = filter.getMetrics().snapshot();
+		assertEquals(1, snapshot.getActualRequests());
+		assertEquals(1, snapshot.getOriginDenials());
+
+		// Replace the measured check latency with known samples
+		filter.getMetrics().reset();
+		filter.getMetrics().recordRequest(CORSRequestType.ACTUAL);
+		filter.getMetrics().recordDenial(new CORSOriginDeniedException("CORS origin denied", new Origin("http://other.com")));
+		filter.getMetrics().recordLatency(1000);
+		filter.getMetrics().recordLatency(1500);
+
+		CORSMetricsServlet servlet = createServlet(filterConfig.getServletContext());
+
+		MockServletResponse response = new MockServletResponse();
+		servlet.doGet(new MockServletRequest(), response);
+
+		assertEquals("text/plain; version=0.0.4; charset=utf-8", response.getContentType());
+
+		String body = new String(response.getBody(), "UTF-8");
+
+		assertTrue(body.startsWith("# HELP cors_requests_total "));
+		assertTrue(body.contains("cors_requests_total{filter=\"CORSFilter\",type=\"actual\"} 1\n"));
+		assertTrue(body.contains("cors_requests_total{filter=\"CORSFilter\",type=\"preflight\"} 0\n"));
+		assertTrue(body.contains("cors_denials_total{filter=\"CORSFilter\",cause=\"origin\"} 1\n"));
+		assertTrue(body.contains("# TYPE cors_check_duration_seconds histogram\n"));
+		assertTrue(body.contains("cors_check_duration_seconds_bucket{filter=\"CORSFilter\",le=\"0.000001024\"} 1\n"));
+		assertTrue(body.contains("cors_check_duration_seconds_bucket{filter=\"CORSFilter\",le=\"0.000002048\"} 2\n"));
+		assertTrue(body.contains("cors_check_duration_seconds_bucket{filter=\"CORSFilter\",le=\"+Inf\"} 2\n"));
+		assertTrue(body.contains("cors_check_duration_seconds_count{filter=\"CORSFilter\"} 2\n"));
+		assertTrue(body.contains("cors_check_duration_seconds_sum{filter=\"CORSFilter\"} 0.0000025\n"));
+		assertTrue(body.endsWith("\n"));
+
+		assertEquals(body.length(), response.getContentLength());
+
+		filter.destroy();
+
+		assertNull(filterConfig.getServletContext().getAttribute(CORSFilter.METRICS_ATTRIBUTE_PREFIX + "CORSFilter"));
+	}
+
+
+	public void testBufferGrowth()
+		throws Exception {
+
+		MockServletContext context = new MockServletContext();
+
+		for (int i = 0; i < 100; i++) {
+
+			CORSMetrics metrics = new CORSMetrics();
+			metrics.recordRequest(CORSRequestType.PREFLIGHT);
+			context.setAttribute(CORSFilter.METRICS_ATTRIBUTE_PREFIX + "filter-" + i, metrics);
+		}
+
+		CORSMetricsServlet servlet = createServlet(context);
+
+		MockServletResponse response = new MockServletResponse();
+		servlet.doGet(new MockServletRequest(), response);
+
+		String body = new String(response.getBody(), "UTF-8");
+
+		assertTrue(body.length() > 4096);
+		assertEquals(body.length(), response.getContentLength());
+
+		for (int i = 0; i < 100; i++) {
+			assertTrue(body.contains("cors_requests_total{filter=\"filter-" + i + "\",type=\"preflight\"} 1\n"));
+			assertTrue(body.contains("cors_check_duration_seconds_count{filter=\"filter-" + i + "\"} 0\n"));
+		}
+
+		assertTrue(body.endsWith("\n"));
+	}
+
+
+	public void testWriteException()
+		throws Exception {
+
+		final IOException exception = new IOException("Connection reset");
+
+		MockServletResponse response = new MockServletResponse() {
+
+			@Override
+			public ServletOutputStream getOutputStream() {
+				return new ServletOutputStream() {
+					@Override
+					public void write(int b)
+						throws IOException {
+						throw exception;
+					}
+				};
+			}
+		};
+
+		CORSMetricsServlet servlet = createServlet(new MockServletContext());
+
+		try {
+			servlet.doGet(new MockServletRequest(), response);
+			fail();
+		} catch (IOException e) {
+			assertSame(exception, e);
+		}
+	}
+}
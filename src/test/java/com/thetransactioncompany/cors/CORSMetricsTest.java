@@ -0,0 +1,135 @@
+package com.thetransactioncompany.cors;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the CORS metrics and the counter array.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSMetricsTest extends TestCase {
+
+
+	public void testLatencyBuckets() {
+
+		assertEquals(0, CORSMetrics.getLatencyBucket(-1));
+		assertEquals(0, CORSMetrics.getLatencyBucket(0));
+		assertEquals(0, CORSMetrics.getLatencyBucket(256));
+		assertEquals(1, CORSMetrics.getLatencyBucket(257));
+		assertEquals(1, CORSMetrics.getLatencyBucket(512));
+		assertEquals(2, CORSMetrics.getLatencyBucket(513));
+		assertEquals(15, CORSMetrics.getLatencyBucket(CORSMetrics.getLatencyBucketBound(15)));
+		assertEquals(16, CORSMetrics.getLatencyBucket(CORSMetrics.getLatencyBucketBound(15) + 1));
+		assertEquals(16, CORSMetrics.getLatencyBucket(Long.MAX_VALUE));
+
+		for (int i = 0; i < CORSMetrics.LATENCY_BUCKETS; i++) {
+
+			long bound = CORSMetrics.getLatencyBucketBound(i);
+			assertEquals(i, CORSMetrics.getLatencyBucket(bound));
+
+			if (i > 0)
+				assertTrue(bound > CORSMetrics.getLatencyBucketBound(i - 1));
+		}
+	}
+
+
+	public void testRecord() {
+
+		CORSMetrics metrics = new CORSMetrics();
+
+		metrics.recordRequest(CORSRequestType.ACTUAL);
+		metrics.recordRequest(CORSRequestType.PREFLIGHT);
+		metrics.recordRequest(CORSRequestType.PREFLIGHT);
+		metrics.recordRequest(CORSRequestType.OTHER);
+		metrics.recordBypass();
+		metrics.recordDenial(new CORSOriginDeniedException("CORS origin denied", new Origin("http://other.com")));
+		metrics.recordDenial(new UnsupportedHTTPHeaderException("Unsupported HTTP request header", "X-Other"));
+		metrics.recordDenial(new InvalidCORSRequestException("Invalid"));
+		metrics.recordLatency(100);
+		metrics.recordLatency(1000);
+		metrics.recordLatency(Long.MAX_VALUE / 2);
+
+		CORSMetrics.Snapshot snapshot = metrics.snapshot();
+
+		assertEquals(1, snapshot.getActualRequests());
+		assertEquals(2, snapshot.getPreflightRequests());
+		assertEquals(1, snapshot.getOtherRequests());
+		assertEquals(1, snapshot.getBypassedRequests());
+		assertEquals(1, snapshot.getOriginDenials());
+		assertEquals(1, snapshot.getHeaderDenials());
+		assertEquals(1, snapshot.getInvalidRequests());
+		assertEquals(0, snapshot.getMethodDenials());
+		assertEquals(3, snapshot.getDenials());
+
+		assertEquals(3, snapshot.getLatencyCount());
+		assertEquals(1100 + Long.MAX_VALUE / 2, snapshot.getLatencySum());
+		assertEquals(1, snapshot.getLatencyBucketCount(0));
+		assertEquals(1, snapshot.getLatencyBucketCount(2));
+		assertEquals(1, snapshot.getLatencyBucketCount(CORSMetrics.LATENCY_BUCKETS - 1));
+
+		// Snapshots are immutable
+		metrics.reset();
+
+		assertEquals(1, snapshot.getActualRequests());
+		assertEquals(0, metrics.snapshot().getActualRequests());
+		assertEquals(0, metrics.snapshot().getLatencyCount());
+	}
+
+
+	public void testCounterArraySize() {
+
+		assertEquals(1, new CounterArray(1).size());
+		assertEquals(3, new CounterArray(3).size());
+
+		try {
+			new CounterArray(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testConcurrentIncrements()
+		throws Exception {
+
+		final CounterArray counters = new CounterArray(3);
+
+		Thread[] threads = new Thread[8];
+
+		for (int t = 0; t < threads.length; t++) {
+
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						counters.increment(1);
+						counters.add(2, 2);
+					}
+				}
+			};
+
+			threads[t].start();
+		}
+
+		for (Thread thread: threads)
+			thread.join();
+
+		assertEquals(0, counters.sum(0));
+		assertEquals(80000, counters.sum(1));
+		assertEquals(160000, counters.sum(2));
+
+		long[] sums = new long[3];
+		counters.sumAll(sums);
+
+		assertEquals(0, sums[0]);
+		assertEquals(80000, sums[1]);
+		assertEquals(160000, sums[2]);
+
+		counters.reset();
+
+		assertEquals(0, counters.sum(1));
+	}
+}
@@ -2,7 +2,9 @@ package com.thetransactioncompany.cors;
 
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -113,6 +115,9 @@ public class CORSRequestHandlerTest extends TestCase {
 		} catch (CORSOriginDeniedException e) {
 			// ok
 			assertEquals("CORS origin denied", e.getMessage());
+
+			// Rejections are stackless
+			assertEquals(0, e.getStackTrace().length);
 		}
 	}
 
@@ -230,4 +235,465 @@ public class CORSRequestHandlerTest extends TestCase {
 
 		assertEquals("Authorization, Content-Type", response.getHeader("Access-Control-Allow-Headers"));
 	}
+
+
+	public void testOriginCache()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.originCache.size", "16");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		BoundedCache<String,OriginDecision> cache = handler.getOriginCache();
+		assertEquals(16, cache.getCapacity());
+
+		for (int i = 0; i < 3; i++) {
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", "http://example.com");
+
+			MockServletResponse response = new MockServletResponse();
+
+			handler.handleActualRequest(request, response);
+
+			assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+		}
+
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+
+		OriginDecision decision = cache.get("http://example.com");
+		assertTrue(decision.isAllowed());
+		assertEquals("example.com", decision.getCanonicalOrigin().getHost());
+
+		for (int i = 0; i < 2; i++) {
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", "http://other.com");
+
+			try {
+				handler.handleActualRequest(request, new MockServletResponse());
+				fail();
+			} catch (CORSOriginDeniedException e) {
+				assertEquals("http://other.com", e.getRequestOrigin().toString());
+			}
+		}
+
+		assertFalse(cache.get("http://other.com").isAllowed());
+	}
+
+
+	public void testOriginCardinality()
+		throws Exception {
+
+		for (String cacheSize: Arrays.asList("0", "16")) {
+
+			Properties props = new Properties();
+			props.setProperty("cors.allowOrigin", "http://example.com");
+			props.setProperty("cors.originCache.size", cacheSize);
+			props.setProperty("cors.countDistinctOrigins", "true");
+
+			OriginCardinality cardinality = new OriginCardinality();
+
+			CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props), cardinality);
+
+			for (String origin: Arrays.asList("http://example.com", "http://example.com", "http://a.com", "http://b.com", "http://a.com")) {
+
+				MockServletRequest request = new MockServletRequest();
+				request.setHeader("Origin", origin);
+				request.setMethod("GET");
+
+				try {
+					handler.handleActualRequest(request, new MockServletResponse());
+				} catch (CORSOriginDeniedException e) {
+					// ok
+				}
+			}
+
+			assertEquals(1L, cardinality.getAllowedCount());
+			assertEquals(2L, cardinality.getDeniedCount());
+		}
+	}
+
+
+	public void testOriginCardinalityDisabled()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+
+		OriginCardinality cardinality = new OriginCardinality();
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props), cardinality);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setMethod("GET");
+
+		handler.handleActualRequest(request, new MockServletResponse());
+
+		assertEquals(0L, cardinality.getAllowedCount());
+	}
+
+
+	public void testOriginCardinalityWithPreflightCache()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.preflightCache.size", "16");
+		props.setProperty("cors.countDistinctOrigins", "true");
+
+		final long windowLength = 200L;
+
+		OriginCardinality cardinality = new OriginCardinality(windowLength);
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props), cardinality);
+
+		for (int round = 0; round < 2; round++) {
+
+			// Start at the beginning of a fresh window, the second
+			// round with a warm preflight cache
+			long start = cardinality.getWindowStart() + windowLength;
+			Thread.sleep(Math.max(0L, start - System.currentTimeMillis()) + 10L);
+
+			for (String origin: Arrays.asList("http://example.com", "http://other.com")) {
+
+				MockServletRequest request = new MockServletRequest();
+				request.setMethod("OPTIONS");
+				request.setHeader("Origin", origin);
+				request.setHeader("Access-Control-Request-Method", "GET");
+
+				try {
+					handler.handlePreflightRequest(request, new MockServletResponse());
+				} catch (CORSOriginDeniedException e) {
+					// ok
+				}
+			}
+
+			assertEquals(1L, cardinality.getAllowedCount());
+			assertEquals(1L, cardinality.getDeniedCount());
+		}
+
+		assertEquals(2L, handler.getPreflightCache().getHits());
+	}
+
+
+	public void testOriginCacheDisabledByDefault()
+		throws Exception {
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(new Properties()));
+
+		assertNull(handler.getOriginCache());
+	}
+
+
+	public void testPreflightRequestWithRestrictedConfiguration()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com https://example.org");
+		props.setProperty("cors.allowSubdomains", "true");
+		props.setProperty("cors.supportedMethods", "GET");
+		props.setProperty("cors.supportedHeaders", "Content-Type");
+		props.setProperty("cors.supportsCredentials", "false");
+		props.setProperty("cors.maxAge", "3600");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		// Statically allowed origin and subdomain origin
+		for (String origin: new String[]{"https://example.org", "https://www.example.org"}) {
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", origin);
+			request.setHeader("Access-Control-Request-Method", "GET");
+			request.setMethod("OPTIONS");
+
+			MockServletResponse response = new MockServletResponse();
+
+			handler.handlePreflightRequest(request, response);
+
+			assertEquals(origin, response.getHeader("Access-Control-Allow-Origin"));
+			assertEquals("Origin", response.getHeader("Vary"));
+			assertEquals("3600", response.getHeader("Access-Control-Max-Age"));
+			assertEquals("GET", response.getHeader("Access-Control-Allow-Methods"));
+			assertEquals("Content-Type", response.getHeader("Access-Control-Allow-Headers"));
+			assertNull(response.getHeader("Access-Control-Allow-Credentials"));
+			assertEquals(5, response.getHeaders().size());
+		}
+	}
+
+
+	public void testActualRequestWithSubdomainOrigin()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.allowSubdomains", "true");
+
+		CORSConfiguration config = new CORSConfiguration(props);
+
+		CORSRequestHandler handler = new CORSRequestHandler(config);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://www.example.com");
+
+		MockServletResponse response = new MockServletResponse();
+
+		handler.handleActualRequest(request, response);
+
+		assertEquals("http://www.example.com", response.getHeader("Access-Control-Allow-Origin"));
+		assertEquals("Origin", response.getHeader("Vary"));
+		assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+		assertEquals(3, response.getHeaders().size());
+	}
+
+
+	public void testOriginSlotFilledPerRequest()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.preflightCache.size", "16");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		for (int i = 0; i < 4; i++) {
+
+			String origin = i % 2 == 0 ? "http://example.com" : "https://www.example.org:8080";
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", origin);
+			request.setHeader("Access-Control-Request-Method", "GET");
+			request.setMethod("OPTIONS");
+
+			MockServletResponse response = new MockServletResponse();
+
+			handler.handlePreflightRequest(request, response);
+
+			assertEquals(origin, response.getHeader("Access-Control-Allow-Origin"));
+			assertEquals("true", response.getHeader("Access-Control-Allow-Credentials"));
+			assertEquals("Origin", response.getHeader("Vary"));
+
+			request = new MockServletRequest();
+			request.setHeader("Origin", origin);
+
+			response = new MockServletResponse();
+
+			handler.handleActualRequest(request, response);
+
+			assertEquals(origin, response.getHeader("Access-Control-Allow-Origin"));
+			assertEquals(3, response.getHeaders().size());
+		}
+
+		assertEquals(2, handler.getPreflightCache().getHits());
+	}
+
+
+	public void testPreflightRequestHeaderChecks()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.supportedMethods", "GET POST");
+		props.setProperty("cors.supportedHeaders", "Content-Type X-Custom");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		MockServletRequest request = new MockServletRequest();
+		request.setHeader("Origin", "http://example.com");
+		request.setHeader("Access-Control-Request-Method", "POST");
+		request.setHeader("Access-Control-Request-Headers", "content-type, x-custom");
+		request.setMethod("OPTIONS");
+
+		MockServletResponse response = new MockServletResponse();
+
+		handler.handlePreflightRequest(request, response);
+
+		assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+
+		// Unsupported header
+		request.setHeader("Access-Control-Request-Headers", "content-type, x-other");
+
+		try {
+			handler.handlePreflightRequest(request, new MockServletResponse());
+			fail();
+		} catch (UnsupportedHTTPHeaderException e) {
+			assertEquals("X-Other", e.getRequestHeader());
+		}
+
+		// A bad header name takes precedence over an unsupported one
+		request.setHeader("Access-Control-Request-Headers", "x-other, x-b@d");
+
+		try {
+			handler.handlePreflightRequest(request, new MockServletResponse());
+			fail();
+		} catch (InvalidCORSRequestException e) {
+			// ok
+		}
+
+		// An unsupported method takes precedence over an unsupported header
+		request.setHeader("Access-Control-Request-Headers", "x-other");
+		request.setHeader("Access-Control-Request-Method", "DELETE");
+
+		try {
+			handler.handlePreflightRequest(request, new MockServletResponse());
+			fail();
+		} catch (UnsupportedHTTPMethodException e) {
+			assertEquals("DELETE", e.getRequestedMethod());
+		}
+	}
+
+
+	public void testPreflightCache()
+		throws Exception {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", "http://example.com");
+		props.setProperty("cors.supportedMethods", "GET POST");
+		props.setProperty("cors.supportedHeaders", "*");
+		props.setProperty("cors.preflightCache.size", "16");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(props));
+
+		BoundedCache<?,?> cache = handler.getPreflightCache();
+		assertEquals(16, cache.getCapacity());
+
+		for (int i = 0; i < 3; i++) {
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", "http://example.com");
+			request.setHeader("Access-Control-Request-Method", "POST");
+			request.setHeader("Access-Control-Request-Headers", "X-Custom");
+			request.setMethod("OPTIONS");
+
+			MockServletResponse response = new MockServletResponse();
+
+			handler.handlePreflightRequest(request, response);
+
+			assertEquals("http://example.com", response.getHeader("Access-Control-Allow-Origin"));
+			assertNotNull(response.getHeader("Access-Control-Allow-Methods"));
+
+			// The requested headers are echoed on every request
+			assertEquals("X-Custom", response.getHeader("Access-Control-Allow-Headers"));
+		}
+
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+
+		// Cached rejections are rethrown with their details
+		for (int i = 0; i < 2; i++) {
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", "http://example.com");
+			request.setHeader("Access-Control-Request-Method", "DELETE");
+			request.setMethod("OPTIONS");
+
+			try {
+				handler.handlePreflightRequest(request, new MockServletResponse());
+				fail();
+			} catch (UnsupportedHTTPMethodException e) {
+				assertEquals("DELETE", e.getRequestedMethod());
+			}
+		}
+
+		for (int i = 0; i < 2; i++) {
+
+			MockServletRequest request = new MockServletRequest();
+			request.setHeader("Origin", "http://other.com");
+			request.setHeader("Access-Control-Request-Method", "POST");
+			request.setMethod("OPTIONS");
+
+			try {
+				handler.handlePreflightRequest(request, new MockServletResponse());
+				fail();
+			} catch (CORSOriginDeniedException e) {
+				assertEquals("http://other.com", e.getRequestOrigin().toString());
+			}
+		}
+
+		assertEquals(3, cache.getMisses());
+		assertEquals(4, cache.getHits());
+	}
+
+
+	public void testPreflightCacheDisabledByDefault()
+		throws Exception {
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(new Properties()));
+
+		assertNull(handler.getPreflightCache());
+	}
+
+
+	public void testRequestViewAndResponseSink()
+		throws Exception {
+
+		Properties p = new Properties();
+		p.setProperty("cors.allowOrigin", "http://example.com");
+		p.setProperty("cors.supportedMethods", "GET, PUT");
+
+		CORSRequestHandler handler = new CORSRequestHandler(new CORSConfiguration(p));
+
+		final Map<String,String> requestHeaders = new HashMap<String,String>();
+		requestHeaders.put("Origin", "http://example.com");
+		requestHeaders.put("Access-Control-Request-Method", "PUT");
+
+		CORSRequestView request = new CORSRequestView() {
+
+			@Override
+			public String getMethod() {
+				return "OPTIONS";
+			}
+
+			@Override
+			public String getScheme() {
+				return "http";
+			}
+
+			@Override
+			public String getHeader(final String name) {
+				return requestHeaders.get(name);
+			}
+		};
+
+		final Map<String,String> responseHeaders = new HashMap<String,String>();
+
+		CORSResponseSink response = new CORSResponseSink() {
+
+			@Override
+			public void setHeader(final String name, final String value) {
+				responseHeaders.put(name, value);
+			}
+
+			@Override
+			public void addHeader(final String name, final String value) {
+				String previous = responseHeaders.get(name);
+				responseHeaders.put(name, previous != null ? previous + ", " + value : value);
+			}
+		};
+
+		assertEquals(CORSRequestType.PREFLIGHT, CORSRequestType.detect(request));
+
+		CORSRequestContext context = CORSRequestContext.create(request);
+		assertEquals(CORSRequestType.PREFLIGHT, context.getType());
+
+		handler.handlePreflightRequest(context, response);
+
+		assertEquals("http://example.com", responseHeaders.get("Access-Control-Allow-Origin"));
+		assertNotNull(responseHeaders.get("Access-Control-Allow-Methods"));
+
+		requestHeaders.put("Origin", "http://other.com");
+
+		try {
+			handler.handlePreflightRequest(CORSRequestContext.create(request), response);
+			fail();
+		} catch (CORSOriginDeniedException e) {
+			assertEquals("http://other.com", e.getRequestOrigin().toString());
+		}
+	}
 }
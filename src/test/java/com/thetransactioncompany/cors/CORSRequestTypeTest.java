@@ -0,0 +1,183 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the CORS request type detection.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class CORSRequestTypeTest extends TestCase {
+
+
+	public void testOther() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setScheme("https");
+		request.setHeader("Host", "api.example.com");
+
+		assertEquals(CORSRequestType.OTHER, CORSRequestType.detect(request));
+	}
+
+
+	public void testSameOrigin() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setScheme("https");
+		request.setHeader("Host", "api.example.com:8443");
+		request.setHeader("Origin", "https://api.example.com:8443");
+		request.setMethod("POST");
+
+		assertEquals(CORSRequestType.OTHER, CORSRequestType.detect(request));
+	}
+
+
+	public void testSameOriginCheck() {
+
+		assertTrue(CORSRequestType.isSameOrigin("http://example.com", "http", "example.com"));
+		assertTrue(CORSRequestType.isSameOrigin("null://example.com", "null", "example.com"));
+
+		assertFalse(CORSRequestType.isSameOrigin("https://example.com", "http", "example.com"));
+		assertFalse(CORSRequestType.isSameOrigin("http://example.com", "https", "example.com"));
+		assertFalse(CORSRequestType.isSameOrigin("http://example.com:8080", "http", "example.com"));
+		assertFalse(CORSRequestType.isSameOrigin("http://example.co", "http", "example.com"));
+		assertFalse(CORSRequestType.isSameOrigin("http:/xexample.com", "http", "example.com"));
+		assertFalse(CORSRequestType.isSameOrigin("http://EXAMPLE.com", "http", "example.com"));
+	}
+
+
+	public void testActual() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setScheme("https");
+		request.setHeader("Host", "api.example.com");
+		request.setHeader("Origin", "https://www.example.com");
+		request.setMethod("POST");
+
+		assertEquals(CORSRequestType.ACTUAL, CORSRequestType.detect(request));
+
+		// No Host header
+		request.setHeader("Host", null);
+
+		assertEquals(CORSRequestType.ACTUAL, CORSRequestType.detect(request));
+
+		// OPTIONS without Access-Control-Request-Method
+		request.setMethod("OPTIONS");
+
+		assertEquals(CORSRequestType.ACTUAL, CORSRequestType.detect(request));
+	}
+
+
+	public void testPreflight() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setScheme("https");
+		request.setHeader("Host", "api.example.com");
+		request.setHeader("Origin", "https://www.example.com");
+		request.setHeader("Access-Control-Request-Method", "PUT");
+		request.setMethod("options");
+
+		assertEquals(CORSRequestType.PREFLIGHT, CORSRequestType.detect(request));
+	}
+
+
+	public void testContext() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setScheme("https");
+		request.setHeader("Host", "api.example.com");
+
+		CORSRequestContext context = CORSRequestContext.create(request);
+		assertEquals(CORSRequestType.OTHER, context.getType());
+		assertNull(context.getOrigin());
+
+		request.setHeader("Origin", "https://www.example.com");
+		request.setHeader("Access-Control-Request-Method", "PUT");
+		request.setHeader("Access-Control-Request-Headers", "Content-Type");
+		request.setMethod("POST");
+
+		context = CORSRequestContext.create(request);
+		assertEquals(CORSRequestType.ACTUAL, context.getType());
+		assertEquals("https://www.example.com", context.getOrigin());
+		assertEquals("POST", context.getMethod());
+		assertNull(context.getRequestedMethod());
+		assertNull(context.getRequestedHeaders());
+
+		request.setMethod("OPTIONS");
+
+		context = CORSRequestContext.create(request);
+		assertEquals(CORSRequestType.PREFLIGHT, context.getType());
+		assertEquals("https://www.example.com", context.getOrigin());
+		assertEquals("OPTIONS", context.getMethod());
+		assertEquals("PUT", context.getRequestedMethod());
+		assertEquals("Content-Type", context.getRequestedHeaders());
+	}
+
+
+	public void testDetectionPathsAgree() {
+
+		MockServletRequest request = new MockServletRequest();
+		request.setScheme("https");
+		request.setMethod("OPTIONS");
+
+		String[][] headers = {
+			{ null, null, null },
+			{ "api.example.com", null, null },
+			{ "api.example.com", "https://api.example.com", "PUT" },
+			{ "api.example.com", "https://www.example.com", null },
+			{ "api.example.com", "https://www.example.com", "PUT" },
+			{ null, "https://www.example.com", "PUT" }
+		};
+
+		for (String[] h: headers) {
+
+			request.setHeader("Host", h[0]);
+			request.setHeader("Origin", h[1]);
+			request.setHeader("Access-Control-Request-Method", h[2]);
+
+			CORSRequestType type = CORSRequestContext.create(request).getType();
+
+			assertEquals(type, CORSRequestType.detect(request));
+			assertEquals(type, CORSRequestType.detect(new ServletRequestView(request)));
+		}
+	}
+
+
+	public void testTagSink() {
+
+		final Map<String,Object> attributes = new HashMap<String,Object>();
+
+		CORSRequestTagSink sink = new CORSRequestTagSink() {
+
+			@Override
+			public void setAttribute(final String name, final Object value) {
+				attributes.put(name, value);
+			}
+		};
+
+		RequestTagger.tag(sink, new CORSRequestContext(CORSRequestType.OTHER, null, null, null, null));
+		assertEquals(false, attributes.get("cors.isCorsRequest"));
+		assertEquals(1, attributes.size());
+
+		attributes.clear();
+
+		RequestTagger.tag(sink, new CORSRequestContext(CORSRequestType.PREFLIGHT, "https://www.example.com", "OPTIONS", "PUT", "Content-Type"));
+		assertEquals(true, attributes.get("cors.isCorsRequest"));
+		assertEquals("https://www.example.com", attributes.get("cors.origin"));
+		assertEquals("preflight", attributes.get("cors.requestType"));
+		assertEquals("Content-Type", attributes.get("cors.requestHeaders"));
+
+		attributes.clear();
+
+		RequestTagger.tag(sink, new CORSRequestContext(CORSRequestType.ACTUAL, "https://www.example.com", "GET", null, null));
+		assertEquals(true, attributes.get("cors.isCorsRequest"));
+		assertEquals("https://www.example.com", attributes.get("cors.origin"));
+		assertEquals("actual", attributes.get("cors.requestType"));
+		assertFalse(attributes.containsKey("cors.requestHeaders"));
+	}
+}
@@ -0,0 +1,150 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the denied origin tracker.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class DeniedOriginTrackerTest extends TestCase {
+
+
+	public void testEmpty() {
+
+		DeniedOriginTracker tracker = new DeniedOriginTracker();
+
+		assertTrue(tracker.getTopOrigins().isEmpty());
+		assertEquals(0L, tracker.estimate("http://example.com"));
+	}
+
+
+	public void testInvalidK() {
+
+		try {
+			new DeniedOriginTracker(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testHeavyHitters() {
+
+		DeniedOriginTracker tracker = new DeniedOriginTracker(4);
+
+		List<String> origins = new ArrayList<String>();
+
+		// Interleave three heavy hitters with many one-off origins
+		for (int i = 0; i < 10000; i++) {
+
+			String origin = "http://scan" + i + ".example.com";
+			origins.add(origin);
+			tracker.record(origin);
+
+			if (i % 10 == 0)
+				tracker.record("http://a.com");
+
+			if (i % 20 == 0)
+				tracker.record("http://b.com");
+
+			if (i % 40 == 0)
+				tracker.record("http://c.com");
+		}
+
+		Map<String,Long> top = tracker.getTopOrigins();
+
+		assertEquals(4, top.size());
+
+		List<String> keys = new ArrayList<String>(top.keySet());
+		assertEquals("http://a.com", keys.get(0));
+		assertEquals("http://b.com", keys.get(1));
+		assertEquals("http://c.com", keys.get(2));
+
+		assertTrue(top.get("http://a.com") >= 1000L);
+		assertTrue(top.get("http://b.com") >= 500L);
+		assertTrue(top.get("http://c.com") >= 250L);
+
+		// Estimates never undercount
+		for (String origin: origins)
+			assertTrue(tracker.estimate(origin) >= 1L);
+
+		assertTrue(tracker.estimate("http://a.com") >= 1000L);
+	}
+
+
+	public void testEqualHashCodes() {
+
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		// Strings with equal hash codes, built from "Aa" and "BB" blocks
+		List<String> colliding = new ArrayList<String>();
+
+		for (int i = 0; i < 64; i++) {
+
+			StringBuilder sb = new StringBuilder("http://");
+
+			for (int bit = 0; bit < 6; bit++)
+				sb.append((i & (1 << bit)) != 0 ? "BB" : "Aa");
+
+			colliding.add(sb.append(".com").toString());
+		}
+
+		for (String origin: colliding)
+			assertEquals(colliding.get(0).hashCode(), origin.hashCode());
+
+		DeniedOriginTracker tracker = new DeniedOriginTracker();
+
+		for (int i = 0; i < 100; i++)
+			tracker.record(colliding.get(0));
+
+		assertEquals(100L, tracker.estimate(colliding.get(0)));
+
+		// Each other origin collides in all rows with a chance of
+		// 1 / 1024^4 only
+		for (String origin: colliding.subList(1, colliding.size()))
+			assertEquals(0L, tracker.estimate(origin));
+	}
+
+
+	public void testReset() {
+
+		DeniedOriginTracker tracker = new DeniedOriginTracker();
+
+		tracker.record("http://example.com");
+		tracker.record("http://example.com");
+
+		assertEquals(2L, tracker.estimate("http://example.com"));
+		assertEquals(1, tracker.getTopOrigins().size());
+
+		tracker.reset();
+
+		assertEquals(0L, tracker.estimate("http://example.com"));
+		assertTrue(tracker.getTopOrigins().isEmpty());
+	}
+
+
+	public void testMetricsRecordOriginDenials() {
+
+		CORSMetrics metrics = new CORSMetrics();
+
+		Origin origin = new Origin("http://example.com");
+
+		metrics.recordDenial(new CORSOriginDeniedException("denied", origin));
+		metrics.recordDenial(new CORSOriginDeniedException("denied", origin));
+		metrics.recordDenial(new InvalidCORSRequestException("invalid"));
+
+		assertEquals(2L, metrics.getDeniedOrigins().getTopOrigins().get("http://example.com").longValue());
+
+		metrics.reset();
+
+		assertTrue(metrics.getDeniedOrigins().getTopOrigins().isEmpty());
+	}
+}
@@ -0,0 +1,78 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the header name matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class HeaderMatcherTest extends TestCase {
+
+
+	private static boolean matches(final HeaderMatcher m, final String name) {
+
+		return m.matches(name, 0, name.length());
+	}
+
+
+	public void testEmpty() {
+
+		HeaderMatcher m = new HeaderMatcher(Collections.<String>emptySet());
+
+		assertFalse(matches(m, "Content-Type"));
+		assertFalse(matches(m, ""));
+	}
+
+
+	public void testMatches() {
+
+		HeaderMatcher m = new HeaderMatcher(Arrays.asList("Content-Type", "X-Requested-With", "Authorization", "X-Requested-With"));
+
+		assertTrue(matches(m, "Content-Type"));
+		assertTrue(matches(m, "content-type"));
+		assertTrue(matches(m, "X-REQUESTED-WITH"));
+		assertTrue(matches(m, "authorization"));
+
+		assertFalse(matches(m, "Content-Length"));
+		assertFalse(matches(m, "Content-Type2"));
+		assertFalse(matches(m, "X-Requested"));
+		assertFalse(matches(m, ""));
+	}
+
+
+	public void testMatchesRegion() {
+
+		HeaderMatcher m = new HeaderMatcher(Arrays.asList("Content-Type", "X-Custom"));
+
+		String value = "content-type, x-custom,x-other";
+
+		assertTrue(m.matches(value, 0, 12));
+		assertTrue(m.matches(value, 14, 22));
+		assertFalse(m.matches(value, 23, 30));
+		assertFalse(m.matches(value, 0, 11));
+	}
+
+
+	public void testManyHeaders() {
+
+		List<String> headers = new ArrayList<String>();
+
+		for (int i = 0; i < 1000; i++)
+			headers.add("X-Header-" + i);
+
+		HeaderMatcher m = new HeaderMatcher(headers);
+
+		for (int i = 0; i < 1000; i++)
+			assertTrue(matches(m, "x-header-" + i));
+
+		assertFalse(matches(m, "X-Header-1000"));
+	}
+}
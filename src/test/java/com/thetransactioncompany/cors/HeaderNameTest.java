@@ -81,6 +81,42 @@ public class HeaderNameTest extends TestCase {
 	}
 
 
+	public void testFormatCanonicalWellKnown() {
+
+		String expected = "Content-Type";
+
+		assertSame(HeaderName.formatCanonical("content-type"), HeaderName.formatCanonical("CONTENT-TYPE"));
+		assertEquals(expected, HeaderName.formatCanonical(" content-TYPE "));
+
+		assertEquals("X-Requested-With", HeaderName.formatCanonical("x-requested-with"));
+		assertEquals("Authorization", HeaderName.formatCanonical("AUTHORIZATION"));
+	}
+
+
+	public void testFormatCanonicalAlreadyCanonical() {
+
+		String name = new String("X-Custom-Header");
+
+		assertSame(name, HeaderName.formatCanonical(name));
+	}
+
+
+	public void testFormatCanonicalMultipleTokens() {
+
+		assertEquals("X-Custom-App-Header", HeaderName.formatCanonical("x-CUSTOM-app-hEADER"));
+		assertEquals("A-B", HeaderName.formatCanonical("a-b"));
+		assertEquals("A--B", HeaderName.formatCanonical("a--b"));
+		assertEquals("-A", HeaderName.formatCanonical("-a"));
+	}
+
+
+	public void testFormatCanonicalRegion() {
+
+		assertEquals("X-Custom", HeaderName.formatCanonical("a, x-custom, b", 3, 11));
+		assertSame("Content-Type", HeaderName.formatCanonical("a,content-type", 2, 14));
+	}
+
+
 	public void testInvalid1() {
 		assertInvalid("X-r@b");
 	}
@@ -176,4 +212,15 @@ public class HeaderNameTest extends TestCase {
 
 	}
 
+
+
+	public void testIsToken() {
+
+		String value = "X-Custom, x-b@d";
+
+		assertTrue(HeaderName.isToken(value, 0, 8));
+		assertFalse(HeaderName.isToken(value, 0, 9));
+		assertFalse(HeaderName.isToken(value, 10, 15));
+		assertFalse(HeaderName.isToken(value, 3, 3));
+	}
 }
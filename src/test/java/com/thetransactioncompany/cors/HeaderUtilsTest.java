@@ -1,7 +1,11 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -64,4 +68,60 @@ public class HeaderUtilsTest extends TestCase {
 		assertEquals(3, out.length);
 	}
 
+
+	public void testParseMultipleHeaderValuesEmptyTokens() {
+
+		assertEquals(0, HeaderUtils.parseMultipleHeaderValues("").length);
+		assertEquals(0, HeaderUtils.parseMultipleHeaderValues(" , ,").length);
+
+		String[] out = HeaderUtils.parseMultipleHeaderValues("a,,b");
+
+		assertEquals(Arrays.asList("a", "", "b"), Arrays.asList(out));
+
+		out = HeaderUtils.parseMultipleHeaderValues(",a, b,");
+
+		assertEquals(Arrays.asList("", "a", "b"), Arrays.asList(out));
+	}
+
+
+	public void testParseMultipleHeaderValuesMatchesRegexSplit() {
+
+		final char[] alphabet = {'a', 'B', ' ', ' ', ',', '\t', '-'};
+
+		Random random = new Random(42);
+
+		for (int n = 0; n < 10000; n++) {
+
+			char[] c = new char[random.nextInt(12)];
+
+			for (int i = 0; i < c.length; i++)
+				c[i] = alphabet[random.nextInt(alphabet.length)];
+
+			String value = new String(c);
+
+			String trimmed = value.trim();
+
+			String[] expected = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s*,\\s*|\\s+");
+
+			assertEquals("[" + value + "]", Arrays.asList(expected), Arrays.asList(HeaderUtils.parseMultipleHeaderValues(value)));
+		}
+	}
+
+
+	public void testTokenizeStop() {
+
+		final List<String> tokens = new ArrayList<String>();
+
+		HeaderUtils.tokenize("a, b, c", new HeaderUtils.TokenHandler() {
+
+			@Override
+			public boolean handleToken(final String value, final int begin, final int end) {
+
+				tokens.add(value.substring(begin, end));
+				return tokens.size() < 2;
+			}
+		});
+
+		assertEquals(Arrays.asList("a", "b"), tokens);
+	}
 }
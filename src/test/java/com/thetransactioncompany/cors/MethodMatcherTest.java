@@ -0,0 +1,62 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the HTTP method matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class MethodMatcherTest extends TestCase {
+
+
+	public void testIndexOf() {
+
+		String[] methods = { "GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE", "CONNECT", "PATCH" };
+
+		for (int i = 0; i < methods.length; i++) {
+
+			assertEquals(i, MethodMatcher.indexOf(methods[i]));
+			assertEquals(i, MethodMatcher.indexOf(methods[i].toLowerCase()));
+		}
+
+		assertEquals(-1, MethodMatcher.indexOf(""));
+		assertEquals(-1, MethodMatcher.indexOf("GOT"));
+		assertEquals(-1, MethodMatcher.indexOf("PROPFIND"));
+		assertEquals(-1, MethodMatcher.indexOf("REMOVE"));
+	}
+
+
+	public void testEmpty() {
+
+		MethodMatcher m = new MethodMatcher(Collections.<String>emptySet());
+
+		assertFalse(m.matches("GET"));
+		assertFalse(m.matches("PROPFIND"));
+		assertFalse(m.matches(null));
+	}
+
+
+	public void testMatches() {
+
+		MethodMatcher m = new MethodMatcher(Arrays.asList("GET", "POST", "OPTIONS", "PROPFIND"));
+
+		assertTrue(m.matches("GET"));
+		assertTrue(m.matches("get"));
+		assertTrue(m.matches("Post"));
+		assertTrue(m.matches("OPTIONS"));
+		assertTrue(m.matches("PROPFIND"));
+		assertTrue(m.matches("propfind"));
+
+		assertFalse(m.matches("PUT"));
+		assertFalse(m.matches("DELETE"));
+		assertFalse(m.matches("PATCH"));
+		assertFalse(m.matches("MKCOL"));
+		assertFalse(m.matches(""));
+	}
+}
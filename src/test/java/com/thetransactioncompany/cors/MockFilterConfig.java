@@ -1,7 +1,10 @@
 package com.thetransactioncompany.cors;
 
 
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
@@ -15,6 +18,18 @@ import javax.servlet.ServletContext;
 class MockFilterConfig implements FilterConfig {
 
 
+	private final Map<String,String> initParameters = new HashMap<String,String>();
+
+
+	private final MockServletContext servletContext = new MockServletContext();
+
+
+	public void setInitParameter(final String name, final String value) {
+
+		initParameters.put(name, value);
+	}
+
+
 	@Override
 	public String getFilterName() {
 
@@ -25,20 +40,20 @@ class MockFilterConfig implements FilterConfig {
 	@Override
 	public String getInitParameter(final String name) {
 
-		return null;
+		return initParameters.get(name);
 	}
 
 
 	@Override
 	public Enumeration getInitParameterNames() {
 
-		return null;
+		return Collections.enumeration(initParameters.keySet());
 	}
 
 
 	@Override
-	public ServletContext getServletContext() {
+	public MockServletContext getServletContext() {
 
-		return new MockServletContext();
+		return servletContext;
 	}
-}
\ No newline at end of file
+}
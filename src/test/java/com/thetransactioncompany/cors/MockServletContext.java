@@ -6,8 +6,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.EventListener;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -23,6 +27,18 @@ import javax.servlet.descriptor.JspConfigDescriptor;
 public class MockServletContext implements ServletContext {
 
 
+	private final List<String> logMessages = new ArrayList<String>();
+
+
+	private final Map<String,Object> attributes = new HashMap<String,Object>();
+
+
+	public List<String> getLogMessages() {
+
+		return logMessages;
+	}
+
+
 	@Override
 	public String getContextPath() {
 		return null;
@@ -123,6 +139,7 @@ public class MockServletContext implements ServletContext {
 	@Override
 	public void log(String s) {
 
+		logMessages.add(s);
 	}
 
 
@@ -135,6 +152,7 @@ public class MockServletContext implements ServletContext {
 	@Override
 	public void log(String s, Throwable throwable) {
 
+		logMessages.add(s);
 	}
 
 
@@ -170,25 +188,25 @@ public class MockServletContext implements ServletContext {
 
 	@Override
 	public Object getAttribute(String s) {
-		return null;
+		return attributes.get(s);
 	}
 
 
 	@Override
 	public Enumeration getAttributeNames() {
-		return null;
+		return Collections.enumeration(attributes.keySet());
 	}
 
 
 	@Override
 	public void setAttribute(String s, Object o) {
-
+		attributes.put(s, o);
 	}
 
 
 	@Override
 	public void removeAttribute(String s) {
-
+		attributes.remove(s);
 	}
 
 
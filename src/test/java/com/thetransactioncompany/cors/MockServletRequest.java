@@ -93,6 +93,24 @@ public class MockServletRequest implements HttpServletRequest {
 	private String method = "GET";
 
 
+	private String scheme = null;
+
+
+	private String serverName = null;
+
+
+	private String contextPath = "";
+
+
+	private String requestURI = null;
+
+
+	private String servletPath = "";
+
+
+	private String pathInfo = null;
+
+
 	private final Map<String,String> headers = new HashMap<String, String>();
 
 
@@ -150,7 +168,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getPathInfo() {
-		return null;
+		return pathInfo;
+	}
+
+	public void setPathInfo(final String pathInfo) {
+
+		this.pathInfo = pathInfo;
 	}
 
 	@Override
@@ -160,7 +183,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getContextPath() {
-		return null;
+		return contextPath;
+	}
+
+	public void setContextPath(final String contextPath) {
+
+		this.contextPath = contextPath;
 	}
 
 	@Override
@@ -190,7 +218,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getRequestURI() {
-		return null;
+		return requestURI;
+	}
+
+	public void setRequestURI(final String requestURI) {
+
+		this.requestURI = requestURI;
 	}
 
 	@Override
@@ -200,7 +233,12 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getServletPath() {
-		return null;
+		return servletPath;
+	}
+
+	public void setServletPath(final String servletPath) {
+
+		this.servletPath = servletPath;
 	}
 
 	@Override
@@ -294,12 +332,22 @@ public class MockServletRequest implements HttpServletRequest {
 
 	@Override
 	public String getScheme() {
-		return null;
+		return scheme;
+	}
+
+	public void setScheme(final String scheme) {
+
+		this.scheme = scheme;
 	}
 
 	@Override
 	public String getServerName() {
-		return null;
+		return serverName;
+	}
+
+	public void setServerName(final String serverName) {
+
+		this.serverName = serverName;
 	}
 
 	@Override
@@ -1,6 +1,7 @@
 package com.thetransactioncompany.cors;
 
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
@@ -27,6 +28,27 @@ public class MockServletResponse implements HttpServletResponse {
 	private final Map<String,String> headers = new HashMap<String, String>();
 
 
+	private String contentType;
+
+
+	private int contentLength = -1;
+
+
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+
+	public int getContentLength() {
+
+		return contentLength;
+	}
+
+
+	public byte[] getBody() {
+
+		return body.toByteArray();
+	}
+
+
 	@Override
 	public void addCookie(Cookie cookie) {
 	}
@@ -131,6 +153,7 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public void setStatus(int i) {
+		status = i;
 	}
 
 	@Override
@@ -144,12 +167,17 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public String getContentType() {
-		return null;
+		return contentType;
 	}
 
 	@Override
 	public ServletOutputStream getOutputStream() throws IOException {
-		return null;
+		return new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				body.write(b);
+			}
+		};
 	}
 
 	@Override
@@ -163,10 +191,12 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public void setContentLength(int i) {
+		contentLength = i;
 	}
 
 	@Override
 	public void setContentType(String s) {
+		contentType = s;
 	}
 
 	@Override
@@ -184,6 +214,7 @@ public class MockServletResponse implements HttpServletResponse {
 
 	@Override
 	public void resetBuffer() {
+		body.reset();
 	}
 
 	@Override
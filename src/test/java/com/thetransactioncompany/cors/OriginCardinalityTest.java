@@ -0,0 +1,109 @@
+package com.thetransactioncompany.cors;
+
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the distinct origin estimator and the HyperLogLog sketch.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginCardinalityTest extends TestCase {
+
+
+	public void testHyperLogLogEmpty() {
+
+		assertEquals(0L, new HyperLogLog(0L).estimate());
+	}
+
+
+	public void testHyperLogLogDuplicates() {
+
+		HyperLogLog hll = new HyperLogLog(1L);
+
+		for (int i = 0; i < 1000; i++)
+			hll.add("http://example.com");
+
+		assertEquals(1L, hll.estimate());
+	}
+
+
+	public void testHyperLogLogAccuracy() {
+
+		for (int n: new int[]{ 100, 1000, 10000, 100000, 1000000 }) {
+
+			HyperLogLog hll = new HyperLogLog(n);
+
+			for (int i = 0; i < n; i++)
+				hll.add("http://host" + i + ".example.com");
+
+			// Standard error about 1.6%, allow for 5 sigma
+			double error = Math.abs(hll.estimate() - n) / (double)n;
+			assertTrue("n=" + n + " error=" + error, error < 0.08);
+		}
+	}
+
+
+	public void testInvalidWindowLength() {
+
+		try {
+			new OriginCardinality(0L);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// ok
+		}
+	}
+
+
+	public void testAllowedAndDenied() {
+
+		OriginCardinality cardinality = new OriginCardinality();
+
+		assertEquals(OriginCardinality.DEFAULT_WINDOW_LENGTH, cardinality.getWindowLength());
+
+		cardinality.record("http://example.com", true);
+		cardinality.record("http://example.com", true);
+		cardinality.record("http://a.com", false);
+		cardinality.record("http://b.com", false);
+
+		assertEquals(1L, cardinality.getAllowedCount());
+		assertEquals(2L, cardinality.getDeniedCount());
+
+		cardinality.reset();
+
+		assertEquals(0L, cardinality.getAllowedCount());
+		assertEquals(0L, cardinality.getDeniedCount());
+		assertEquals(0L, cardinality.getPreviousAllowedCount());
+	}
+
+
+	public void testWindowRotation() {
+
+		final long hour = OriginCardinality.DEFAULT_WINDOW_LENGTH;
+
+		OriginCardinality cardinality = new OriginCardinality();
+
+		final long start = cardinality.getWindowStart();
+
+		cardinality.record("http://a.com", true, start);
+		cardinality.record("http://b.com", false, start + 1000L);
+
+		// Next hour
+		cardinality.record("http://c.com", true, start + hour);
+		cardinality.record("http://d.com", true, start + hour);
+
+		assertEquals(2L, cardinality.estimate(true, false, start + hour));
+		assertEquals(0L, cardinality.estimate(false, false, start + hour));
+		assertEquals(1L, cardinality.estimate(true, true, start + hour));
+		assertEquals(1L, cardinality.estimate(false, true, start + hour));
+
+		// Clock adjusted back, no rotation
+		cardinality.record("http://e.com", true, start);
+		assertEquals(3L, cardinality.estimate(true, false, start + hour));
+
+		// Idle hour, the previous window is no longer adjacent
+		assertEquals(0L, cardinality.estimate(true, false, start + 3 * hour));
+		assertEquals(0L, cardinality.estimate(true, true, start + 3 * hour));
+	}
+}
@@ -0,0 +1,107 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the origin pattern matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class OriginPatternMatcherTest extends TestCase {
+
+
+	public void testEmpty() {
+
+		OriginPatternMatcher m = new OriginPatternMatcher(Collections.<String>emptySet());
+
+		assertFalse(m.matches("https://example.com"));
+		assertFalse(m.matches(""));
+	}
+
+
+	public void testSubdomainWildcard() {
+
+		OriginPatternMatcher m = new OriginPatternMatcher(Arrays.asList("https://*.preview.example.com"));
+
+		assertTrue(m.matches("https://pr-1234.preview.example.com"));
+		assertTrue(m.matches("HTTPS://PR-1234.Preview.Example.com"));
+
+		// Exactly one label
+		assertFalse(m.matches("https://preview.example.com"));
+		assertFalse(m.matches("https://.preview.example.com"));
+		assertFalse(m.matches("https://a.b.preview.example.com"));
+
+		assertFalse(m.matches("http://pr-1234.preview.example.com"));
+		assertFalse(m.matches("https://pr-1234.preview.example.com:8443"));
+		assertFalse(m.matches("https://pr-1234.preview.example.com.evil.com"));
+		assertFalse(m.matches("https://pr_1234.preview.example.com"));
+	}
+
+
+	public void testPortWildcard() {
+
+		OriginPatternMatcher m = new OriginPatternMatcher(Arrays.asList("http://localhost:*"));
+
+		assertTrue(m.matches("http://localhost:8080"));
+		assertTrue(m.matches("http://localhost:3000"));
+
+		assertFalse(m.matches("http://localhost"));
+		assertFalse(m.matches("http://localhost:"));
+		assertFalse(m.matches("http://localhost:8080/"));
+		assertFalse(m.matches("http://localhost.evil.com:8080"));
+	}
+
+
+	public void testWildcardWithinLabel() {
+
+		OriginPatternMatcher m = new OriginPatternMatcher(Arrays.asList("https://app-*.example.com", "https://*-api.example.com:*"));
+
+		assertTrue(m.matches("https://app-staging.example.com"));
+		assertTrue(m.matches("https://app-api.example.com:443"));
+		assertTrue(m.matches("https://app--api.example.com:1"));
+		assertTrue(m.matches("https://x-api.example.com:8443"));
+
+		assertFalse(m.matches("https://app-.example.com"));
+		assertFalse(m.matches("https://-api.example.com:8443"));
+		assertFalse(m.matches("https://app-api.example.com:"));
+	}
+
+
+	public void testManyPatterns() {
+
+		List<String> patterns = new ArrayList<String>();
+
+		for (int i = 0; i < 1000; i++)
+			patterns.add("https://*.customer" + i + ".example.com");
+
+		OriginPatternMatcher m = new OriginPatternMatcher(patterns);
+
+		assertTrue(m.matches("https://www.customer0.example.com"));
+		assertTrue(m.matches("https://app.customer999.example.com"));
+		assertFalse(m.matches("https://app.customer1000.example.com"));
+		assertFalse(m.matches("https://customer1.example.com"));
+	}
+
+
+	public void testBadPatterns() {
+
+		String[] patterns = { "*.example.com", "*://example.com", "http://**.example.com", "http://ex ample.*" };
+
+		for (String pattern: patterns) {
+
+			try {
+				new OriginPatternMatcher(Arrays.asList(pattern));
+				fail(pattern);
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the policy router.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class PolicyRouterTest extends TestCase {
+
+
+	private static CORSConfiguration config(final String allowOrigin)
+		throws CORSConfigurationException {
+
+		Properties props = new Properties();
+		props.setProperty("cors.allowOrigin", allowOrigin);
+		return new CORSConfiguration(props);
+	}
+
+
+	public void testDefaultOnly()
+		throws Exception {
+
+		Map<String,CORSConfiguration> none = Collections.emptyMap();
+
+		PolicyRouter router = new PolicyRouter(config("http://example.com"), none, none);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setRequestURI("/static/app.js");
+		request.setServerName("example.com");
+
+		assertSame(router.getDefaultHandler(), router.select(request));
+	}
+
+
+	public void testPathPolicies()
+		throws Exception {
+
+		Map<String,CORSConfiguration> hostConfigs = new HashMap<String,CORSConfiguration>();
+		hostConfigs.put("tenant.example.com", config("http://tenant.com"));
+
+		Map<String,CORSConfiguration> pathConfigs = new HashMap<String,CORSConfiguration>();
+		pathConfigs.put("/api/", config("http://api.com"));
+		pathConfigs.put("/api/partner/", config("http://partner.com"));
+		pathConfigs.put("/static/", null);
+
+		PolicyRouter router = new PolicyRouter(config("http://example.com"), hostConfigs, pathConfigs);
+
+		MockServletRequest request = new MockServletRequest();
+		request.setContextPath("/app");
+		request.setServerName("tenant.example.com");
+
+		// Longest prefix
+		request.setServletPath("/api/partner/orders");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://partner.com")));
+
+		request.setServletPath("/api/public/orders");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://api.com")));
+
+		// Prefix without the trailing slash
+		request.setServletPath("/api/partner");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://partner.com")));
+
+		// Servlet path and path info
+		request.setServletPath("/api");
+		request.setPathInfo("/partner/orders");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://partner.com")));
+		request.setPathInfo(null);
+
+		// Bypass
+		request.setServletPath("/static/app.js");
+		assertNull(router.select(request));
+
+		// No path match, select by host
+		request.setServletPath("/index.html");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://tenant.com")));
+
+		request.setServerName("other.example.com");
+		assertSame(router.getDefaultHandler(), router.select(request));
+
+		// Path relative to the context
+		request.setServletPath("/app/static/app.js");
+		assertSame(router.getDefaultHandler(), router.select(request));
+
+		assertNull(router.getPathHandler("/static/"));
+		assertSame(router.getDefaultHandler(), router.getPathHandler("/"));
+	}
+
+
+	public void testPathSegmentBoundary()
+		throws Exception {
+
+		Map<String,CORSConfiguration> none = Collections.emptyMap();
+
+		Map<String,CORSConfiguration> pathConfigs = new HashMap<String,CORSConfiguration>();
+		pathConfigs.put("/api", config("http://api.com"));
+		pathConfigs.put("/static/", null);
+
+		PolicyRouter router = new PolicyRouter(config("http://example.com"), none, pathConfigs);
+
+		assertNotSame(router.getDefaultHandler(), router.getPathHandler("/api"));
+		assertNotSame(router.getDefaultHandler(), router.getPathHandler("/api/"));
+		assertNotSame(router.getDefaultHandler(), router.getPathHandler("/api/orders"));
+		assertSame(router.getDefaultHandler(), router.getPathHandler("/apix"));
+		assertSame(router.getDefaultHandler(), router.getPathHandler("/apix/orders"));
+
+		assertNull(router.getPathHandler("/static"));
+		assertNull(router.getPathHandler("/static/app.js"));
+		assertSame(router.getDefaultHandler(), router.getPathHandler("/staticx"));
+	}
+
+
+	public void testPathTraversal()
+		throws Exception {
+
+		Map<String,CORSConfiguration> none = Collections.emptyMap();
+
+		Map<String,CORSConfiguration> pathConfigs = new HashMap<String,CORSConfiguration>();
+		pathConfigs.put("/api/", config("http://api.com"));
+		pathConfigs.put("/api/partner/", config("http://partner.com"));
+		pathConfigs.put("/static/", null);
+
+		PolicyRouter router = new PolicyRouter(config("http://example.com"), none, pathConfigs);
+
+		MockServletRequest request = new MockServletRequest();
+
+		// Dot segments, as normalised by the container
+		request.setRequestURI("/static/../api/x");
+		request.setServletPath("/api/x");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://api.com")));
+
+		// Dot segments passed on by the container
+		request.setServletPath("/static/../api/x");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://api.com")));
+
+		request.setServletPath("/static/./../../api/x");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://api.com")));
+
+		// Encoded dot segments, decoded by the container
+		request.setRequestURI("/static/%2e%2e/api/x");
+		request.setServletPath("/api/x");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://api.com")));
+
+		// Double encoded dot segments are a literal directory name
+		request.setServletPath("/static/%2e%2e/api/x");
+		assertNull(router.select(request));
+
+		// Path parameters, stripped by the container
+		request.setRequestURI("/api;jsessionid=x/partner/orders");
+		request.setServletPath("/api/partner/orders");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://partner.com")));
+
+		// Path parameters passed on by the container
+		request.setServletPath("/api;jsessionid=x/partner/orders");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://partner.com")));
+
+		request.setServletPath("/static;x=y/../api/partner/orders");
+		assertTrue(router.select(request).getConfiguration().isAllowedOrigin(new Origin("http://partner.com")));
+
+		// Empty segments
+		request.setServletPath("//static//app.js");
+		assertNull(router.select(request));
+	}
+
+
+	public void testNormalizePath() {
+
+		assertEquals("/", PolicyRouter.normalizePath(""));
+		assertEquals("/", PolicyRouter.normalizePath("/"));
+		assertEquals("/api", PolicyRouter.normalizePath("/api"));
+		assertEquals("/api/", PolicyRouter.normalizePath("/api/"));
+		assertEquals("/api/x", PolicyRouter.normalizePath("/static/../api/x"));
+		assertEquals("/api/x", PolicyRouter.normalizePath("/../../api/./x"));
+		assertEquals("/api/", PolicyRouter.normalizePath("/api/x/.."));
+		assertEquals("/api/partner", PolicyRouter.normalizePath("/api;a=b/partner;c"));
+		assertEquals("/api/x", PolicyRouter.normalizePath("//api//x"));
+		assertEquals("/api", PolicyRouter.normalizePath("api"));
+	}
+}
@@ -0,0 +1,95 @@
+package com.thetransactioncompany.cors;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the subdomain matcher.
+ *
+ * @author Vladimir Dzhuvinov
+ */
+public class SubdomainMatcherTest extends TestCase {
+
+
+	private static SubdomainMatcher compile(final String ... origins)
+		throws OriginException {
+
+		List<ValidatedOrigin> list = new ArrayList<ValidatedOrigin>();
+
+		for (String o: origins)
+			list.add(new ValidatedOrigin(o));
+
+		return new SubdomainMatcher(list);
+	}
+
+
+	private static boolean matches(final SubdomainMatcher m, final String origin)
+		throws OriginException {
+
+		return m.matches(new ValidatedOrigin(origin));
+	}
+
+
+	public void testEmpty()
+		throws Exception {
+
+		SubdomainMatcher m = compile();
+
+		assertFalse(matches(m, "http://foo.example.com"));
+	}
+
+
+	public void testSubdomains()
+		throws Exception {
+
+		SubdomainMatcher m = compile("http://example.com", "https://example.org:8443");
+
+		assertTrue(matches(m, "http://foo.example.com"));
+		assertTrue(matches(m, "http://a.b.example.com"));
+		assertTrue(matches(m, "https://foo.example.org:8443"));
+
+		// Not a subdomain
+		assertFalse(matches(m, "http://example.com"));
+		assertFalse(matches(m, "http://myexample.com"));
+		assertFalse(matches(m, "http://example.com.evil.com"));
+
+		// Scheme and port must match
+		assertFalse(matches(m, "https://foo.example.com"));
+		assertFalse(matches(m, "http://foo.example.com:8080"));
+		assertFalse(matches(m, "https://foo.example.org"));
+		assertFalse(matches(m, "https://foo.example.org:9443"));
+	}
+
+
+	public void testNestedAllowedOrigins()
+		throws Exception {
+
+		SubdomainMatcher m = compile("http://b.example.com", "http://example.com");
+
+		assertTrue(matches(m, "http://a.b.example.com"));
+		assertTrue(matches(m, "http://b.example.com"));
+		assertTrue(matches(m, "http://c.example.com"));
+	}
+
+
+	public void testManyOrigins()
+		throws Exception {
+
+		List<ValidatedOrigin> list = new ArrayList<ValidatedOrigin>();
+
+		for (int i = 0; i < 5000; i++)
+			list.add(new ValidatedOrigin("https://customer" + i + ".com"));
+
+		SubdomainMatcher m = new SubdomainMatcher(list);
+
+		assertTrue(matches(m, "https://www.customer0.com"));
+		assertTrue(matches(m, "https://www.customer4999.com"));
+		assertTrue(matches(m, "https://app.customer123.com"));
+		assertFalse(matches(m, "https://www.customer5000.com"));
+		assertFalse(matches(m, "https://www.xcustomer1.com"));
+	}
+}
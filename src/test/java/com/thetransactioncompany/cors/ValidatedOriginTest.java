@@ -1,6 +1,9 @@
 package com.thetransactioncompany.cors;
 
 
+import java.net.IDN;
+import java.net.URI;
+
 import junit.framework.TestCase;
 
 
@@ -118,4 +121,88 @@ public class ValidatedOriginTest extends TestCase {
 // 			// ok
 // 		}
 // 	}
+
+
+	public void testParsingMatchesURIAndIDN()
+		throws Exception {
+
+		String[] origins = {
+			"http://example.com",
+			"HTTPS://WWW.Example.COM:8443",
+			"http://a-b.c-d.example.org:080",
+			"http://localhost",
+			"http://localhost:8080",
+			"http://x1.y2.z3",
+			"http://example.com:",
+			"http://example.com.",
+			"http://example.com/",
+			"http://192.168.0.1",
+			"http://192.168.0.1:8080",
+			"http://user@example.com",
+			"http://xn--bcher-kva.example"
+		};
+
+		for (String value: origins) {
+
+			URI uri = new URI(value);
+
+			ValidatedOrigin o = new ValidatedOrigin(value);
+
+			assertEquals(value, uri.getScheme().toLowerCase(), o.getScheme());
+			assertEquals(value, IDN.toASCII(uri.getHost(), IDN.ALLOW_UNASSIGNED | IDN.USE_STD3_ASCII_RULES).toLowerCase(), o.getHost());
+			assertEquals(value, uri.getPort(), o.getPort());
+		}
+	}
+
+
+	public void testBadOrigins() {
+
+		String[] origins = { "example.com", "http//example.com", "://example.com", "http://exa mple.com" };
+
+		for (String value: origins) {
+
+			try {
+				new ValidatedOrigin(value);
+				fail(value);
+			} catch (OriginException e) {
+				// ok
+			}
+		}
+	}
+
+
+	public void testValidate()
+		throws Exception {
+
+		ValidatedOrigin o = new ValidatedOrigin("http://example.com");
+
+		assertSame(o, o.validate());
+
+		// Memoised
+		Origin origin = new Origin("http://memo.example.com");
+
+		assertSame(origin.validate(), origin.validate());
+	}
+
+
+	public void testInvalidMemoised() {
+
+		Origin origin = new Origin("null");
+
+		OriginException first = null;
+
+		try {
+			origin.validate();
+			fail();
+		} catch (OriginException e) {
+			first = e;
+		}
+
+		try {
+			origin.validate();
+			fail();
+		} catch (OriginException e) {
+			assertSame(first, e);
+		}
+	}
 }